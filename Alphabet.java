@@ -20,4 +20,18 @@ abstract class Alphabet {
      *  the alphabet. This is the inverse of toChar(). */
     abstract int toInt(char ch);
 
+    /** Returns the filter for message input over this alphabet that skips
+     *  blanks, made when it is first asked for. */
+    InputFilter filter() {
+        InputFilter filter = _filter;
+        if (filter == null) {
+            filter = new InputFilter(this, InputFilter.BLANKS);
+            _filter = filter;
+        }
+        return filter;
+    }
+
+    /** The filter returned by filter(), once made. */
+    private InputFilter _filter;
+
 }
@@ -0,0 +1,273 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.error;
+
+/** Batch mode: converts many message files against one configuration.
+ *  The configuration is read once; each file is then processed on a
+ *  work-stealing pool by its own copy of the machine, and its output is
+ *  moved into place only once it is complete. If Main.STATISTICS_PROPERTY
+ *  is set, the statistics of each file converted are added to those of
+ *  its worker thread, and all are reported together at the end.
+ *  @author Ho Jong Kang
+ */
+final class Batch {
+
+    /** Number of files that may be queued or running per worker thread.
+     *  Bounds memory no matter how many files the job names. */
+    private static final int FILES_PER_THREAD = 4;
+
+    /** A batch job converting the files named by SOURCE with PROTOTYPE
+     *  into directory OUTDIR on THREADS worker threads. */
+    private Batch(Machine prototype, Path source, Path outDir, int threads) {
+        _prototype = prototype;
+        _alphabet = prototype.alphabet();
+        _stripe = ThreadLocal.withInitial(() -> {
+            Statistics stripe = new Statistics(_alphabet);
+            _stripes.add(stripe);
+            return stripe;
+        });
+        _source = source;
+        _outDir = outDir;
+        _pool = new ForkJoinPool(threads);
+        _slots = new Semaphore(threads * FILES_PER_THREAD);
+    }
+
+    /** Run a batch job as specified by ARGS, which are
+     *  CONFIG SOURCE OUTDIR [THREADS]. SOURCE is either a directory, all
+     *  of whose regular files are converted, or a manifest file naming one
+     *  input file per line. Each output is written to OUTDIR under the
+     *  name of its input file; an input whose name is that of an input
+     *  before it fails. OUTDIR may not be SOURCE or lie within it.
+     *  THREADS defaults to the number of processors. Return true iff
+     *  every file was converted. */
+    static boolean run(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            throw error("usage: --batch CONFIG SOURCE OUTDIR [THREADS]");
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            try {
+                threads = Integer.parseInt(args[3]);
+            } catch (NumberFormatException excp) {
+                throw error("bad thread count: %s", args[3]);
+            }
+            if (threads < 1) {
+                throw error("bad thread count: %s", args[3]);
+            }
+        }
+        Path source = Paths.get(args[1]);
+        Path outDir = Paths.get(args[2]);
+        if (!Files.isDirectory(outDir)) {
+            throw error("%s is not a directory", args[2]);
+        }
+        if (Files.isDirectory(source)) {
+            try {
+                if (outDir.toRealPath().startsWith(source.toRealPath())) {
+                    throw error("output directory %s is within %s",
+                                args[2], args[1]);
+                }
+            } catch (IOException excp) {
+                throw error("could not read %s", args[1]);
+            }
+        }
+        Batch job = new Batch(Main.configure(args[0]), source, outDir,
+                              threads);
+        return job.execute();
+    }
+
+    /** Convert all my input files, report throughput on the standard
+     *  error, and return true iff there were no failures. */
+    private boolean execute() {
+        long start = System.nanoTime();
+        try {
+            if (Files.isDirectory(_source)) {
+                try (DirectoryStream<Path> dir =
+                         Files.newDirectoryStream(_source)) {
+                    submitAll(dir.iterator());
+                }
+            } else {
+                try (BufferedReader manifest =
+                         Files.newBufferedReader(_source)) {
+                    submitAll(manifest.lines()
+                              .filter(line -> !line.isBlank())
+                              .map(line -> Paths.get(line.strip()))
+                              .iterator());
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", _source);
+        } finally {
+            _pool.shutdown();
+            awaitPool();
+        }
+        report(System.nanoTime() - start);
+        if (_report != null) {
+            Statistics total = new Statistics(_alphabet);
+            for (Statistics stripe : _stripes) {
+                total.merge(stripe);
+            }
+            Main.report(total, _report);
+        }
+        return _failed.get() == 0;
+    }
+
+    /** Submit a conversion of each regular file in FILES, blocking while
+     *  the pool already holds as many files as it may. A file whose name
+     *  is taken by a file before it fails, rather than overwriting its
+     *  output. */
+    private void submitAll(Iterator<Path> files) {
+        while (files.hasNext()) {
+            Path file = files.next();
+            if (!Files.isRegularFile(file)) {
+                continue;
+            }
+            if (!_names.add(file.getFileName())) {
+                _failed.incrementAndGet();
+                System.err.printf("Error: %s: another input is named %s%n",
+                                  file, file.getFileName());
+                continue;
+            }
+            _slots.acquireUninterruptibly();
+            _pool.execute(() -> {
+                try {
+                    convert(file);
+                } finally {
+                    _slots.release();
+                }
+            });
+        }
+    }
+
+    /** Convert FILE into a temporary file in _outDir with a fresh copy of
+     *  my machine, then move it over its final name. Failures are
+     *  reported and counted; they do not stop the other files. */
+    private void convert(Path file) {
+        Path target = _outDir.resolve(file.getFileName());
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(_outDir, ".enigma", ".tmp");
+            try (LineReader input = LineReader.open(file.toFile());
+                 PrintStream output =
+                     new PrintStream(Files.newOutputStream(temp))) {
+                Machine enigma = _prototype.copy();
+                if (_report != null) {
+                    enigma.setStatistics(new Statistics(enigma.alphabet()));
+                }
+                new Main(enigma.alphabet(), input, output).process(enigma);
+                if (output.checkError()) {
+                    throw new IOException("write failed");
+                }
+                if (_report != null) {
+                    _stripe.get().merge(enigma.statistics());
+                }
+            }
+            _bytesIn.addAndGet(Files.size(file));
+            _bytesOut.addAndGet(Files.size(temp));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            _converted.incrementAndGet();
+            temp = null;
+        } catch (IOException | RuntimeException excp) {
+            _failed.incrementAndGet();
+            System.err.printf("Error: %s: %s%n", file, excp.getMessage());
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException excp) {
+                    System.err.printf("Error: could not remove %s%n", temp);
+                }
+            }
+        }
+    }
+
+    /** Wait for every submitted file to finish. */
+    private void awaitPool() {
+        while (true) {
+            try {
+                if (_pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                    return;
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Print job-level counts and throughput for a job that ran for
+     *  NANOS nanoseconds on the standard error. */
+    private void report(long nanos) {
+        double secs = Math.max(nanos, 1) / 1e9;
+        System.err.printf("batch: %d converted, %d failed in %.3f s "
+                          + "(%.1f files/s, %.2f MB/s in, %.2f MB/s out)%n",
+                          _converted.get(), _failed.get(), secs,
+                          (_converted.get() + _failed.get()) / secs,
+                          _bytesIn.get() / secs / 1e6,
+                          _bytesOut.get() / secs / 1e6);
+    }
+
+    /** Machine whose copies convert each file. */
+    private final Machine _prototype;
+
+    /** The alphabet of _prototype. */
+    private final Alphabet _alphabet;
+
+    /** Directory or manifest naming the input files. */
+    private final Path _source;
+
+    /** Directory receiving the outputs. */
+    private final Path _outDir;
+
+    /** Work-stealing pool running the conversions. */
+    private final ForkJoinPool _pool;
+
+    /** Permits for files queued or running on _pool. */
+    private final Semaphore _slots;
+
+    /** Names of the outputs of the files submitted. Used only by the
+     *  submitting thread. */
+    private final Set<Path> _names = new HashSet<>();
+
+    /** Number of files converted. */
+    private final AtomicInteger _converted = new AtomicInteger();
+
+    /** Number of files that could not be converted. */
+    private final AtomicInteger _failed = new AtomicInteger();
+
+    /** Bytes read from converted files. */
+    private final AtomicLong _bytesIn = new AtomicLong();
+
+    /** Bytes written for converted files. */
+    private final AtomicLong _bytesOut = new AtomicLong();
+
+    /** Where to report statistics of the converted files, as given by
+     *  Main.STATISTICS_PROPERTY, or null if they are not gathered. */
+    private final String _report =
+        System.getProperty(Main.STATISTICS_PROPERTY);
+
+    /** Statistics of the files converted by each worker thread. */
+    private final Queue<Statistics> _stripes = new ConcurrentLinkedQueue<>();
+
+    /** Statistics of the files converted by the current thread. */
+    private final ThreadLocal<Statistics> _stripe;
+}
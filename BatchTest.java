@@ -0,0 +1,172 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Ho Jong Kang
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A message file. */
+    private static final String MESSAGES =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM his shoulder Hiawatha\n";
+
+    /** Another message file. */
+    private static final String OTHER_MESSAGES =
+        "* B BETA I II III AAAA\n"
+        + "TOOK THE CAMERA OF ROSEWOOD\n";
+
+    /** A message file that fails. */
+    private static final String BAD_MESSAGES = "HELLO\n";
+
+    /** Return the output of Main for the naval machine on INPUT. */
+    private String convert(String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        Machine machine = Naval.machine();
+        new Main(machine.alphabet(), new LineReader(input), out)
+            .process(machine);
+        out.flush();
+        return bytes.toString(Charset.defaultCharset());
+    }
+
+    /** Write TEXT to FILE, making its directory, and return FILE. */
+    private Path write(Path file, String text) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, text.getBytes(Charset.defaultCharset()));
+        return file;
+    }
+
+    /** Return the contents of FILE. */
+    private String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), Charset.defaultCharset());
+    }
+
+    /** Run Batch on the naval configuration in DIR with SOURCE and
+     *  OUTDIR on two threads, and return its job report, asserting that
+     *  it succeeded iff OK. */
+    private String run(Path dir, Path source, Path outDir, boolean ok)
+        throws IOException {
+        Path config = write(dir.resolve("naval.conf"), Naval.CONFIG);
+        PrintStream err = System.err;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(bytes, true));
+        try {
+            assertEquals(ok, Batch.run(new String[] {
+                config.toString(), source.toString(), outDir.toString(),
+                "2" }));
+        } finally {
+            System.setErr(err);
+        }
+        String report = bytes.toString(Charset.defaultCharset());
+        return report.substring(report.indexOf("batch: "));
+    }
+
+    /** Remove DIR and everything in it. */
+    private void remove(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file ->
+                file.toFile().delete());
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDirectory() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            Path in = dir.resolve("in"), out = dir.resolve("out");
+            write(in.resolve("a"), MESSAGES);
+            write(in.resolve("b"), OTHER_MESSAGES);
+            write(in.resolve("c"), BAD_MESSAGES);
+            Files.createDirectories(out);
+            assertTrue(run(dir, in, out, false)
+                       .startsWith("batch: 2 converted, 1 failed"));
+            assertEquals(convert(MESSAGES), read(out.resolve("a")));
+            assertEquals(convert(OTHER_MESSAGES), read(out.resolve("b")));
+            try (Stream<Path> outputs = Files.list(out)) {
+                assertEquals(2, outputs.count());
+            }
+        } finally {
+            remove(dir);
+        }
+    }
+
+    @Test
+    public void testManifest() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            Path out = dir.resolve("out");
+            Files.createDirectories(out);
+            Path a = write(dir.resolve("x").resolve("a"), MESSAGES);
+            Path b = write(dir.resolve("b"), OTHER_MESSAGES);
+            Path manifest = write(dir.resolve("manifest"),
+                                  a + "\n\n  " + b + "\n");
+            assertTrue(run(dir, manifest, out, true)
+                       .startsWith("batch: 2 converted, 0 failed"));
+            assertEquals(convert(MESSAGES), read(out.resolve("a")));
+            assertEquals(convert(OTHER_MESSAGES), read(out.resolve("b")));
+        } finally {
+            remove(dir);
+        }
+    }
+
+    @Test
+    public void testCollision() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            Path out = dir.resolve("out");
+            Files.createDirectories(out);
+            Path first = write(dir.resolve("x").resolve("a"), MESSAGES);
+            Path second = write(dir.resolve("y").resolve("a"),
+                                OTHER_MESSAGES);
+            Path manifest = write(dir.resolve("manifest"),
+                                  first + "\n" + second + "\n");
+            assertTrue(run(dir, manifest, out, false)
+                       .startsWith("batch: 1 converted, 1 failed"));
+            assertEquals(convert(MESSAGES), read(out.resolve("a")));
+        } finally {
+            remove(dir);
+        }
+    }
+
+    @Test
+    public void testOutputInSource() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            Path in = dir.resolve("in");
+            write(in.resolve("a"), MESSAGES);
+            for (Path out : new Path[] { in, in.resolve("out") }) {
+                Files.createDirectories(out);
+                try {
+                    run(dir, in, out, true);
+                    fail("output directory within source accepted");
+                } catch (EnigmaException excp) {
+                    assertEquals(MESSAGES, read(in.resolve("a")));
+                }
+            }
+        } finally {
+            remove(dir);
+        }
+    }
+}
@@ -0,0 +1,922 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+import static enigma.EnigmaException.error;
+
+/** Throughput benchmarks for the simulator, run as
+ *      java enigma.Bench SCENARIO [ARGS...]
+ *  Each scenario prints its measurements on the standard output.
+ *  @author Ho Jong Kang
+ */
+final class Bench {
+
+    /** The standard naval configuration (rotors I-V, Beta, Gamma and
+     *  reflectors B and C), in the format of Main's configuration files. */
+    static final String NAVAL_CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ 5 3\n"
+        + "I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + "II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + "III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + "IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + "V MZ (AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)\n"
+        + "Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + "Gamma N (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n"
+        + "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "  (RX) (SZ) (TV)\n"
+        + "C R (AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW)\n"
+        + "  (QZ) (SX) (UY)\n";
+
+    /** A settings line for NAVAL_CONFIG. */
+    static final String NAVAL_SETTINGS =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Not instantiable. */
+    private Bench() {
+    }
+
+    /** Run the scenario named by ARGS[0] with arguments ARGS[1..]. */
+    public static void main(String... args) {
+        if (args.length == 0) {
+            System.err.println("usage: java enigma.Bench SCENARIO [ARGS...]");
+            System.exit(1);
+        }
+        try {
+            switch (args[0]) {
+            case "stream":
+                stream(intArg(args, 1, 64), intArg(args, 2, 4096),
+                       intArg(args, 3, 200));
+                break;
+            case "library":
+                library(intArg(args, 1, 10000), intArg(args, 2, 26));
+                break;
+            case "tables":
+                tables(intArg(args, 1, 4096), intArg(args, 2, 300),
+                       intArg(args, 3, 20));
+                break;
+            case "indicators":
+                indicators(intArg(args, 1, 20000), intArg(args, 2, 40));
+                break;
+            case "pool":
+                pool(intArg(args, 1, 20000), intArg(args, 2, 16));
+                break;
+            case "engines":
+                engines(intArg(args, 1, 26), intArg(args, 2, 20));
+                break;
+            case "stats":
+                stats(intArg(args, 1, 20));
+                break;
+            case "packed":
+                packed(intArg(args, 1, 20000), intArg(args, 2, 26));
+                break;
+            case "bombe":
+                bombe(intArg(args, 1, 24), intArg(args, 2, 20));
+                break;
+            case "sweep":
+                sweep(intArg(args, 1, 1), intArg(args, 2, SWEEP_SIZES.length),
+                      intArg(args, 3, SWEEP_SLOTS.length));
+                break;
+            case "snapshots":
+                snapshots(intArg(args, 1, 4));
+                break;
+            case "pipeline":
+                pipeline(intArg(args, 1, 20000), intArg(args, 2, 10));
+                break;
+            case "train":
+                train(intArg(args, 1, 20));
+                break;
+            case "startup":
+                startup(intArg(args, 1, 11), args.length > 2 ? args[2] : null);
+                break;
+            default:
+                throw error("unknown scenario: %s", args[0]);
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return a new machine configured by NAVAL_CONFIG. */
+    static Machine navalMachine() {
+        return Main.configure(new Scanner(NAVAL_CONFIG));
+    }
+
+    /** Return a random message of LEN upper-case letters drawn with
+     *  RANDOM, broken into lines of 60 characters. */
+    static String randomText(Random random, int len) {
+        StringBuilder text = new StringBuilder(len + len / 60 + 1);
+        for (int i = 0; i < len; i += 1) {
+            text.append((char) ('A' + random.nextInt(26)));
+            if (i % 60 == 59) {
+                text.append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /** Stream MEGACHARS million characters in chunks of CHUNK characters
+     *  through a MachineProcessor to a subscriber that spends DELAYMICROS
+     *  microseconds on each chunk, reporting throughput and heap use
+     *  once a second. */
+    static void stream(int megaChars, int chunk, int delayMicros) {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        SubmissionPublisher<CharBuffer> source =
+            new SubmissionPublisher<>(executor, 4);
+        MachineProcessor processor =
+            new MachineProcessor(navalMachine(), executor, 4);
+        AtomicLong received = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(1);
+        source.subscribe(processor);
+        processor.subscribe(new Flow.Subscriber<CharBuffer>() {
+            private Flow.Subscription _sub;
+
+            @Override
+            public void onSubscribe(Flow.Subscription sub) {
+                _sub = sub;
+                sub.request(1);
+            }
+
+            @Override
+            public void onNext(CharBuffer item) {
+                received.addAndGet(item.remaining());
+                LockSupport.parkNanos(delayMicros * 1000L);
+                _sub.request(1);
+            }
+
+            @Override
+            public void onError(Throwable excp) {
+                excp.printStackTrace();
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+
+        Runtime runtime = Runtime.getRuntime();
+        long total = (long) megaChars * 1_000_000;
+        String text = randomText(new Random(42), chunk);
+        long start = System.nanoTime(), lastReport = start, lastCount = 0;
+        long maxHeap = 0;
+        source.submit(CharBuffer.wrap(NAVAL_SETTINGS + "\n"));
+        for (long sent = 0; sent < total; sent += chunk) {
+            source.submit(CharBuffer.wrap(text));
+            long now = System.nanoTime();
+            if (now - lastReport >= TimeUnit.SECONDS.toNanos(1)) {
+                long count = received.get();
+                long heap = runtime.totalMemory() - runtime.freeMemory();
+                maxHeap = Math.max(maxHeap, heap);
+                System.out.printf("%8.1f s %12.0f chars/s  heap %6.1f MB%n",
+                                  (now - start) / 1e9,
+                                  (count - lastCount) * 1e9
+                                  / (now - lastReport), heap / 1e6);
+                lastReport = now;
+                lastCount = count;
+            }
+        }
+        source.close();
+        try {
+            done.await();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("stream: %d chars in %.2f s, %.0f chars/s, "
+                          + "max heap %.1f MB%n", received.get(), secs,
+                          received.get() / secs, maxHeap / 1e6);
+        executor.shutdown();
+    }
+
+    /** Load a configuration file of about ROTORS rotors over an alphabet
+     *  of SIZE characters, through a Scanner, as a mapped ConfigFile, and
+     *  as a mapped ConfigFile whose rotors are all validated, and set up
+     *  a machine from it, reporting the time and heap taken by each
+     *  step. */
+    static void library(int rotors, int size) {
+        ConfigGenerator gen = new ConfigGenerator(new Random(42));
+        ConfigGenerator.Spec spec =
+            gen.config(ConfigGenerator.symbols('\u4e00', size), false, 5, 3,
+                       Math.max(0, rotors / 3 - 1));
+        String settings = gen.settings(spec, 10).toUpperCase();
+        Path file;
+        try {
+            file = Files.createTempFile("enigma", ".conf");
+            Files.write(file, spec.text().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw error("could not create configuration file");
+        }
+        String[] kinds = { "scanner", "mapped", "checked" };
+        for (String kind : kinds) {
+            if (kind.equals("checked")) {
+                System.setProperty(Main.VALIDATE_PROPERTY, "true");
+            }
+            long before = usedHeap();
+            long start = System.nanoTime();
+            Machine machine;
+            try {
+                machine = kind.equals("scanner")
+                    ? Main.configure(new Scanner(file, "UTF-8"))
+                    : ConfigFile.map(file).machine();
+            } catch (IOException excp) {
+                throw error("could not read configuration file");
+            }
+            long loaded = System.nanoTime();
+            Main.setUp(machine, settings);
+            long setUp = System.nanoTime();
+            long heap = usedHeap() - before;
+            System.out.printf("%-7s: load %8.1f ms, first setup %7.3f ms, "
+                              + "heap retained %6.1f MB%n", kind,
+                              (loaded - start) / 1e6, (setUp - loaded) / 1e6,
+                              heap / 1e6);
+        }
+        System.clearProperty(Main.VALIDATE_PROPERTY);
+        try {
+            Files.delete(file);
+        } catch (IOException excp) {
+            System.err.printf("could not delete %s%n", file);
+        }
+    }
+
+    /** Compare rotor tables on the heap, converted through engines and
+     *  without, with tables in a mapped table file, first written and
+     *  then found, for a configuration of about ROTORS rotors over an
+     *  alphabet of SIZE characters: report the heap retained by each
+     *  machine and its throughput over MEGACHARS million characters. */
+    static void tables(int size, int rotors, int megaChars) {
+        Random random = new Random(42);
+        ConfigGenerator gen = new ConfigGenerator(random);
+        ConfigGenerator.Spec spec =
+            gen.config(ConfigGenerator.symbols('\u4e00', size), false, 5, 3,
+                       Math.max(0, rotors / 3 - 1));
+        String settings = gen.settings(spec, 10);
+        char[] msg = gen.message(spec, 1 << 16).toCharArray();
+        Path file;
+        try {
+            file = Files.createTempFile("enigma", ".tables");
+            Files.delete(file);
+        } catch (IOException excp) {
+            throw error("could not create table file");
+        }
+        String[] kinds = { "heap", "rotors", "write", "mapped" };
+        for (String kind : kinds) {
+            if (kind.equals("write")) {
+                System.setProperty(Main.TABLES_PROPERTY, file.toString());
+            }
+            long before = usedHeap();
+            Machine machine = Main.configure(new Scanner(spec.text()));
+            long retained = usedHeap() - before;
+            machine.setEngines(!kind.equals("rotors"));
+            Main.setUp(machine, settings.toUpperCase());
+            long total = (long) megaChars * 1_000_000, done = 0;
+            long start = System.nanoTime();
+            while (done < total) {
+                machine.convert(msg, msg.length);
+                done += msg.length;
+            }
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-6s: heap retained %8.1f MB, %12.0f chars/s"
+                              + "%n", kind, retained / 1e6, done / secs);
+        }
+        System.clearProperty(Main.TABLES_PROPERTY);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException excp) {
+            throw error("could not remove %s", file);
+        }
+    }
+
+    /** Compare converting through the rotors themselves, through
+     *  RotorEngines and through CipherKernels, for machines of 3 to 7
+     *  slots over an alphabet of SIZE characters: report the throughput of
+     *  each over MEGACHARS million characters. */
+    static void engines(int size, int megaChars) {
+        Random random = new Random(42);
+        ConfigGenerator gen = new ConfigGenerator(random);
+        char first = size <= 26 ? 'A' : '\u4e00';
+        String[] kinds = { "rotors", "engine", "kernel" };
+        System.out.printf("%5s", "slots");
+        for (String kind : kinds) {
+            System.out.printf(" %15s", kind + " chars/s");
+        }
+        System.out.printf("%n");
+        for (int slots = 3; slots <= 7; slots += 1) {
+            ConfigGenerator.Spec spec =
+                gen.config(ConfigGenerator.symbols(first, size), false,
+                           slots, Math.min(3, slots - 1), 0);
+            String settings = gen.settings(spec, 10).toUpperCase();
+            char[] msg = gen.message(spec, 1 << 16).toCharArray();
+            double[] rates = new double[kinds.length];
+            for (int round = 0; round < 2; round += 1) {
+                for (int k = 0; k < kinds.length; k += 1) {
+                    Machine machine =
+                        Main.configure(new Scanner(spec.text()));
+                    machine.setEngines(k == 1);
+                    machine.setKernels(k == 2);
+                    Main.setUp(machine, settings);
+                    long total = (long) megaChars * 1_000_000, done = 0;
+                    long start = System.nanoTime();
+                    while (done < total) {
+                        machine.convert(msg, msg.length);
+                        done += msg.length;
+                    }
+                    rates[k] = done / ((System.nanoTime() - start) / 1e9);
+                }
+            }
+            System.out.printf("%5d", slots);
+            for (double rate : rates) {
+                System.out.printf(" %15.0f", rate);
+            }
+            System.out.printf("%n");
+        }
+    }
+
+    /** Convert MEGACHARS million characters with the naval machine, for
+     *  each of rotors, engines and kernels: once plainly and once while
+     *  gathering Statistics. Report characters per second for each, and
+     *  the cost of gathering statistics. */
+    static void stats(int megaChars) {
+        char[] msg =
+            randomText(new Random(42), 1 << 16).replace("\n", "")
+            .toCharArray();
+        String[] kinds = { "rotors", "engine", "kernel" };
+        System.out.printf("%6s %15s %15s %9s%n", "kind", "plain chars/s",
+                          "stats chars/s", "overhead");
+        for (int k = 0; k < kinds.length; k += 1) {
+            double[] rates = new double[2];
+            for (int round = 0; round < 2; round += 1) {
+                for (int s = 0; s < rates.length; s += 1) {
+                    Machine machine = navalMachine();
+                    machine.setEngines(k == 1);
+                    machine.setKernels(k == 2);
+                    Main.setUp(machine, NAVAL_SETTINGS);
+                    if (s == 1) {
+                        machine.setStatistics(
+                            new Statistics(machine.alphabet()));
+                    }
+                    long total = (long) megaChars * 1_000_000, done = 0;
+                    long start = System.nanoTime();
+                    while (done < total) {
+                        machine.convert(msg, msg.length);
+                        done += msg.length;
+                    }
+                    rates[s] = done / ((System.nanoTime() - start) / 1e9);
+                }
+            }
+            System.out.printf("%6s %15.0f %15.0f %8.1f%%%n", kinds[k],
+                              rates[0], rates[1],
+                              100 * (rates[0] / rates[1] - 1));
+        }
+    }
+
+    /** Write MESSAGES messages of ten 60-character lines over an
+     *  alphabet of SIZE characters to a temporary file, as text and as a
+     *  PackedFile. Report the size of each and the rate at which each is
+     *  written; then the rate at which the packed file is turned back into
+     *  text, whole and one message at a time, picked at random. */
+    static void packed(int messages, int size) {
+        Random random = new Random(42);
+        Alphabet alphabet = Main.alphabet(
+            ConfigGenerator.symbols(size <= 26 ? 'A' : '\u4e00', size));
+        char[][] lines = new char[64][60];
+        for (char[] line : lines) {
+            for (int i = 0; i < line.length; i += 1) {
+                line[i] = alphabet.toChar(random.nextInt(size));
+            }
+        }
+        Path text, packed;
+        try {
+            text = Files.createTempFile("enigma", ".txt");
+            packed = Files.createTempFile("enigma", ".packed");
+            for (int round = 0; round < 2; round += 1) {
+                long start = System.nanoTime();
+                try (OutputStream out = Files.newOutputStream(text)) {
+                    GroupWriter writer = new GroupWriter(out);
+                    for (int m = 0; m < messages; m += 1) {
+                        for (int k = 0; k < 10; k += 1) {
+                            writer.printLine(lines[(m + k) % 64], 60);
+                        }
+                    }
+                    writer.flush();
+                }
+                long written = System.nanoTime();
+                try (OutputStream out = Files.newOutputStream(packed)) {
+                    PackedFile.Writer writer =
+                        new PackedFile.Writer(out, alphabet);
+                    for (int m = 0; m < messages; m += 1) {
+                        writer.beginMessage();
+                        for (int k = 0; k < 10; k += 1) {
+                            writer.printLine(lines[(m + k) % 64], 60);
+                        }
+                    }
+                    writer.finish();
+                }
+                long packedAt = System.nanoTime();
+                long textBytes = Files.size(text);
+                try (PackedFile file = PackedFile.open(packed)) {
+                    file.unpack(OutputStream.nullOutputStream());
+                }
+                long unpacked = System.nanoTime();
+                int picks = Math.min(messages, 10000);
+                try (PackedFile file = PackedFile.open(packed)) {
+                    for (int i = 0; i < picks; i += 1) {
+                        file.unpack(random.nextInt(messages),
+                                    OutputStream.nullOutputStream());
+                    }
+                }
+                long picked = System.nanoTime();
+                System.out.printf("text   %9.1f MB, written %7.1f MB/s%n"
+                                  + "packed %9.1f MB, written %7.1f MB/s"
+                                  + " of text, %d bits/char%n"
+                                  + "unpack all %7.1f MB/s of text, "
+                                  + "one message %9.0f messages/s%n",
+                                  textBytes / 1e6,
+                                  textBytes * 1e3 / (written - start),
+                                  Files.size(packed) / 1e6,
+                                  textBytes * 1e3 / (packedAt - written),
+                                  PackedFile.bits(size),
+                                  textBytes * 1e3 / (unpacked - packedAt),
+                                  picks * 1e9 / (picked - unpacked));
+            }
+            Files.delete(text);
+            Files.delete(packed);
+        } catch (IOException excp) {
+            throw error("could not write temporary files");
+        }
+    }
+
+    /** Alphabet sizes swept by sweep. */
+    static final int[] SWEEP_SIZES = { 26, 256, 4096, 32768, 63000 };
+
+    /** Numbers of rotor slots swept by sweep. */
+    static final int[] SWEEP_SLOTS = { 3, 5, 8, 16, 32, 64 };
+
+    /** For the first SIZES of SWEEP_SIZES and the first SLOTS of
+     *  SWEEP_SLOTS, generate a random configuration with that many
+     *  symbols (see ConfigGenerator.symbols(int)) and slots, half of them
+     *  pawled and each moving rotor with up to five notches. Report the
+     *  time to read it, the heap it retains once set up, and the rate at
+     *  which it converts MEGACHARS million characters through the rotors,
+     *  an engine and a kernel, one line per shape, so that the results
+     *  can be charted against alphabet size and slots. */
+    static void sweep(int megaChars, int sizes, int slots) {
+        Random random = new Random(42);
+        ConfigGenerator gen = new ConfigGenerator(random);
+        String[] kinds = { "rotors", "engine", "kernel" };
+        System.out.printf("%6s %5s %9s %9s", "size", "slots", "load ms",
+                          "heap MB");
+        for (String kind : kinds) {
+            System.out.printf(" %15s", kind + " chars/s");
+        }
+        System.out.printf("%n");
+        for (int i = 0; i < Math.min(sizes, SWEEP_SIZES.length); i += 1) {
+            int size = SWEEP_SIZES[i];
+            String symbols = ConfigGenerator.symbols(size);
+            for (int j = 0; j < Math.min(slots, SWEEP_SLOTS.length); j += 1) {
+                int numRotors = SWEEP_SLOTS[j];
+                ConfigGenerator.Spec spec =
+                    gen.config(symbols, true, numRotors, numRotors / 2, 0, 5);
+                String settings = gen.settings(spec, 10);
+                char[] msg =
+                    gen.message(spec, 1 << 16).toCharArray();
+                long before = usedHeap();
+                long start = System.nanoTime();
+                Machine machine = Main.configure(new Scanner(spec.text()));
+                double load = (System.nanoTime() - start) / 1e6;
+                Main.setUp(machine, settings);
+                machine.convert(msg, 1);
+                double heap = (usedHeap() - before) / 1e6;
+                double[] rates = new double[kinds.length];
+                for (int k = 0; k < kinds.length; k += 1) {
+                    machine.setEngines(k == 1);
+                    machine.setKernels(k == 2);
+                    Main.setUp(machine, settings);
+                    long total = (long) megaChars * 1_000_000, done = 0;
+                    start = System.nanoTime();
+                    while (done < total) {
+                        machine.convert(msg, msg.length);
+                        done += msg.length;
+                    }
+                    rates[k] = done / ((System.nanoTime() - start) / 1e9);
+                }
+                System.out.printf("%6d %5d %9.1f %9.1f", size, numRotors,
+                                  load, heap);
+                for (double rate : rates) {
+                    System.out.printf(" %15.0f", rate);
+                }
+                System.out.printf("%n");
+            }
+        }
+    }
+
+    /** Return the naval machine to one of two states MILLIONS million
+     *  times, once by setting it up from settings lines and once by
+     *  restoring snapshots, first of the same rotors at other positions
+     *  and then of other rotors, converting one character after each.
+     *  Report the rate of each, and the bytes allocated per restore. */
+    static void snapshots(int millions) {
+        String[][] pairs = {
+            { NAVAL_SETTINGS, NAVAL_SETTINGS.replace("AXLE", "QRST") },
+            { NAVAL_SETTINGS, "* C GAMMA I II V AAAA (AZ)" },
+        };
+        String[] names = { "positions", "rotors" };
+        System.out.printf("%9s %14s %14s %12s%n", "change", "setUp/s",
+                          "restore/s", "bytes/restore");
+        long n = (long) millions * 1_000_000;
+        for (int p = 0; p < pairs.length; p += 1) {
+            Machine machine = navalMachine();
+            Machine.Snapshot[] states = new Machine.Snapshot[2];
+            for (int k = 0; k < 2; k += 1) {
+                Main.setUp(machine, pairs[p][k]);
+                states[k] = machine.snapshot();
+            }
+            double parsed = 0, restored = 0, bytes = 0;
+            for (int round = 0; round < 2; round += 1) {
+                long start = System.nanoTime();
+                for (long i = 0; i < n / 20; i += 1) {
+                    Main.setUp(machine, pairs[p][(int) i & 1]);
+                    machine.convert(0);
+                }
+                parsed = n / 20 / ((System.nanoTime() - start) / 1e9);
+                long heap = allocated();
+                start = System.nanoTime();
+                for (long i = 0; i < n; i += 1) {
+                    machine.restore(states[(int) i & 1]);
+                    machine.convert(0);
+                }
+                restored = n / ((System.nanoTime() - start) / 1e9);
+                bytes = (double) (allocated() - heap) / n;
+            }
+            System.out.printf("%9s %14.0f %14.0f %12.2f%n", names[p],
+                              parsed, restored, bytes);
+        }
+    }
+
+    /** Return the bytes allocated so far by this thread. */
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Write MESSAGES messages of LINES random 60-character lines, each
+     *  after a settings line for the naval machine, to a temporary file,
+     *  and run Main over it to another, in one thread and pipelined (see
+     *  Pipeline). Report the rate of each in characters per second, and
+     *  check that they agree. */
+    static void pipeline(int messages, int lines) {
+        Random random = new Random(42);
+        try {
+            Path config = Files.createTempFile("enigma", ".conf");
+            Path input = Files.createTempFile("enigma", ".in");
+            Path output = Files.createTempFile("enigma", ".out");
+            Files.write(config, NAVAL_CONFIG.getBytes());
+            try (OutputStream out = Files.newOutputStream(input)) {
+                for (int m = 0; m < messages; m += 1) {
+                    out.write((NAVAL_SETTINGS + "\n").getBytes());
+                    out.write(randomText(random, 60 * lines).getBytes());
+                }
+            }
+            long chars = (long) messages * lines * 60;
+            String[] args = { config.toString(), input.toString(),
+                              output.toString() };
+            System.out.printf("%9s %15s%n", "mode", "chars/s");
+            byte[][] outputs = new byte[2][];
+            for (int round = 0; round < 2; round += 1) {
+                for (int p = 0; p < 2; p += 1) {
+                    System.setProperty(Main.PIPELINE_PROPERTY,
+                                       String.valueOf(p == 1));
+                    long start = System.nanoTime();
+                    try {
+                        new Main(args).process();
+                    } finally {
+                        System.clearProperty(Main.PIPELINE_PROPERTY);
+                    }
+                    double rate =
+                        chars / ((System.nanoTime() - start) / 1e9);
+                    outputs[p] = Files.readAllBytes(output);
+                    System.out.printf("%9s %15.0f%n",
+                                      p == 1 ? "pipelined" : "serial",
+                                      rate);
+                }
+                if (!Arrays.equals(outputs[0], outputs[1])) {
+                    throw error("pipelined output differs");
+                }
+            }
+            Files.delete(config);
+            Files.delete(input);
+            Files.delete(output);
+        } catch (IOException excp) {
+            throw error("could not write temporary files");
+        }
+    }
+
+    /** Run Main over MESSAGES messages of the naval machine, plainly and
+     *  in each of the modes usually asked for: packed, pipelined and
+     *  through generated kernels. This is the training run for a class
+     *  data sharing archive, made by running it with
+     *  -XX:ArchiveClassesAtExit (see the Makefile's cds target), so that
+     *  the classes every run loads are loaded from the archive. */
+    static void train(int messages) {
+        String[] modes = { null, Main.PACKED_PROPERTY,
+                           Main.PIPELINE_PROPERTY, Main.KERNELS_PROPERTY };
+        try {
+            Path[] files = startupFiles(messages);
+            String[] args = { files[0].toString(), files[1].toString(),
+                              files[2].toString() };
+            for (String mode : modes) {
+                if (mode != null) {
+                    System.setProperty(mode, "true");
+                }
+                try {
+                    new Main(args).process();
+                } finally {
+                    if (mode != null) {
+                        System.clearProperty(mode);
+                    }
+                }
+            }
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        } catch (IOException excp) {
+            throw error("could not write temporary files");
+        }
+    }
+
+    /** Run Main over a few messages of the naval machine in RUNS fresh
+     *  JVMs, and then in RUNS more using the class data sharing archive
+     *  ARCHIVE, unless it is null. Report the median time from starting
+     *  each JVM to its first output and to its exit, in milliseconds. */
+    static void startup(int runs, String archive) {
+        if (runs < 1) {
+            throw error("need at least one run");
+        }
+        String java = Paths.get(System.getProperty("java.home"), "bin",
+                                "java").toString();
+        try {
+            Path[] files = startupFiles(3);
+            System.out.printf("%-20s %10s %10s%n", "archive", "first ms",
+                              "exit ms");
+            for (int a = 0; a < (archive == null ? 1 : 2); a += 1) {
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                if (a == 1) {
+                    command.add("-XX:SharedArchiveFile=" + archive);
+                }
+                command.addAll(Arrays.asList(
+                    "-cp", System.getProperty("java.class.path"),
+                    "enigma.Main", files[0].toString(), files[1].toString()));
+                long[] first = new long[runs], exit = new long[runs];
+                for (int r = 0; r < runs; r += 1) {
+                    long start = System.nanoTime();
+                    Process child = new ProcessBuilder(command)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                    try (InputStream out = child.getInputStream()) {
+                        if (out.read() < 0) {
+                            throw error("no output from Main");
+                        }
+                        first[r] = System.nanoTime() - start;
+                        out.transferTo(OutputStream.nullOutputStream());
+                    }
+                    if (child.waitFor() != 0) {
+                        throw error("Main failed");
+                    }
+                    exit[r] = System.nanoTime() - start;
+                }
+                Arrays.sort(first);
+                Arrays.sort(exit);
+                System.out.printf("%-20s %10.1f %10.1f%n",
+                                  a == 1 ? archive : "none",
+                                  first[runs / 2] / 1e6, exit[runs / 2] / 1e6);
+            }
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        } catch (IOException excp) {
+            throw error("could not run %s: %s", java, excp.getMessage());
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+    }
+
+    /** Return temporary files for a run of Main: NAVAL_CONFIG, then an
+     *  input of MESSAGES random messages of three lines each, and an
+     *  empty output. */
+    private static Path[] startupFiles(int messages) throws IOException {
+        Random random = new Random(42);
+        Path config = Files.createTempFile("enigma", ".conf");
+        Path input = Files.createTempFile("enigma", ".in");
+        Path output = Files.createTempFile("enigma", ".out");
+        Files.write(config, NAVAL_CONFIG.getBytes());
+        try (OutputStream out = Files.newOutputStream(input)) {
+            for (int m = 0; m < messages; m += 1) {
+                out.write((NAVAL_SETTINGS + "\n").getBytes());
+                out.write(randomText(random, 180).getBytes());
+            }
+        }
+        return new Path[] { config, input, output };
+    }
+
+    /** Run a Bombe over the first ORDERS rotor orders of an M3 machine
+     *  (NAVAL_CONFIG with three moving rotors and no fixed one) with a
+     *  crib of CRIB letters, on 1 to at least 4 threads, and report the
+     *  positions tested per second and the stops found. */
+    static void bombe(int orders, int crib) {
+        Machine machine = Main.configure(new Scanner(
+            NAVAL_CONFIG.replaceFirst(" 5 3", " 4 3")));
+        Main.setUp(machine, "* B III IV I XLE (HQ) (EX) (IP) (TR) (BY)");
+        String plain = randomText(new Random(42), crib);
+        String cipher = machine.convert(plain);
+        Bombe bombe = new Bombe(machine, plain, cipher);
+        List<String[]> all = bombe.orders();
+        List<String[]> searched =
+            new ArrayList<>(all.subList(0, Math.min(orders, all.size())));
+        searched.add(new String[] { "B", "III", "IV", "I" });
+        int most = Math.max(4, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%7s %14s  %s%n", "threads", "positions/s",
+                          "stops");
+        for (int threads = 1; threads <= most; threads *= 2) {
+            Bombe timed = new Bombe(machine, plain, cipher);
+            List<Bombe.Stop> stops = timed.search(searched, threads);
+            System.out.printf("%7d %14.0f  %d, last %s%n", threads,
+                              timed.positionsPerSecond(), stops.size(),
+                              stops.isEmpty() ? "none"
+                              : stops.get(stops.size() - 1));
+        }
+    }
+
+    /** Serve REQUESTS requests, each a short message under one of a few
+     *  settings lines, on 1 to 64 threads: first with a machine configured
+     *  and set up for each request, then with machines borrowed from a
+     *  MachinePool of CAPACITY machines. Report requests per second for
+     *  each, and the pool's hits, misses and waiting. */
+    static void pool(int requests, int capacity) {
+        Random random = new Random(42);
+        String[] settings = new String[8];
+        for (int i = 0; i < settings.length; i += 1) {
+            settings[i] = NAVAL_SETTINGS.replace("AXLE",
+                                                 randomText(random, 4));
+        }
+        String msg = randomText(random, 40);
+        System.out.printf("%7s %14s %14s  %s%n", "threads", "fresh req/s",
+                          "pooled req/s", "pool");
+        for (int threads = 1; threads <= 64; threads *= 4) {
+            double fresh = serve(threads, requests / 10, k -> {
+                    Machine machine = navalMachine();
+                    Main.setUp(machine, settings[k % settings.length]);
+                    machine.convert(msg);
+                });
+            double pooled = 0;
+            MachinePool pool = null;
+            for (int round = 0; round < 2; round += 1) {
+                MachinePool machines =
+                    new MachinePool(navalMachine(), capacity);
+                pooled = serve(threads, requests, k -> {
+                        try (MachinePool.Lease lease = machines.borrow(
+                                 settings[k % settings.length])) {
+                            lease.machine().convert(msg);
+                        }
+                    });
+                pool = machines;
+            }
+            System.out.printf("%7d %14.0f %14.0f  %s%n", threads, fresh,
+                              pooled, pool);
+        }
+    }
+
+    /** Return the rate per second at which THREADS threads together do
+     *  REQUESTS requests, request K being done by HANDLER. */
+    private static double serve(int threads, int requests,
+                                IntConsumer handler) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicLong next = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t += 1) {
+            executor.execute(() -> {
+                    try {
+                        for (long k = next.getAndIncrement(); k < requests;
+                             k = next.getAndIncrement()) {
+                            handler.accept((int) k);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("benchmark interrupted");
+        } finally {
+            executor.shutdown();
+        }
+        return requests / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /** Compare converting MESSAGES messages of LENGTH characters each
+     *  under the message-key procedure (Main.INDICATOR_PROPERTY) with
+     *  converting the same messages each preceded by its own settings
+     *  line: check that both give the same output, and report messages
+     *  per second for each. */
+    static void indicators(int messages, int length) {
+        Random random = new Random(41);
+        Machine machine = navalMachine();
+        int keyLength = machine.numRotors() - 1;
+        String daily = NAVAL_SETTINGS;
+        String head = daily.substring(0, daily.indexOf("AXLE"));
+        String plugs = daily.substring(daily.indexOf("AXLE") + 4);
+        StringBuilder keyed = new StringBuilder(daily).append('\n');
+        StringBuilder lines = new StringBuilder();
+        for (int m = 0; m < messages; m += 1) {
+            String key = randomText(random, keyLength);
+            String body = randomText(random, length).replace("\n", "");
+            Main.setUp(machine, daily);
+            String indicator = machine.convert(key);
+            Main.setUp(machine, head + key + plugs);
+            String cipher = machine.convert(body);
+            keyed.append(indicator).append(cipher).append('\n');
+            lines.append(head).append(key).append(plugs).append('\n')
+                .append(cipher).append('\n');
+        }
+        String[] kinds = { "settings", "indicator" };
+        String[] texts = { lines.toString(), keyed.toString() };
+        String[] outputs = new String[2];
+        double[] rates = new double[2];
+        for (int round = 0; round < 3; round += 1) {
+            for (int k = 0; k < 2; k += 1) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                System.setProperty(Main.INDICATOR_PROPERTY,
+                                   String.valueOf(k == 1));
+                try {
+                    Main main = new Main(machine.alphabet(),
+                                         new LineReader(texts[k]),
+                                         new GroupWriter(out));
+                    long start = System.nanoTime();
+                    main.process(machine);
+                    rates[k] = Math.max(rates[k], messages
+                        / ((System.nanoTime() - start) / 1e9));
+                } finally {
+                    System.clearProperty(Main.INDICATOR_PROPERTY);
+                }
+                outputs[k] = out.toString();
+            }
+        }
+        if (!outputs[0].equals(outputs[1])) {
+            throw error("indicator output differs");
+        }
+        for (int k = 0; k < 2; k += 1) {
+            System.out.printf("%-9s: %12.0f messages/s%n", kinds[k],
+                              rates[k]);
+        }
+    }
+
+    /** Return the heap in use after a garbage collection. */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i += 1) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** Return ARGS[K] as an integer, or DFLT if ARGS is too short. */
+    private static int intArg(String[] args, int k, int dflt) {
+        if (args.length <= k) {
+            return dflt;
+        }
+        try {
+            return Integer.parseInt(args[k]);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", args[k]);
+        }
+    }
+}
@@ -0,0 +1,635 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.error;
+
+/** A simulation of the Turing bombe: given a crib, a stretch of plain
+ *  text believed to underlie a stretch of cipher text, it finds the rotor
+ *  orders and starting positions of a machine that could have produced
+ *  the cipher text from the crib under some plugboard.
+ *
+ *  The crib and cipher text form a menu: a graph on the letters of the
+ *  alphabet with an edge between the crib and cipher letters at each
+ *  offset. At each rotor order and position, the bombe hypothesizes that
+ *  the most connected letter of the menu is plugged to each letter in
+ *  turn and follows the consequences through the menu: if A is plugged
+ *  to X, and A and D are joined at offset I, D is plugged to the image of
+ *  X under the rotors at I. A plugboard is an involution, so each
+ *  implication holds in reverse too (the diagonal board). Implications
+ *  are kept as one bitset of plugged letters per letter; a letter with
+ *  two plugged letters is a contradiction, which rules out every
+ *  hypothesis reached along the way. A position with a hypothesis that
+ *  survives is a stop.
+ *
+ *  The rotors are stepped exactly as the machine steps them. The
+ *  permutation of the rotors at each offset is read from a table of the
+ *  rotors' permutations at every setting of the rightmost rotor, built
+ *  once for each setting of the other rotors and shared by every
+ *  position that reaches it. Rotor orders are searched in parallel.
+ *  Alphabets are limited to 64 characters, one bitset word per letter.
+ *  @author Ho Jong Kang
+ */
+final class Bombe {
+
+    /** Largest alphabet searched. */
+    static final int MAX_ALPHABET = 64;
+
+    /** Most tables of rotor permutations kept by each search. */
+    private static final int MAX_TABLES = 256;
+
+    /** A bombe for the rotors, slots and stepping of MACHINE, with the
+     *  menu formed by CRIB and CIPHER, strings of the same length in its
+     *  alphabet. */
+    Bombe(Machine machine, String crib, String cipher) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _numRotors = machine.numRotors();
+        _pawls = machine.numPawls();
+        _stepping = machine.stepping();
+        if (_size > MAX_ALPHABET) {
+            throw error("bombe alphabets are limited to %d characters",
+                        MAX_ALPHABET);
+        }
+        if (_pawls >= _numRotors) {
+            throw error("Too many pawls");
+        }
+        long keys = 1;
+        for (int i = 0; i < _numRotors; i += 1) {
+            keys *= _size;
+            if (keys > Long.MAX_VALUE / MAX_ALPHABET) {
+                throw error("too many rotor slots for a bombe");
+            }
+        }
+        RotorLibrary library = machine.library();
+        List<String> names = library.names();
+        List<Rotor> rotors = library.rotors();
+        for (int i = 0; i < names.size(); i += 1) {
+            Rotor rotor = rotors.get(i);
+            if (rotor.size() != _size) {
+                throw error("rotor %s does not fit the alphabet",
+                            names.get(i));
+            }
+            _rotors.put(names.get(i), rotor);
+            _forward.put(names.get(i), table(rotor.permutation(), false));
+            _backward.put(names.get(i), table(rotor.permutation(), true));
+        }
+        _names = names;
+        menu(crib, cipher);
+    }
+
+    /** A stop: a rotor order, a starting position and the plugboard
+     *  connections implied there. */
+    static final class Stop {
+
+        /** A stop at rotor order ORDER with rotor settings POSITIONS
+         *  (from the second slot) and implied connections PLUGS, each
+         *  a pair of characters. */
+        private Stop(int orderIndex, String[] order, String positions,
+                     List<String> plugs) {
+            _orderIndex = orderIndex;
+            _order = order;
+            _positions = positions;
+            _plugs = plugs;
+        }
+
+        /** Return the names of the rotors, from the reflector. */
+        String[] rotors() {
+            return _order.clone();
+        }
+
+        /** Return the rotor settings at the start of the crib, as for
+         *  Machine.setRotors. */
+        String positions() {
+            return _positions;
+        }
+
+        /** Return the plugboard connections implied, as pairs of
+         *  characters. Letters plugged to themselves are omitted. */
+        List<String> plugs() {
+            return _plugs;
+        }
+
+        /** Return my settings line, with the connections implied. */
+        @Override
+        public String toString() {
+            StringBuilder line = new StringBuilder("*");
+            for (String name : _order) {
+                line.append(' ').append(name);
+            }
+            line.append(' ').append(_positions);
+            for (String plug : _plugs) {
+                line.append(" (").append(plug).append(')');
+            }
+            return line.toString();
+        }
+
+        /** Index of my rotor order among those searched. */
+        private final int _orderIndex;
+
+        /** Rotor names, from the reflector. */
+        private final String[] _order;
+
+        /** Rotor settings. */
+        private final String _positions;
+
+        /** Implied connections. */
+        private final List<String> _plugs;
+    }
+
+    /** Return every rotor order my machine accepts: a reflector, then
+     *  rotors that do not move in the slots without pawls, then moving
+     *  rotors, none repeated. */
+    List<String[]> orders() {
+        List<String[]> orders = new ArrayList<>();
+        addOrders(new String[_numRotors], 0, orders);
+        return orders;
+    }
+
+    /** Search ORDERS, each the rotor names from the reflector, at every
+     *  starting position on THREADS threads, and return the stops found,
+     *  ordered by rotor order and position. If the search of any order
+     *  fails, the rest are still finished, and the failure of the first
+     *  such order is then thrown. */
+    List<Stop> search(List<String[]> orders, int threads) {
+        for (String[] order : orders) {
+            checkOrder(order);
+        }
+        Queue<Stop> found = new ConcurrentLinkedQueue<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (int k = 0; k < orders.size(); k += 1) {
+                int index = k;
+                tasks.add(pool.submit(() -> new Search(index,
+                                                       orders.get(index))
+                                      .run(found)));
+            }
+        } finally {
+            pool.shutdown();
+            awaitPool(pool);
+        }
+        _nanos.add(System.nanoTime() - start);
+        for (ForkJoinTask<?> task : tasks) {
+            Throwable failure = task.getException();
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+        List<Stop> stops = new ArrayList<>(found);
+        stops.sort(Comparator.comparingInt((Stop s) -> s._orderIndex)
+                   .thenComparing(s -> s._positions));
+        return stops;
+    }
+
+    /** Return the number of positions tested so far. */
+    long positions() {
+        return _positions.sum();
+    }
+
+    /** Return the number of positions tested per second of searching so
+     *  far. */
+    double positionsPerSecond() {
+        return _positions.sum() * 1e9 / Math.max(1, _nanos.sum());
+    }
+
+    /** Run a search as specified by ARGS, which are
+     *  CONFIG CRIB CIPHER [THREADS], printing each stop as a settings line
+     *  on the standard output and the rate of search on the standard
+     *  error. CRIB and CIPHER are normalized as message lines are, so
+     *  they may be given in either case and with blanks. THREADS
+     *  defaults to the number of processors. */
+    static void run(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            throw error("usage: --bombe CONFIG CRIB CIPHER [THREADS]");
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            try {
+                threads = Integer.parseInt(args[3]);
+            } catch (NumberFormatException excp) {
+                throw error("bad thread count: %s", args[3]);
+            }
+            if (threads < 1) {
+                throw error("bad thread count: %s", args[3]);
+            }
+        }
+        Machine machine = Main.configure(args[0]);
+        InputFilter filter = machine.alphabet().filter();
+        Bombe bombe = new Bombe(machine, normalize(filter, args[1]),
+                                normalize(filter, args[2]));
+        List<String[]> orders = bombe.orders();
+        for (Stop stop : bombe.search(orders, threads)) {
+            System.out.println(stop);
+        }
+        System.err.printf("bombe: %d rotor orders, %d positions, %.0f "
+                          + "positions/s on %d threads%n", orders.size(),
+                          bombe.positions(), bombe.positionsPerSecond(),
+                          threads);
+    }
+
+    /** Return TEXT normalized by FILTER. */
+    private static String normalize(InputFilter filter, String text) {
+        char[] chars = text.toCharArray();
+        return new String(chars, 0, filter.apply(chars, chars.length));
+    }
+
+    /** Build the menu from CRIB and CIPHER. */
+    private void menu(String crib, String cipher) {
+        if (crib.length() != cipher.length() || crib.isEmpty()) {
+            throw error("crib and cipher text must have the same length");
+        }
+        _length = crib.length();
+        int[] degree = new int[_size];
+        int[] from = new int[_length], to = new int[_length];
+        for (int i = 0; i < _length; i += 1) {
+            char p = crib.charAt(i), c = cipher.charAt(i);
+            if (!_alphabet.contains(p) || !_alphabet.contains(c)) {
+                throw error("crib and cipher text must be in the alphabet");
+            }
+            from[i] = _alphabet.toInt(p);
+            to[i] = _alphabet.toInt(c);
+            if (from[i] == to[i]) {
+                throw error("crib letter %c enciphers to itself at %d",
+                            p, i);
+            }
+            degree[from[i]] += 1;
+            degree[to[i]] += 1;
+        }
+        _links = new int[_size][];
+        _linkOffsets = new int[_size][];
+        for (int a = 0; a < _size; a += 1) {
+            _links[a] = new int[degree[a]];
+            _linkOffsets[a] = new int[degree[a]];
+            if (degree[a] > degree[_test]) {
+                _test = a;
+            }
+        }
+        int[] filled = new int[_size];
+        for (int i = 0; i < _length; i += 1) {
+            link(from[i], to[i], i, filled);
+            link(to[i], from[i], i, filled);
+        }
+    }
+
+    /** Record a link from letter A to letter B at offset I of the menu,
+     *  FILLED counting the links recorded for each letter. */
+    private void link(int a, int b, int i, int[] filled) {
+        _links[a][filled[a]] = b;
+        _linkOffsets[a][filled[a]] = i;
+        filled[a] += 1;
+    }
+
+    /** Add to ORDERS every completion of ORDER, whose first SLOT slots
+     *  are filled. */
+    private void addOrders(String[] order, int slot, List<String[]> orders) {
+        if (slot == order.length) {
+            orders.add(order.clone());
+            return;
+        }
+        for (String name : _names) {
+            if (fits(name, slot) && !Arrays.asList(order).subList(0, slot)
+                .contains(name)) {
+                order[slot] = name;
+                addOrders(order, slot + 1, orders);
+            }
+        }
+        order[slot] = null;
+    }
+
+    /** Return true iff the rotor named NAME may go in slot SLOT. */
+    private boolean fits(String name, int slot) {
+        Rotor rotor = _rotors.get(name);
+        if (slot == 0) {
+            return rotor.reflecting();
+        }
+        return !rotor.reflecting()
+            && rotor.rotates() == (slot >= _numRotors - _pawls);
+    }
+
+    /** Check that ORDER is a rotor order my machine accepts. */
+    private void checkOrder(String[] order) {
+        if (order.length != _numRotors) {
+            throw error("wrong number of rotors in order");
+        }
+        for (int i = 0; i < order.length; i += 1) {
+            if (!_rotors.containsKey(order[i]) || !fits(order[i], i)
+                || Arrays.asList(order).indexOf(order[i]) != i) {
+                throw error("bad rotor order: %s",
+                            String.join(" ", order));
+            }
+        }
+    }
+
+    /** Return the table of PERM, or if INVERSE, of its inverse. */
+    private static int[] table(Permutation perm, boolean inverse) {
+        int[] table = inverse ? perm.inverseTable() : perm.table();
+        if (table != null) {
+            return table;
+        }
+        table = new int[perm.size()];
+        for (int c = 0; c < table.length; c += 1) {
+            table[c] = inverse ? perm.invert(c) : perm.permute(c);
+        }
+        return table;
+    }
+
+    /** Wait for every task submitted to POOL to finish. */
+    private static void awaitPool(ForkJoinPool pool) {
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                    return;
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** The search of one rotor order, run by one thread. */
+    private final class Search {
+
+        /** A search of rotor order ORDER, the INDEXth searched. */
+        Search(int index, String[] order) {
+            _index = index;
+            _order = order;
+            int k = order.length;
+            _slots = new Rotor[k];
+            _fwd = new int[k][];
+            _bwd = new int[k][];
+            for (int i = 0; i < k; i += 1) {
+                _slots[i] = _rotors.get(order[i]).copy();
+                _fwd[i] = _forward.get(order[i]);
+                _bwd[i] = _backward.get(order[i]);
+            }
+            int first = k - Math.max(_pawls, 1);
+            _pawled = Arrays.copyOfRange(_slots, first, k);
+            _tables = new int[_length][];
+            _settings = new int[_length];
+            _plugged = new long[_size];
+            _pending = new int[2 * _size];
+        }
+
+        /** Test every starting position, adding the stops found to
+         *  FOUND. */
+        void run(Queue<Stop> found) {
+            int k = _slots.length, n = _size;
+            int[] start = new int[k];
+            long tested = 0;
+            while (true) {
+                for (int i = 1; i < k; i += 1) {
+                    _slots[i].set(start[i]);
+                }
+                for (int i = 0; i < _length; i += 1) {
+                    _stepping.step(_pawled);
+                    _tables[i] = tables();
+                    _settings[i] = _slots[k - 1].setting() * n;
+                }
+                test(start, found);
+                tested += 1;
+                int i = k - 1;
+                while (i > 0 && start[i] == n - 1) {
+                    start[i] = 0;
+                    i -= 1;
+                }
+                if (i == 0) {
+                    break;
+                }
+                start[i] += 1;
+            }
+            _positions.add(tested);
+        }
+
+        /** Return the permutations of my rotors at the current settings of
+         *  all but the rightmost, at every setting of the rightmost,
+         *  indexed by setting * size + input. */
+        private int[] tables() {
+            int k = _slots.length, n = _size;
+            long key = 0;
+            for (int i = 0; i < k - 1; i += 1) {
+                key = key * n + _slots[i].setting();
+            }
+            if (key == _lastKey && _lastTables != null) {
+                return _lastTables;
+            }
+            int[] tables = _cache.get(key);
+            if (tables == null) {
+                tables = newTables(key);
+            }
+            _lastKey = key;
+            _lastTables = tables;
+            return tables;
+        }
+
+        /** Return new permutations of my rotors for tables(), at the
+         *  current settings, which give KEY, and cache them. */
+        private int[] newTables(long key) {
+            int k = _slots.length, n = _size;
+            if (_cache.size() >= MAX_TABLES) {
+                _cache.clear();
+            }
+            int[] inner = new int[n];
+            for (int c = 0; c < n; c += 1) {
+                int x = c;
+                for (int i = k - 2; i >= 0; i -= 1) {
+                    x = RotorEngine.through(_fwd[i], x, _slots[i].setting(),
+                                            n);
+                }
+                for (int i = 1; i < k - 1; i += 1) {
+                    x = RotorEngine.through(_bwd[i], x, _slots[i].setting(),
+                                            n);
+                }
+                inner[c] = x;
+            }
+            int[] tables = new int[n * n];
+            int[] fwd = _fwd[k - 1], bwd = _bwd[k - 1];
+            for (int s = 0; s < n; s += 1) {
+                for (int c = 0; c < n; c += 1) {
+                    int x = RotorEngine.through(fwd, c, s, n);
+                    tables[s * n + c] =
+                        RotorEngine.through(bwd, inner[x], s, n);
+                }
+            }
+            _cache.put(key, tables);
+            return tables;
+        }
+
+        /** Test each hypothesis for the test letter at the position whose
+         *  rotor settings were START, adding a stop to FOUND for each that
+         *  survives. */
+        private void test(int[] start, Queue<Stop> found) {
+            long ruledOut = 0;
+            for (int x = 0; x < _size; x += 1) {
+                if ((ruledOut & 1L << x) != 0) {
+                    continue;
+                }
+                boolean consistent = follow(_test, x);
+                ruledOut |= _plugged[_test];
+                if (consistent) {
+                    found.add(stop(start));
+                }
+            }
+        }
+
+        /** Follow the consequences of plugging letter A to letter X
+         *  through the menu into _plugged. Return false if they
+         *  contradict, leaving _plugged partly filled. */
+        private boolean follow(int a, int x) {
+            long[] plugged = _plugged;
+            Arrays.fill(plugged, 0);
+            int[] pending = _pending;
+            _top = 0;
+            if (!plug(a, x) || !plug(x, a)) {
+                return false;
+            }
+            while (_top > 0) {
+                _top -= 2;
+                int b = pending[_top], y = pending[_top + 1];
+                int[] links = _links[b], offsets = _linkOffsets[b];
+                for (int j = 0; j < links.length; j += 1) {
+                    int i = offsets[j], d = links[j];
+                    int z = _tables[i][_settings[i] + y];
+                    if (!plug(d, z) || !plug(z, d)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record in _plugged that letter B is plugged to letter Y, and
+         *  add it to _pending if it is new. Return false if B is already
+         *  plugged to another letter. */
+        private boolean plug(int b, int y) {
+            long bit = 1L << y, row = _plugged[b];
+            if (row == bit) {
+                return true;
+            }
+            _plugged[b] = row | bit;
+            if (row != 0) {
+                return false;
+            }
+            _pending[_top] = b;
+            _pending[_top + 1] = y;
+            _top += 2;
+            return true;
+        }
+
+        /** Return the stop at START given by _plugged. */
+        private Stop stop(int[] start) {
+            StringBuilder positions = new StringBuilder();
+            for (int i = 1; i < start.length; i += 1) {
+                positions.append(_alphabet.toChar(start[i]));
+            }
+            List<String> plugs = new ArrayList<>();
+            for (int b = 0; b < _size; b += 1) {
+                if (_plugged[b] != 0) {
+                    int y = Long.numberOfTrailingZeros(_plugged[b]);
+                    if (b < y) {
+                        plugs.add("" + _alphabet.toChar(b)
+                                  + _alphabet.toChar(y));
+                    }
+                }
+            }
+            return new Stop(_index, _order, positions.toString(), plugs);
+        }
+
+        /** Index of my rotor order among those searched. */
+        private final int _index;
+
+        /** Names of my rotors. */
+        private final String[] _order;
+
+        /** My own copies of the rotors, by slot. */
+        private final Rotor[] _slots;
+
+        /** The rotors in the pawled slots, as passed to _stepping. */
+        private final Rotor[] _pawled;
+
+        /** Tables and inverse tables of the rotors, by slot. */
+        private final int[][] _fwd, _bwd;
+
+        /** Permutation tables at each offset of the crib. */
+        private final int[][] _tables;
+
+        /** Setting of the rightmost rotor at each offset, times the
+         *  alphabet size. */
+        private final int[] _settings;
+
+        /** Letters plugged to each letter, as bitsets. */
+        private final long[] _plugged;
+
+        /** Number of elements of _pending in use. */
+        private int _top;
+
+        /** Implications not yet followed, as pairs of letters. Each
+         *  letter is added at most once, when it is first plugged. */
+        private final int[] _pending;
+
+        /** The key of the last call of tables(). */
+        private long _lastKey;
+
+        /** The result of the last call of tables(), or null. */
+        private int[] _lastTables;
+
+        /** Tables by key of the settings of all but the rightmost
+         *  rotor. */
+        private final Map<Long, int[]> _cache = new HashMap<>();
+    }
+
+    /** Alphabet of my machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Slots and pawls of my machine. */
+    private final int _numRotors, _pawls;
+
+    /** Stepping of my machine. */
+    private final SteppingStrategy _stepping;
+
+    /** Names of the available rotors. */
+    private final List<String> _names;
+
+    /** Available rotors, by name. */
+    private final Map<String, Rotor> _rotors = new HashMap<>();
+
+    /** Tables and inverse tables of the available rotors, by name. */
+    private final Map<String, int[]> _forward = new HashMap<>(),
+        _backward = new HashMap<>();
+
+    /** Length of the crib. */
+    private int _length;
+
+    /** Letters linked to each letter by the menu. */
+    private int[][] _links;
+
+    /** Offset of each link in _links. */
+    private int[][] _linkOffsets;
+
+    /** The letter whose hypotheses are tested: the most linked. */
+    private int _test;
+
+    /** Positions tested. */
+    private final LongAdder _positions = new LongAdder();
+
+    /** Time spent searching, in nanoseconds. */
+    private final LongAdder _nanos = new LongAdder();
+}
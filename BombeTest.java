@@ -0,0 +1,125 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Ho Jong Kang
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A crib. */
+    private static final String CRIB = "WETTERVORHERSAGEBISKAYA";
+
+    /** Settings under which the crib is enciphered. */
+    private static final String SETTINGS =
+        "* B III IV I XLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return an M3 machine: the naval rotors, with three moving
+     *  slots and no fixed one. */
+    private Machine m3() {
+        return Main.configure(new Scanner(
+            Naval.CONFIG.replaceFirst(" 5 3", " 4 3")));
+    }
+
+    /** Return CRIB enciphered under SETTINGS. */
+    private String cipher() {
+        Machine machine = m3();
+        Main.setUp(machine, SETTINGS);
+        return machine.convert(CRIB);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testOrders() {
+        Bombe bombe = new Bombe(m3(), CRIB, cipher());
+        List<String[]> orders = bombe.orders();
+        assertEquals(2 * 5 * 4 * 3, orders.size());
+        for (String[] order : orders) {
+            assertTrue(order[0].equals("B") || order[0].equals("C"));
+            assertEquals(4, Arrays.stream(order).distinct().count());
+        }
+        Machine naval = Naval.machine();
+        Main.setUp(naval, Naval.SETTINGS);
+        String cipher = naval.convert(CRIB);
+        assertEquals(2 * 2 * 5 * 4 * 3,
+                     new Bombe(naval, CRIB, cipher).orders().size());
+    }
+
+    @Test
+    public void testFindsSettings() {
+        Bombe bombe = new Bombe(m3(), CRIB, cipher());
+        List<String[]> orders = new ArrayList<>();
+        orders.add(new String[] { "B", "I", "II", "III" });
+        orders.add(new String[] { "B", "III", "IV", "I" });
+        orders.add(new String[] { "C", "III", "IV", "I" });
+        List<Bombe.Stop> stops = bombe.search(orders, 2);
+        assertEquals(3 * 26 * 26 * 26, bombe.positions());
+        assertTrue(bombe.positionsPerSecond() > 0);
+        Bombe.Stop found = null;
+        for (Bombe.Stop stop : stops) {
+            if (stop.positions().equals("XLE")) {
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        assertArrayEquals(new String[] { "B", "III", "IV", "I" },
+                          found.rotors());
+        assertEquals(Arrays.asList("BY", "EX", "HQ", "IP", "RT"),
+                     found.plugs());
+        assertEquals("* B III IV I XLE (BY) (EX) (HQ) (IP) (RT)",
+                     found.toString());
+        Machine check = m3();
+        Main.setUp(check, found.toString());
+        assertEquals(cipher(), check.convert(CRIB));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSelfEncipherment() {
+        new Bombe(m3(), "ABC", "XBZ");
+    }
+
+    @Test
+    public void testFailure() {
+        Machine machine = m3();
+        machine.setStepping(new SteppingStrategy() {
+            @Override
+            public void step(Rotor[] rotors) {
+                throw new EnigmaException("stuck");
+            }
+
+            @Override
+            public void advance(Rotor[] rotors, long n) {
+            }
+        });
+        Bombe bombe = new Bombe(machine, CRIB, cipher());
+        try {
+            bombe.search(bombe.orders(), 2);
+            fail("search failure not thrown");
+        } catch (EnigmaException excp) {
+            assertEquals("stuck", excp.getMessage());
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadOrder() {
+        Bombe bombe = new Bombe(m3(), CRIB, cipher());
+        List<String[]> orders = new ArrayList<>();
+        orders.add(new String[] { "I", "B", "II", "III" });
+        bombe.search(orders, 1);
+    }
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** An Alphabet consisting of the Unicode characters in a certain range in
@@ -14,21 +16,25 @@ class CharacterRangeExtra extends Alphabet {
      *  @param sorted sorted String*/
     CharacterRangeExtra(String order, String sorted) {
         _order = order;
-        _first = Character.toUpperCase(sorted.charAt(0));
-        _last = Character.toUpperCase(sorted.charAt(sorted.length() - 1));
-        if (_first > _last) {
+        if (sorted.isEmpty()) {
             throw error("empty range of characters");
         }
+        _first = sorted.charAt(0);
+        _index = new int[sorted.charAt(sorted.length() - 1) - _first + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < order.length(); i += 1) {
+            _index[order.charAt(i) - _first] = i;
+        }
     }
 
     @Override
     int size() {
-        return _last - _first + 1;
+        return _order.length();
     }
 
     @Override
     boolean contains(char ch) {
-        return ch >= _first && ch <= _last;
+        return index(ch) >= 0;
     }
 
     @Override
@@ -38,16 +44,26 @@ class CharacterRangeExtra extends Alphabet {
 
     @Override
     int toInt(char ch) {
-        if (!contains(ch)) {
+        int index = index(ch);
+        if (index < 0) {
             throw error("character out of range");
         }
-        return _order.indexOf(ch);
+        return index;
     }
 
-    /** Range of characters in this Alphabet. */
-    private char _first, _last;
+    /** Return the index of CH in _order, or -1 if it is not there. */
+    private int index(char ch) {
+        int k = ch - _first;
+        return k >= 0 && k < _index.length ? _index[k] : -1;
+    }
 
     /** String that keeps order. */
     private String _order;
 
+    /** The least character of _order. */
+    private char _first;
+
+    /** The index in _order of each character from _first on, or -1. */
+    private int[] _index;
+
 }
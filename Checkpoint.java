@@ -0,0 +1,216 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.error;
+
+/** The state of a run of Main at the end of a converted message line,
+ *  from which the run can be resumed to produce exactly the rest of the
+ *  output it would have produced: the number of bytes of input consumed
+ *  and of output produced, the settings line in force, and the setting
+ *  of every rotor.
+ *
+ *  A checkpoint file holds a magic number and version, the two offsets,
+ *  the length in bytes of the settings line followed by the line in
+ *  UTF-8, and the rotor count followed by the settings, all big-endian
+ *  as written by DataOutputStream. Unlike writeUTF, the length is an
+ *  int, so settings lines of any length can be recorded.
+ *  @author Ho Jong Kang
+ */
+final class Checkpoint {
+
+    /** Identifies checkpoint files. */
+    private static final int MAGIC = 0x454e4350;
+
+    /** Version of the file format. */
+    private static final int VERSION = 2;
+
+    /** A checkpoint after INPUTOFFSET bytes of input and OUTPUTOFFSET
+     *  bytes of output, with the settings line SETTINGS in force and rotor
+     *  settings POSITIONS, which becomes owned by this checkpoint. */
+    Checkpoint(long inputOffset, long outputOffset, String settings,
+               int[] positions) {
+        _inputOffset = inputOffset;
+        _outputOffset = outputOffset;
+        _settings = settings;
+        _positions = positions;
+    }
+
+    /** Return the number of bytes of input consumed. */
+    long inputOffset() {
+        return _inputOffset;
+    }
+
+    /** Return the number of bytes of output produced. */
+    long outputOffset() {
+        return _outputOffset;
+    }
+
+    /** Return the settings line in force. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return the setting of each rotor slot, from left to right. */
+    int[] positions() {
+        return _positions.clone();
+    }
+
+    /** Return the checkpoint in FILE, or null if there is no FILE. */
+    static Checkpoint read(Path file) {
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data =
+                 new DataInputStream(new BufferedInputStream(in))) {
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                throw error("%s is not a checkpoint file", file);
+            }
+            long inputOffset = data.readLong();
+            long outputOffset = data.readLong();
+            byte[] line = new byte[data.readInt()];
+            data.readFully(line);
+            String settings = new String(line, StandardCharsets.UTF_8);
+            int[] positions = new int[data.readInt()];
+            for (int i = 0; i < positions.length; i += 1) {
+                positions[i] = data.readInt();
+            }
+            return new Checkpoint(inputOffset, outputOffset, settings,
+                                  positions);
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", file);
+        }
+    }
+
+    /** Write me to FILE. The checkpoint is written under a temporary name
+     *  and moved into place, so that FILE always holds a whole
+     *  checkpoint. */
+    void write(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, ".enigma", ".checkpoint");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp);
+                 DataOutputStream data =
+                     new DataOutputStream(new BufferedOutputStream(out))) {
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.writeLong(_inputOffset);
+                data.writeLong(_outputOffset);
+                byte[] line = _settings.getBytes(StandardCharsets.UTF_8);
+                data.writeInt(line.length);
+                data.write(line);
+                data.writeInt(_positions.length);
+                for (int position : _positions) {
+                    data.writeInt(position);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } finally {
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /** Writes checkpoints to a file on a background thread. Submitting a
+     *  checkpoint never blocks; if the thread falls behind, only the
+     *  latest checkpoint submitted is written. */
+    static final class Writer {
+
+        /** A writer of checkpoints to FILE. */
+        Writer(Path file) {
+            _file = file;
+            _thread = new Thread(this::writeAll, "enigma-checkpoint");
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+
+        /** Arrange for CHECKPOINT to be written, replacing any checkpoint
+         *  submitted but not yet written. */
+        void submit(Checkpoint checkpoint) {
+            _pending.set(checkpoint);
+            LockSupport.unpark(_thread);
+        }
+
+        /** Write any pending checkpoint and stop. Return true iff every
+         *  checkpoint written succeeded. */
+        boolean close() {
+            _closed = true;
+            LockSupport.unpark(_thread);
+            boolean interrupted = false;
+            while (_thread.isAlive()) {
+                try {
+                    _thread.join();
+                } catch (InterruptedException excp) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return _failure == null;
+        }
+
+        /** Write checkpoints as they are submitted until closed. */
+        private void writeAll() {
+            while (true) {
+                boolean closed = _closed;
+                Checkpoint checkpoint = _pending.getAndSet(null);
+                if (checkpoint != null && _failure == null) {
+                    try {
+                        checkpoint.write(_file);
+                    } catch (IOException excp) {
+                        _failure = excp;
+                    }
+                } else if (closed) {
+                    return;
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        }
+
+        /** File receiving checkpoints. */
+        private final Path _file;
+
+        /** Thread writing checkpoints. */
+        private final Thread _thread;
+
+        /** The latest checkpoint not yet written, or null. */
+        private final AtomicReference<Checkpoint> _pending =
+            new AtomicReference<>();
+
+        /** True once no more checkpoints will be submitted. */
+        private volatile boolean _closed;
+
+        /** The first failure to write a checkpoint, or null. */
+        private volatile IOException _failure;
+    }
+
+    /** Bytes of input consumed. */
+    private final long _inputOffset;
+
+    /** Bytes of output produced. */
+    private final long _outputOffset;
+
+    /** Settings line in force. */
+    private final String _settings;
+
+    /** Setting of each rotor slot. */
+    private final int[] _positions;
+}
@@ -0,0 +1,152 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** The suite of all JUnit tests for the Checkpoint class.
+ *  @author Ho Jong Kang
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Messages, with a blank line between two of them. */
+    private static final String MESSAGES =
+        "* B BETA III IV I AXLE (YF) (ZH)\n"
+        + "HYIHL BBQNR BKLIA NOTHE\n"
+        + "HELLO WORLD\n"
+        + "ABCDEFGHIJKLMNOPQRSTUVWXY\n"
+        + "\n"
+        + "* B BETA I II III AAAA\n"
+        + "FROM HIS SHOULDER HIAWATHA\n"
+        + "TOOK THE CAMERA OF ROSEWOOD\n"
+        + "* B GAMMA III IV V BQRS (AQ)\n"
+        + "MADE OF SLIDING FOLDING ROSEWOOD\n"
+        + "NEATLY PUT IT ALL TOGETHER\n";
+
+    /** A settings line that fails, standing in for a crash. */
+    private static final String FAULT = "* B BETA I II NONE AAAA\n";
+
+    /** Run Main on the files CONFIG, INPUT and OUTPUT, checkpointing to
+     *  CHECKPOINT after every message line, resuming if RESUME, and return
+     *  the error raised, or null. */
+    private EnigmaException run(Path config, Path input, Path output,
+                                Path checkpoint, boolean resume) {
+        System.setProperty(Main.CHECKPOINT_PROPERTY, checkpoint.toString());
+        System.setProperty(Main.CHECKPOINT_INTERVAL_PROPERTY, "1");
+        System.setProperty(Main.RESUME_PROPERTY, String.valueOf(resume));
+        try {
+            new Main(new String[] { config.toString(), input.toString(),
+                                    output.toString() }).process();
+            return null;
+        } catch (EnigmaException excp) {
+            return excp;
+        } finally {
+            System.clearProperty(Main.CHECKPOINT_PROPERTY);
+            System.clearProperty(Main.CHECKPOINT_INTERVAL_PROPERTY);
+            System.clearProperty(Main.RESUME_PROPERTY);
+        }
+    }
+
+    /** Return the contents of FILE. */
+    private String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), Charset.defaultCharset());
+    }
+
+    /** Write TEXT to FILE. */
+    private void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(Charset.defaultCharset()));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReadWrite() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path file = dir.resolve("checkpoint");
+        assertNull(Checkpoint.read(file));
+        new Checkpoint(1L << 40, 17, "* B BETA I II III AAAA",
+                       new int[] { 0, 0, 3, 25, 1 }).write(file);
+        Checkpoint got = Checkpoint.read(file);
+        assertEquals(1L << 40, got.inputOffset());
+        assertEquals(17, got.outputOffset());
+        assertEquals("* B BETA I II III AAAA", got.settings());
+        assertArrayEquals(new int[] { 0, 0, 3, 25, 1 }, got.positions());
+
+        Checkpoint.Writer writer = new Checkpoint.Writer(file);
+        for (int i = 0; i < 100; i += 1) {
+            writer.submit(new Checkpoint(i, 2 * i, "*", new int[] { i }));
+        }
+        assertTrue(writer.close());
+        got = Checkpoint.read(file);
+        assertEquals(99, got.inputOffset());
+        assertArrayEquals(new int[] { 99 }, got.positions());
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testLongSettings() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path file = dir.resolve("checkpoint");
+        StringBuilder settings = new StringBuilder("* B BETA I II III AAAA");
+        while (settings.length() < 100000) {
+            settings.append(" (AB)");
+        }
+        settings.append(" \u00c4\u20ac");
+        new Checkpoint(3, 4, settings.toString(), new int[] { 7 })
+            .write(file);
+        Checkpoint got = Checkpoint.read(file);
+        assertEquals(settings.toString(), got.settings());
+        assertArrayEquals(new int[] { 7 }, got.positions());
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path config = dir.resolve("config");
+        Path input = dir.resolve("input");
+        Path output = dir.resolve("output");
+        Path checkpoint = dir.resolve("checkpoint");
+        write(config, Naval.CONFIG);
+
+        write(input, MESSAGES);
+        assertNull(run(config, input, output, checkpoint, false));
+        assertFalse(Files.exists(checkpoint));
+        String expected = read(output);
+
+        int failures = 0;
+        for (int cut = 1; cut < MESSAGES.length(); cut += 1) {
+            if (MESSAGES.charAt(cut - 1) != '\n') {
+                continue;
+            }
+            write(input, MESSAGES.substring(0, cut) + FAULT);
+            Files.deleteIfExists(checkpoint);
+            if (run(config, input, output, checkpoint, false) != null) {
+                failures += 1;
+            }
+            write(input, MESSAGES);
+            assertNull(run(config, input, output, checkpoint, true));
+            assertEquals("resumed after " + cut, expected, read(output));
+            assertFalse(Files.exists(checkpoint));
+        }
+        assertTrue(failures > 5);
+        for (Path file : new Path[] { config, input, output, dir }) {
+            Files.delete(file);
+        }
+    }
+
+}
@@ -0,0 +1,721 @@
+package enigma;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static enigma.EnigmaException.error;
+
+/** Converts characters through the rotors and plugboard of a Machine with
+ *  classic stepping, by code generated for its selection of rotors. The
+ *  code is a hidden class holding the rotors' wiring tables and notches
+ *  as static final constants, that steps the exact number of pawled
+ *  rotors and converts through every slot in straight-line code, without
+ *  calls. Generated code is cached for the most recently used selections;
+ *  the plugboard, which usually changes with every message, is passed to
+ *  it rather than compiled in, so that it does not defeat the cache.
+ *
+ *  The rotors' settings are held by the kernel while it converts: load()
+ *  them from the rotors before converting and store() them back after.
+ *  @author Ho Jong Kang
+ */
+final class CipherKernel {
+
+    /** Most selections of rotors whose code is kept. */
+    private static final int CACHE_SIZE = 256;
+
+    /** Most slots for which code is generated. */
+    private static final int MAX_SLOTS = 128;
+
+    /** System property set to "runtime" in a native image, which cannot
+     *  define classes as it runs. */
+    private static final String IMAGE_CODE_PROPERTY =
+        "org.graalvm.nativeimage.imagecode";
+
+    /** A kernel for the rotors SLOTS, of which those from FIRST on are
+     *  pawled, and plugboard table PLUGBOARD (null for none), run by
+     *  CODE. */
+    private CipherKernel(Code code, Rotor[] slots, int first,
+                         int[] plugboard) {
+        _code = code;
+        _slots = slots;
+        _first = first;
+        _plugboard = plugboard;
+        _size = slots[0].size();
+        _settings = new int[slots.length];
+    }
+
+    /** Return a kernel for ROTORS, from the reflector to the rightmost
+     *  rotor, of which the last max(PAWLS, 1) are advanced by classic
+     *  stepping, and PLUGBOARD (which may be null). Return null if a
+     *  RotorEngine could not convert for them, if a pawled rotor is not an
+     *  ordinary MovingRotor, if there are too many pawls or slots, or if
+     *  running in a native image. */
+    static CipherKernel of(List<Rotor> rotors, int pawls,
+                           Permutation plugboard) {
+        if (rotors.size() > MAX_SLOTS
+            || "runtime".equals(System.getProperty(IMAGE_CODE_PROPERTY))
+            || RotorEngine.of(rotors, plugboard) == null) {
+            return null;
+        }
+        Rotor[] slots = rotors.toArray(new Rotor[rotors.size()]);
+        int first = slots.length - Math.max(pawls, 1);
+        if (first <= 0) {
+            return null;
+        }
+        Key key = new Key(slots, first);
+        Code code;
+        synchronized (CACHE) {
+            code = CACHE.get(key);
+        }
+        if (code == null) {
+            byte[][] notches = notches(slots, first);
+            if (notches == null) {
+                return null;
+            }
+            code = generate(slots, first, notches);
+            synchronized (CACHE) {
+                CACHE.put(key, code);
+            }
+        }
+        return new CipherKernel(code, slots, first,
+                                plugboard == null ? null : plugboard.table());
+    }
+
+    /** Return the number of selections of rotors whose code is cached. */
+    static int cached() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    /** Take my settings from my rotors. */
+    void load() {
+        for (int i = 0; i < _slots.length; i += 1) {
+            _settings[i] = _slots[i].setting();
+        }
+    }
+
+    /** Set my pawled rotors to my settings. */
+    void store() {
+        for (int i = _first; i < _slots.length; i += 1) {
+            _slots[i].set(_settings[i]);
+        }
+    }
+
+    /** Advance my settings and return the conversion of C, which is taken
+     *  modulo the alphabet size. */
+    int convert(int c) {
+        int n = _size;
+        if (c < 0 || c >= n) {
+            c %= n;
+            if (c < 0) {
+                c += n;
+            }
+        }
+        return _code.apply(c, _settings, _plugboard);
+    }
+
+    /** Generated code for one selection of rotors. */
+    interface Code {
+        /** Advance SETTINGS and return the conversion of C (in the range
+         *  0..size - 1) through the plugboard PLUGBOARD (null for none),
+         *  the rotors at SETTINGS and the plugboard again. */
+        int apply(int c, int[] settings, int[] plugboard);
+    }
+
+    /** For each of SLOTS from FIRST + 1 on, which must be MovingRotors,
+     *  whether it is at a notch at each setting. Return null if a slot
+     *  is not an ordinary MovingRotor, or its notches cannot be read. */
+    private static byte[][] notches(Rotor[] slots, int first) {
+        byte[][] notches = new byte[slots.length][];
+        for (int i = first; i < slots.length; i += 1) {
+            if (slots[i].getClass() != MovingRotor.class) {
+                return null;
+            }
+            if (i == first) {
+                continue;
+            }
+            Rotor probe = slots[i].copy();
+            notches[i] = new byte[probe.size()];
+            try {
+                for (int p = 0; p < probe.size(); p += 1) {
+                    probe.set(p);
+                    notches[i][p] = (byte) (probe.atNotch() ? 1 : 0);
+                }
+            } catch (RuntimeException excp) {
+                return null;
+            }
+        }
+        return notches;
+    }
+
+    /** Return new code for the rotors SLOTS, of which those from FIRST on
+     *  are pawled and from FIRST + 1 on have notches at the settings
+     *  flagged in NOTCHES. */
+    private static Code generate(Rotor[] slots, int first,
+                                 byte[][] notches) {
+        Assembler asm = new Assembler(slots, first, notches);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(asm.classFile(),
+                                                asm.constants(), true);
+            return (Code) lookup.findConstructor(lookup.lookupClass(),
+                                                 MethodType.methodType(
+                                                     void.class))
+                .invoke();
+        } catch (Throwable excp) {
+            throw error("could not generate kernel: %s", excp);
+        }
+    }
+
+    /** Identifies a selection of rotors: the same permutations, notches
+     *  and pawls. */
+    private static final class Key {
+
+        /** The key for rotors SLOTS, of which those from FIRST on are
+         *  pawled. */
+        Key(Rotor[] slots, int first) {
+            _first = first;
+            _permutations = new Permutation[slots.length];
+            _notches = new String[slots.length];
+            for (int i = 0; i < slots.length; i += 1) {
+                _permutations[i] = slots[i].permutation();
+                if (slots[i] instanceof MovingRotor) {
+                    _notches[i] = ((MovingRotor) slots[i]).notches();
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return _first == other._first
+                && Arrays.equals(_permutations, other._permutations)
+                && Arrays.equals(_notches, other._notches);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(_permutations)
+                + Arrays.hashCode(_notches) + _first;
+        }
+
+        /** First pawled slot. */
+        private final int _first;
+
+        /** Permutation of each slot, compared by identity. */
+        private final Permutation[] _permutations;
+
+        /** Notches of each slot, or null. */
+        private final String[] _notches;
+    }
+
+    /** Writes the class file of the code for a selection of rotors. The
+     *  class file is of version 49, which needs no stack map frames. */
+    private static final class Assembler {
+
+        /** Opcodes used. */
+        private static final int ALOAD_0 = 0x2a, ALOAD = 0x19,
+            ILOAD = 0x15, ISTORE = 0x36, IALOAD = 0x2e, BALOAD = 0x33,
+            IASTORE = 0x4f, IADD = 0x60, ISUB = 0x64, ICONST_0 = 0x03,
+            BIPUSH = 0x10, SIPUSH = 0x11,
+            LDC_W = 0x13, IINC = 0x84, IFEQ = 0x99, IFGE = 0x9c,
+            IF_ICMPLT = 0xa1, IF_ICMPGT = 0xa3, IFNULL = 0xc6,
+            IRETURN = 0xac, RETURN = 0xb1, GETSTATIC = 0xb2,
+            PUTSTATIC = 0xb3, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8,
+            CHECKCAST = 0xc0;
+
+        /** Constant pool tags used. */
+        private static final int UTF8 = 1, INTEGER = 3, CLASS = 7,
+            STRING = 8, FIELDREF = 9, METHODREF = 10, NAME_AND_TYPE = 12;
+
+        /** Name of the generated class. */
+        private static final String NAME = "enigma/CipherKernel$Generated";
+
+        /** Locals of apply: the character being converted, the settings,
+         *  the plugboard, the leftmost rotor to advance, and the first of
+         *  the settings of each slot. */
+        private static final int X = 1, SETTINGS = 2, PLUGBOARD = 3,
+            FROM = 4, SLOT = 5;
+
+        /** An assembler for the rotors SLOTS, of which those from FIRST on
+         *  are pawled and from FIRST + 1 on have notches at the settings
+         *  flagged in NOTCHES. */
+        Assembler(Rotor[] slots, int first, byte[][] notches) {
+            _slots = slots.length;
+            _first = first;
+            _size = slots[0].size();
+            _forward = new int[_slots];
+            _backward = new int[_slots];
+            _notch = new int[_slots];
+            for (int i = 0; i < slots.length; i += 1) {
+                _forward[i] = field("F" + i, slots[i].permutation().table());
+                if (i > 0) {
+                    _backward[i] = field("B" + i,
+                                         slots[i].permutation()
+                                         .inverseTable());
+                }
+                if (notches[i] != null) {
+                    _notch[i] = field("N" + i, notches[i]);
+                }
+            }
+        }
+
+        /** Return the constants to be passed as class data. */
+        List<Object> constants() {
+            return _constants;
+        }
+
+        /** Return the class file. */
+        byte[] classFile() {
+            Bytes init = new Bytes();
+            init.u1(ALOAD_0);
+            init.u1(INVOKESPECIAL);
+            init.u2(method("java/lang/Object", "<init>", "()V"));
+            init.u1(RETURN);
+            Bytes clinit = classInitializer();
+            Bytes apply = apply();
+            int thisClass = classRef(NAME);
+            int superClass = classRef("java/lang/Object");
+            int code = classRef("enigma/CipherKernel$Code");
+            int[] names = { utf8("<init>"), utf8("<clinit>"), utf8("apply") };
+            int[] types = { utf8("()V"), utf8("()V"), utf8("(I[I[I)I") };
+            int codeName = utf8("Code");
+
+            Bytes out = new Bytes();
+            out.u4(0xcafebabe);
+            out.u2(0);
+            out.u2(49);
+            out.u2(_count + 1);
+            out.bytes(_pool);
+            out.u2(0x0030);
+            out.u2(thisClass);
+            out.u2(superClass);
+            out.u2(1);
+            out.u2(code);
+            out.u2(_constants.size());
+            out.bytes(_fields);
+            out.u2(3);
+            Bytes[] bodies = { init, clinit, apply };
+            int[] flags = { 0x0001, 0x0008, 0x0001 };
+            int[] locals = { 1, 0, SLOT + _slots };
+            for (int m = 0; m < 3; m += 1) {
+                out.u2(flags[m]);
+                out.u2(names[m]);
+                out.u2(types[m]);
+                out.u2(1);
+                out.u2(codeName);
+                out.u4(12 + bodies[m].size());
+                out.u2(8);
+                out.u2(locals[m]);
+                out.u4(bodies[m].size());
+                out.bytes(bodies[m]);
+                out.u2(0);
+                out.u2(0);
+            }
+            out.u2(0);
+            return out.toArray();
+        }
+
+        /** Return the code of the class initializer, which sets each
+         *  static field to its constant from the class data. */
+        private Bytes classInitializer() {
+            Bytes code = new Bytes();
+            int lookup = method("java/lang/invoke/MethodHandles", "lookup",
+                                "()Ljava/lang/invoke/MethodHandles$Lookup;");
+            int classDataAt =
+                method("java/lang/invoke/MethodHandles", "classDataAt",
+                       "(Ljava/lang/invoke/MethodHandles$Lookup;"
+                       + "Ljava/lang/String;Ljava/lang/Class;I)"
+                       + "Ljava/lang/Object;");
+            int name = string("_");
+            for (int k = 0; k < _constants.size(); k += 1) {
+                String type = _constants.get(k) instanceof int[] ? "[I"
+                    : "[B";
+                code.u1(INVOKESTATIC);
+                code.u2(lookup);
+                code.u1(LDC_W);
+                code.u2(name);
+                code.u1(LDC_W);
+                code.u2(classRef(type));
+                push(code, k);
+                code.u1(INVOKESTATIC);
+                code.u2(classDataAt);
+                code.u1(CHECKCAST);
+                code.u2(classRef(type));
+                code.u1(PUTSTATIC);
+                code.u2(_fieldRefs.get(k));
+            }
+            code.u1(RETURN);
+            return code;
+        }
+
+        /** Return the code of apply. */
+        private Bytes apply() {
+            Bytes code = new Bytes();
+            for (int i = 0; i < _slots; i += 1) {
+                code.u1(ALOAD);
+                code.u1(SETTINGS);
+                push(code, i);
+                code.u1(IALOAD);
+                code.u1(ISTORE);
+                code.u1(SLOT + i);
+            }
+            int pawled = _slots - _first;
+            push(code, pawled - 1);
+            code.u1(ISTORE);
+            code.u1(FROM);
+            for (int j = pawled - 1; j > 0; j -= 1) {
+                code.u1(GETSTATIC);
+                code.u2(_notch[_first + j]);
+                code.u1(ILOAD);
+                code.u1(SLOT + _first + j);
+                code.u1(BALOAD);
+                int skip = code.jump(IFEQ);
+                push(code, j - 1);
+                code.u1(ISTORE);
+                code.u1(FROM);
+                code.land(skip);
+            }
+            for (int i = 0; i < pawled; i += 1) {
+                int slot = SLOT + _first + i;
+                code.u1(ILOAD);
+                code.u1(FROM);
+                push(code, i);
+                int skip = code.jump(IF_ICMPGT);
+                code.u1(IINC);
+                code.u1(slot);
+                code.u1(1);
+                code.u1(ILOAD);
+                code.u1(slot);
+                push(code, _size);
+                int inRange = code.jump(IF_ICMPLT);
+                code.u1(ICONST_0);
+                code.u1(ISTORE);
+                code.u1(slot);
+                code.land(skip);
+                code.land(inRange);
+                code.u1(ALOAD);
+                code.u1(SETTINGS);
+                push(code, _first + i);
+                code.u1(ILOAD);
+                code.u1(slot);
+                code.u1(IASTORE);
+            }
+            plug(code);
+            for (int i = _slots - 1; i >= 0; i -= 1) {
+                through(code, _forward[i], i);
+            }
+            for (int j = 1; j < _slots; j += 1) {
+                through(code, _backward[j], j);
+            }
+            plug(code);
+            code.u1(ILOAD);
+            code.u1(X);
+            code.u1(IRETURN);
+            return code;
+        }
+
+        /** Append to CODE the conversion of X through the plugboard, if
+         *  there is one. */
+        private void plug(Bytes code) {
+            code.u1(ALOAD);
+            code.u1(PLUGBOARD);
+            int skip = code.jump(IFNULL);
+            code.u1(ALOAD);
+            code.u1(PLUGBOARD);
+            code.u1(ILOAD);
+            code.u1(X);
+            code.u1(IALOAD);
+            code.u1(ISTORE);
+            code.u1(X);
+            code.land(skip);
+        }
+
+        /** Append to CODE the conversion of X by the table in field TABLE
+         *  at the setting of slot I, as RotorEngine.through does it. */
+        private void through(Bytes code, int table, int i) {
+            code.u1(ILOAD);
+            code.u1(X);
+            code.u1(ILOAD);
+            code.u1(SLOT + i);
+            code.u1(IADD);
+            code.u1(ISTORE);
+            code.u1(X);
+            code.u1(ILOAD);
+            code.u1(X);
+            push(code, _size);
+            int inRange = code.jump(IF_ICMPLT);
+            code.u1(ILOAD);
+            code.u1(X);
+            push(code, _size);
+            code.u1(ISUB);
+            code.u1(ISTORE);
+            code.u1(X);
+            code.land(inRange);
+            code.u1(GETSTATIC);
+            code.u2(table);
+            code.u1(ILOAD);
+            code.u1(X);
+            code.u1(IALOAD);
+            code.u1(ILOAD);
+            code.u1(SLOT + i);
+            code.u1(ISUB);
+            code.u1(ISTORE);
+            code.u1(X);
+            code.u1(ILOAD);
+            code.u1(X);
+            int positive = code.jump(IFGE);
+            code.u1(ILOAD);
+            code.u1(X);
+            push(code, _size);
+            code.u1(IADD);
+            code.u1(ISTORE);
+            code.u1(X);
+            code.land(positive);
+        }
+
+        /** Append to CODE an instruction pushing V. */
+        private void push(Bytes code, int v) {
+            if (v >= 0 && v <= 5) {
+                code.u1(ICONST_0 + v);
+            } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+                code.u1(BIPUSH);
+                code.u1(v);
+            } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+                code.u1(SIPUSH);
+                code.u2(v);
+            } else {
+                code.u1(LDC_W);
+                code.u2(constant(INTEGER, v));
+            }
+        }
+
+        /** Add a private static final field NAME holding VALUE (an int[]
+         *  or byte[]) and return a reference to it. */
+        private int field(String name, Object value) {
+            String type = value instanceof int[] ? "[I" : "[B";
+            _fields.u2(0x001a);
+            _fields.u2(utf8(name));
+            _fields.u2(utf8(type));
+            _fields.u2(0);
+            int ref = member(FIELDREF, NAME, name, type);
+            _constants.add(value);
+            _fieldRefs.add(ref);
+            return ref;
+        }
+
+        /** Return a reference to method NAME of type TYPE of class
+         *  OWNER. */
+        private int method(String owner, String name, String type) {
+            return member(METHODREF, owner, name, type);
+        }
+
+        /** Return a reference of kind TAG to member NAME of type TYPE of
+         *  class OWNER. */
+        private int member(int tag, String owner, String name,
+                           String type) {
+            int nameAndType = entry(NAME_AND_TYPE, utf8(name), utf8(type));
+            return entry(tag, classRef(owner), nameAndType);
+        }
+
+        /** Return a reference to the class NAME. */
+        private int classRef(String name) {
+            return entry(CLASS, utf8(name), -1);
+        }
+
+        /** Return a reference to the string S. */
+        private int string(String s) {
+            return entry(STRING, utf8(s), -1);
+        }
+
+        /** Return the constant pool index of the UTF8 entry for S. */
+        private int utf8(String s) {
+            String key = UTF8 + ":" + s;
+            Integer index = _entries.get(key);
+            if (index == null) {
+                _pool.u1(UTF8);
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                _pool.u2(bytes.length);
+                _pool.bytes(bytes, bytes.length);
+                index = add(key);
+            }
+            return index;
+        }
+
+        /** Return the constant pool index of the entry of kind TAG with
+         *  value V. */
+        private int constant(int tag, int v) {
+            String key = tag + ":" + v;
+            Integer index = _entries.get(key);
+            if (index == null) {
+                _pool.u1(tag);
+                _pool.u4(v);
+                index = add(key);
+            }
+            return index;
+        }
+
+        /** Return the constant pool index of the entry of kind TAG that
+         *  refers to entries A and, unless it is negative, B. */
+        private int entry(int tag, int a, int b) {
+            String key = tag + ":" + a + ":" + b;
+            Integer index = _entries.get(key);
+            if (index == null) {
+                _pool.u1(tag);
+                _pool.u2(a);
+                if (b >= 0) {
+                    _pool.u2(b);
+                }
+                index = add(key);
+            }
+            return index;
+        }
+
+        /** Record that the entry just added to the pool is KEY, and return
+         *  its index. */
+        private int add(String key) {
+            _count += 1;
+            _entries.put(key, _count);
+            return _count;
+        }
+
+        /** Number of slots. */
+        private final int _slots;
+
+        /** First pawled slot. */
+        private final int _first;
+
+        /** Size of the alphabet. */
+        private final int _size;
+
+        /** Constant pool entries, after the first. */
+        private final Bytes _pool = new Bytes();
+
+        /** Index of each constant pool entry, by kind and value. */
+        private final Map<String, Integer> _entries = new HashMap<>();
+
+        /** Number of constant pool entries. */
+        private int _count;
+
+        /** Field declarations. */
+        private final Bytes _fields = new Bytes();
+
+        /** Class data: the value of each static field. */
+        private final List<Object> _constants = new ArrayList<>();
+
+        /** Reference to each static field, as for _constants. */
+        private final List<Integer> _fieldRefs = new ArrayList<>();
+
+        /** References to the fields holding each slot's table, inverse
+         *  table and notches. */
+        private final int[] _forward, _backward, _notch;
+    }
+
+    /** A growable array of bytes written big-endian. */
+    private static final class Bytes {
+
+        /** Append the low byte of V. */
+        void u1(int v) {
+            if (_count == _data.length) {
+                _data = Arrays.copyOf(_data, 2 * _data.length);
+            }
+            _data[_count] = (byte) v;
+            _count += 1;
+        }
+
+        /** Append the low two bytes of V. */
+        void u2(int v) {
+            u1(v >> 8);
+            u1(v);
+        }
+
+        /** Append V. */
+        void u4(int v) {
+            u2(v >> 16);
+            u2(v);
+        }
+
+        /** Append the first LEN bytes of DATA. */
+        void bytes(byte[] data, int len) {
+            for (int i = 0; i < len; i += 1) {
+                u1(data[i]);
+            }
+        }
+
+        /** Append the bytes of OTHER. */
+        void bytes(Bytes other) {
+            bytes(other._data, other._count);
+        }
+
+        /** Append branch instruction OP with an offset to be filled in by
+         *  land, and return its position. */
+        int jump(int op) {
+            int at = _count;
+            u1(op);
+            u2(0);
+            return at;
+        }
+
+        /** Make the branch at AT jump to the current position. */
+        void land(int at) {
+            int offset = _count - at;
+            _data[at + 1] = (byte) (offset >> 8);
+            _data[at + 2] = (byte) offset;
+        }
+
+        /** Return the number of bytes written. */
+        int size() {
+            return _count;
+        }
+
+        /** Return the bytes written. */
+        byte[] toArray() {
+            return Arrays.copyOf(_data, _count);
+        }
+
+        /** Bytes written, followed by spare room. */
+        private byte[] _data = new byte[256];
+
+        /** Number of bytes written. */
+        private int _count;
+    }
+
+    /** Generated code, by selection of rotors, least recently used
+     *  first. */
+    private static final Map<Key, Code> CACHE =
+        new LinkedHashMap<Key, Code>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Code> e) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    /** The code I run. */
+    private final Code _code;
+
+    /** The rotor in each slot. */
+    private final Rotor[] _slots;
+
+    /** First pawled slot. */
+    private final int _first;
+
+    /** Table of my plugboard, or null. */
+    private final int[] _plugboard;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Setting of each slot. */
+    private final int[] _settings;
+}
@@ -0,0 +1,88 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the CipherKernel class.
+ *  @author Ho Jong Kang
+ */
+public class CipherKernelTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine configured from SPEC, set up by SETTINGS, that
+     *  converts through a CipherKernel iff KERNELS. */
+    private Machine machine(ConfigGenerator.Spec spec, String settings,
+                            boolean kernels) {
+        Machine machine = Main.configure(new Scanner(spec.text()));
+        machine.setKernels(kernels);
+        Main.setUp(machine, settings);
+        return machine;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSameAsRotors() {
+        Random random = new Random(40);
+        ConfigGenerator gen = new ConfigGenerator(random);
+        for (int slots = 2; slots <= 7; slots += 1) {
+            for (int trial = 0; trial < 6; trial += 1) {
+                String symbols = trial % 2 == 0
+                    ? ConfigGenerator.symbols('A', 26)
+                    : ConfigGenerator.symbols('\u4e00', 2 + trial * 40);
+                ConfigGenerator.Spec spec =
+                    gen.config(symbols, false, slots,
+                               random.nextInt(slots), 1);
+                String settings = gen.settings(spec, 5).toUpperCase();
+                String msg = gen.message(spec, 700);
+                Machine expected = machine(spec, settings, false);
+                Machine kernel = machine(spec, settings, true);
+                assertEquals(slots + " slots: " + settings,
+                             expected.convert(msg), kernel.convert(msg));
+                assertArrayEquals(expected.positions(), kernel.positions());
+                assertEquals(expected.convert(msg.charAt(0)),
+                             kernel.convert(msg.charAt(0)));
+            }
+        }
+    }
+
+    @Test
+    public void testCached() {
+        Machine machine = Naval.machine();
+        machine.setKernels(true);
+        Main.setUp(machine, Naval.SETTINGS);
+        machine.convert("HELLOWORLD");
+        int cached = CipherKernel.cached();
+        Main.setUp(machine, "* B BETA III IV I AXLE (AB) (CD)");
+        machine.convert("HELLOWORLD");
+        Machine copy = machine.copy();
+        Main.setUp(copy, "* B BETA III IV I QQQQ");
+        copy.convert("HELLOWORLD");
+        assertEquals(cached, CipherKernel.cached());
+    }
+
+    @Test
+    public void testOtherStepping() {
+        Machine machine = Naval.machine();
+        Machine odometer = Naval.machine();
+        machine.setKernels(true);
+        machine.setStepping(new OdometerStepping());
+        odometer.setStepping(new OdometerStepping());
+        Main.setUp(machine, Naval.SETTINGS);
+        Main.setUp(odometer, Naval.SETTINGS);
+        String msg = Naval.randomText(new Random(1), 2000)
+            .replace("\n", "");
+        assertEquals(odometer.convert(msg), machine.convert(msg));
+    }
+
+}
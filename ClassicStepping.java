@@ -0,0 +1,61 @@
+package enigma;
+
+/** The stepping of the Enigma machine, with the double-step anomaly. The
+ *  rightmost rotor always advances. When any rotor but the leftmost is
+ *  at a notch, the rotor to the left of the leftmost such rotor advances
+ *  too, and so does every rotor between them and the rightmost. A rotor
+ *  at its own notch thus moves along with the rotor to its left (the
+ *  double step).
+ *  @author Ho Jong Kang
+ */
+final class ClassicStepping implements SteppingStrategy {
+
+    @Override
+    public void step(Rotor[] rotors) {
+        int last = rotors.length - 1;
+        int from = last;
+        for (int j = last; j > 0; j -= 1) {
+            if (rotors[j].atNotch()) {
+                from = j - 1;
+            }
+        }
+        for (int i = from; i <= last; i += 1) {
+            rotors[i].advance();
+        }
+    }
+
+    /** {@inheritDoc} Only the rightmost rotor moves while no rotor right
+     *  of the leftmost is at a notch, so such stretches are passed in one
+     *  move, and the time taken is proportional to the number of notches
+     *  the rightmost rotor passes. */
+    @Override
+    public void advance(Rotor[] rotors, long n) {
+        int last = rotors.length - 1;
+        Rotor right = rotors[last];
+        while (n > 0) {
+            if (quiet(rotors)) {
+                long run = right.toNotch();
+                if (run < 0 || run > n) {
+                    run = n;
+                }
+                right.advance(run);
+                n -= run;
+            }
+            if (n > 0) {
+                step(rotors);
+                n -= 1;
+            }
+        }
+    }
+
+    /** Return true iff no rotor of ROTORS but the leftmost is at a
+     *  notch. */
+    private static boolean quiet(Rotor[] rotors) {
+        for (int j = 1; j < rotors.length; j += 1) {
+            if (rotors[j].atNotch()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
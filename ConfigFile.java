@@ -0,0 +1,237 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.error;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** A machine configuration in UTF-8, in the format read by
+ *  Main.readConfig, loaded by a single light pass over its bytes. The
+ *  pass reads the alphabet, the slot and pawl counts and each rotor's
+ *  name and type, but only records the byte offsets of each rotor's
+ *  cycles. The cycles are decoded when the rotor is first used, so a
+ *  configuration of very many rotors is ready in time proportional to
+ *  its size in bytes, with nothing built for rotors never used.
+ *
+ *  Tokens are separated by whitespace as Scanner's are, and a rotor's
+ *  cycles are the tokens following its type that Main.readRotor would
+ *  accept, so that both readers define the same rotors.
+ *  @author Ho Jong Kang
+ */
+final class ConfigFile {
+
+    /** Most digits of a count parsed without a Scanner, so that it cannot
+     *  overflow. */
+    private static final int MAX_DIGITS = 9;
+
+    /** A configuration whose text is the bytes of DATA from index 0 to
+     *  its limit. */
+    ConfigFile(ByteBuffer data) {
+        _data = data;
+        _limit = data.limit();
+    }
+
+    /** Return the configuration whose text is TEXT. */
+    static ConfigFile of(String text) {
+        return new ConfigFile(ByteBuffer.wrap(text.getBytes(UTF_8)));
+    }
+
+    /** Return the configuration in FILE, mapped read-only into memory, or
+     *  null if FILE is too large to map. */
+    static ConfigFile map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                                                    StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            return new ConfigFile(channel.map(FileChannel.MapMode.READ_ONLY,
+                                              0, size));
+        }
+    }
+
+    /** Return true iff my text is all ASCII, and so reads the same in
+     *  any charset that agrees with ASCII. */
+    boolean isAscii() {
+        for (int p = 0; p < _limit; p += 1) {
+            if (_data.get(p) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return a machine configured as I describe. */
+    Machine machine() {
+        _pos = 0;
+        try {
+            Alphabet alphabet = Main.alphabet(next());
+            int numRotors = nextInt();
+            int pawls = nextInt();
+            RotorLibrary library =
+                new RotorLibrary(alphabet, RotorLibrary.DEFAULT_CAPACITY);
+            while (hasNext()) {
+                readRotor(library);
+            }
+            return Main.machine(alphabet, numRotors, pawls, library);
+        } catch (NoSuchElementException excp) {
+            throw error("configuration file truncated");
+        }
+    }
+
+    /** Read a rotor description and define the rotor in LIBRARY, with
+     *  its cycles left in place. */
+    private void readRotor(RotorLibrary library) {
+        String name = next();
+        if (!hasNext()) {
+            throw error("bad rotor description");
+        }
+        String type = next();
+        int start = skip(_pos), end = start;
+        for (int p = start; p < _limit; p = skip(end)) {
+            int e = tokenEnd(p);
+            if (!isCycles(p, e)) {
+                break;
+            }
+            end = e;
+        }
+        _pos = end;
+        library.define(name, type.charAt(0), type.substring(1), this,
+                       start, end);
+    }
+
+    /** Return the cycles between byte offsets START and END, as
+     *  Main.readRotor would read them: each token with ")(" separated by
+     *  a blank, followed by a blank. */
+    String cycles(int start, int end) {
+        StringBuilder perm = new StringBuilder();
+        int p = skip(start);
+        while (p < end) {
+            int e = tokenEnd(p);
+            perm.append(text(p, e).replace(")(", ") (")).append(' ');
+            p = skip(e);
+        }
+        return perm.toString();
+    }
+
+    /** Return true iff there is another token. */
+    private boolean hasNext() {
+        return skip(_pos) < _limit;
+    }
+
+    /** Return the next token. */
+    private String next() {
+        int start = skip(_pos);
+        if (start == _limit) {
+            throw new NoSuchElementException();
+        }
+        _pos = tokenEnd(start);
+        return text(start, _pos);
+    }
+
+    /** Return the next token as an int, as Scanner.nextInt reads it. A
+     *  token of at most nine ASCII digits after an optional sign, as the
+     *  counts almost always are, is parsed directly, sparing the making
+     *  of a Scanner and its locale's number formats. */
+    private int nextInt() {
+        String token = next();
+        int n = token.length();
+        int start = n > 1 && (token.charAt(0) == '-'
+                              || token.charAt(0) == '+') ? 1 : 0;
+        if (n == start || n - start > MAX_DIGITS) {
+            return new Scanner(token).nextInt();
+        }
+        for (int i = start; i < n; i += 1) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9') {
+                return new Scanner(token).nextInt();
+            }
+        }
+        return Integer.parseInt(token);
+    }
+
+    /** Return true iff the token between START and END has the form of a
+     *  cycle group, that is, matches "[(].+[)]". */
+    private boolean isCycles(int start, int end) {
+        if (end - start < 3 || _data.get(start) != '('
+            || _data.get(end - 1) != ')') {
+            return false;
+        }
+        for (int p = start + 1; p < end - 2; p += 1) {
+            if (_data.get(p) == NEL[0] && _data.get(p + 1) == NEL[1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the offset of the first byte at or after P that does not
+     *  start a whitespace character, or the limit if there is none. */
+    private int skip(int p) {
+        for (int w = 0; p < _limit; p += w) {
+            w = whitespace(p);
+            if (w == 0) {
+                break;
+            }
+        }
+        return p;
+    }
+
+    /** Return the offset just past the token starting at P. */
+    private int tokenEnd(int p) {
+        while (p < _limit && whitespace(p) == 0) {
+            p += 1;
+        }
+        return p;
+    }
+
+    /** Return the length in bytes of the whitespace character starting at
+     *  P, or 0 if there is none. Whitespace outside ASCII is encoded in
+     *  three bytes with lead byte 0xe1 to 0xe3, and no byte of a multibyte
+     *  character is an ASCII byte, so the bytes may be scanned directly. */
+    private int whitespace(int p) {
+        int b = _data.get(p) & BYTE;
+        if (b < ASCII) {
+            return Character.isWhitespace(b) ? 1 : 0;
+        }
+        if (b >= 0xe1 && b <= 0xe3 && p + 2 < _limit) {
+            int b1 = _data.get(p + 1) & BYTE, b2 = _data.get(p + 2) & BYTE;
+            if ((b1 & 0xc0) == 0x80 && (b2 & 0xc0) == 0x80) {
+                int c = ((b & 0xf) << 12) | ((b1 & 0x3f) << 6) | (b2 & 0x3f);
+                return Character.isWhitespace(c) ? 3 : 0;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the text of the bytes between START and END. */
+    private String text(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        _data.get(start, bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /** Mask selecting the low byte of an int. */
+    private static final int BYTE = 0xff;
+
+    /** Bytes below this are ASCII characters. */
+    private static final int ASCII = 0x80;
+
+    /** Encoding of NEXT LINE, which "." does not match. */
+    private static final byte[] NEL = { (byte) 0xc2, (byte) 0x85 };
+
+    /** The text of the configuration. */
+    private final ByteBuffer _data;
+
+    /** Length of the text in bytes. */
+    private final int _limit;
+
+    /** Offset of the next byte to read while loading. */
+    private int _pos;
+}
@@ -0,0 +1,106 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the ConfigFile class.
+ *  @author Ho Jong Kang
+ */
+public class ConfigFileTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the conversion of MSG by a machine configured from CONFIG
+     *  by LOADER and set up by SETTINGS, or the message of the error
+     *  raised. */
+    private String outcome(Loader loader, String config, String settings,
+                           String msg) {
+        try {
+            Machine mach = loader.load(config);
+            Main.setUp(mach, settings);
+            return mach.convert(msg);
+        } catch (EnigmaException excp) {
+            return "error: " + excp.getMessage();
+        }
+    }
+
+    /** Check that CONFIG set up by SETTINGS converts MSG alike, or fails
+     *  with the same message, when loaded by ConfigFile and by a Scanner,
+     *  and return the outcome. */
+    private String checkSame(String config, String settings, String msg) {
+        String expected =
+            outcome(c -> Main.configure(new Scanner(c)), config, settings,
+                    msg);
+        assertEquals(config, expected,
+                     outcome(c -> ConfigFile.of(c).machine(), config,
+                             settings, msg));
+        return expected;
+    }
+
+    /** A way to load a configuration. */
+    private interface Loader {
+        /** Return a machine configured from CONFIG. */
+        Machine load(String config);
+    }
+
+    /** A small configuration, lacking its rotors. */
+    private static final String HEAD = "A-D 3 1\n";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSameRotors() {
+        String settings = "* R F M AB";
+        checkSame(HEAD + "R R (AB)(CD)\nF N (ABC)\nM MB (AD) (BC)\n",
+                  settings, "ABCDDCBA");
+        checkSame(HEAD + "r R (AB)\n  (CD)\tf\u3000N (ABC) m MAC (ABCD)",
+                  settings, "ABCDDCBA");
+        checkSame(HEAD + "R R (AB)(CD) F N () M M (AD)\n", "* R () M AB",
+                  "ABCD");
+        checkSame(HEAD + "R R (AB)(CD) F N (AB)x M M\n", "* R F M AB",
+                  "ABCD");
+        checkSame(HEAD + "R R (AB)(CD) F N (A\u0085B) M M\n", "* R F M AB",
+                  "ABCD");
+        checkSame("DCBA 3 1 R R (AB)(CD) F N (ABC) M MAC (ABCD)",
+                  settings, "ABCDDCBA");
+    }
+
+    @Test
+    public void testSameErrors() {
+        assertEquals("error: configuration file truncated",
+                     checkSame("A-D 3", "* R F M AB", "A"));
+        assertEquals("error: configuration file truncated",
+                     checkSame("A-D 3 x R R (AB)", "* R F M AB", "A"));
+        assertEquals("error: bad rotor description",
+                     checkSame(HEAD + "R R (AB)(CD) F", "* R F M AB", "A"));
+        assertEquals("error: Bad config",
+                     checkSame("A 3 1", "* R F M AB", "A"));
+    }
+
+    @Test
+    public void testCyclesReadWhenUsed() {
+        StringBuilder config = new StringBuilder(HEAD);
+        config.append("R R (AB)(CD)\nF N (ABC)\nM MB (AD)\n");
+        for (int i = 0; i < 1000; i += 1) {
+            config.append("Bad").append(i).append(" M (A#)\n");
+        }
+        Machine mach = ConfigFile.of(config.toString()).machine();
+        Main.setUp(mach, "* R F M AA");
+        assertEquals(4, mach.convert("ABCD").length());
+        try {
+            Main.setUp(mach, "* R F BAD7 AA");
+            fail("bad cycles not reported");
+        } catch (EnigmaException excp) {
+            return;
+        }
+    }
+
+}
@@ -0,0 +1,353 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.EnigmaException.error;
+
+/** Generates random machine configurations in the format read by
+ *  Main.readConfig, together with settings lines and messages for them.
+ *  @author Ho Jong Kang
+ */
+final class ConfigGenerator {
+
+    /** A generator drawing its choices from RANDOM. */
+    ConfigGenerator(Random random) {
+        _random = random;
+    }
+
+    /** A generated configuration. */
+    static final class Spec {
+
+        /** The configuration text. */
+        private final StringBuilder _text = new StringBuilder();
+
+        /** The alphabet's characters, in alphabet order. */
+        private String _symbols;
+
+        /** Number of rotor slots. */
+        private int _numRotors;
+
+        /** Number of pawls. */
+        private int _pawls;
+
+        /** Names of the reflectors, fixed and moving rotors. */
+        private final List<String> _reflectors = new ArrayList<>(),
+            _fixed = new ArrayList<>(), _moving = new ArrayList<>();
+
+        /** Return the configuration text. */
+        String text() {
+            return _text.toString();
+        }
+
+        /** Return the alphabet's characters in alphabet order. */
+        String symbols() {
+            return _symbols;
+        }
+
+        /** Return the number of rotor slots. */
+        int numRotors() {
+            return _numRotors;
+        }
+
+        /** Return the number of pawls. */
+        int pawls() {
+            return _pawls;
+        }
+    }
+
+    /** Return the SIZE consecutive characters starting at FIRST. */
+    static String symbols(char first, int size) {
+        StringBuilder symbols = new StringBuilder(size);
+        for (int i = 0; i < size; i += 1) {
+            symbols.append((char) (first + i));
+        }
+        return symbols.toString();
+    }
+
+    /** Return SIZE distinct characters that may appear in a listed
+     *  alphabet: the upper-case letters if SIZE is at most 26, and
+     *  otherwise characters from the CJK ideographs on, then from the
+     *  start of the printable characters, leaving out blanks, surrogates,
+     *  non-characters and the characters that punctuate configurations
+     *  and settings lines. There are somewhat over 63000 of them. */
+    static String symbols(int size) {
+        if (size <= 26) {
+            return "ABCDEFGHIJKLMNOPQRSTUVWXYZ".substring(0, size);
+        }
+        StringBuilder symbols = new StringBuilder(size);
+        char c = FIRST_SYMBOL;
+        while (symbols.length() < size) {
+            if (usable(c)) {
+                symbols.append(c);
+            }
+            c = c == '\ufffc' ? '!' : (char) (c + 1);
+            if (c == FIRST_SYMBOL) {
+                throw error("no alphabet of %d symbols", size);
+            }
+        }
+        return symbols.toString();
+    }
+
+    /** Return true iff C may be a symbol of symbols(int). */
+    private static boolean usable(char c) {
+        return !Character.isWhitespace(c) && !Character.isSurrogate(c)
+            && !Character.isISOControl(c) && "()*-".indexOf(c) < 0
+            && (c < '\ufdd0' || c > '\ufdef');
+    }
+
+    /** Return a configuration of random shape: a small alphabet of
+     *  upper-case letters in either range or listed form, or of
+     *  lower-case letters or punctuation in listed form, 2 to 6 slots and
+     *  any number of pawls. */
+    Spec randomConfig() {
+        int size = 2 + _random.nextInt(25);
+        int numRotors = 2 + _random.nextInt(5);
+        int pawls = _random.nextInt(numRotors);
+        String symbols = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".substring(0, size);
+        boolean listed = size > 2 && _random.nextBoolean();
+        switch (_random.nextInt(4)) {
+        case 0:
+            symbols = "abcdefghijklmnopqrstuvwxyz"
+                .substring(0, Math.max(size, 3));
+            listed = true;
+            break;
+        case 1:
+            symbols = PUNCTUATION[_random.nextInt(PUNCTUATION.length)];
+            symbols = symbols.substring(0, Math.min(Math.max(size, 3),
+                                                    symbols.length()));
+            listed = true;
+            break;
+        default:
+            break;
+        }
+        return config(symbols, listed, numRotors, pawls,
+                      _random.nextInt(3));
+    }
+
+    /** Return a configuration over the alphabet SYMBOLS, which must be a
+     *  contiguous range of characters in increasing order. If LISTED, the
+     *  alphabet is given as a shuffled list of its characters; otherwise
+     *  as a range FIRST-LAST. The machine has NUMROTORS slots and PAWLS
+     *  pawls, and EXTRA spare rotors of each kind. */
+    Spec config(String symbols, boolean listed, int numRotors, int pawls,
+                int extra) {
+        return config(symbols, listed, numRotors, pawls, extra, 3);
+    }
+
+    /** As for config(SYMBOLS, LISTED, NUMROTORS, PAWLS, EXTRA), where each
+     *  moving rotor has up to MAXNOTCHES notches. If LISTED, SYMBOLS may
+     *  be any distinct characters, such as those from symbols(int). */
+    Spec config(String symbols, boolean listed, int numRotors, int pawls,
+                int extra, int maxNotches) {
+        Spec spec = new Spec();
+        if (listed) {
+            spec._symbols = shuffle(symbols);
+            spec._text.append(spec._symbols);
+        } else {
+            spec._symbols = symbols;
+            spec._text.append(symbols.charAt(0)).append('-')
+                .append(symbols.charAt(symbols.length() - 1));
+        }
+        spec._numRotors = numRotors;
+        spec._pawls = pawls;
+        spec._text.append('\n').append(numRotors).append(' ')
+            .append(pawls).append('\n');
+        for (int i = 0; i < 1 + extra; i += 1) {
+            String name = name("Ref", i);
+            spec._reflectors.add(name);
+            rotor(spec, name, "R", reflectorCycles(spec._symbols));
+        }
+        for (int i = 0; i < numRotors - pawls - 1 + extra; i += 1) {
+            String name = name("Fix", i);
+            spec._fixed.add(name);
+            rotor(spec, name, "N", cycles(spec._symbols));
+        }
+        for (int i = 0; i < pawls + extra; i += 1) {
+            String name = name("Rot", i);
+            spec._moving.add(name);
+            rotor(spec, name, "M" + notches(spec._symbols, maxNotches),
+                  cycles(spec._symbols));
+        }
+        return spec;
+    }
+
+    /** Return a random settings line for SPEC, with up to MAXPLUGS
+     *  plugboard cycles. */
+    String settings(Spec spec, int maxPlugs) {
+        StringBuilder line = new StringBuilder("*");
+        line.append(' ').append(pick(spec._reflectors, 1).get(0));
+        for (String name : pick(spec._fixed,
+                                spec._numRotors - spec._pawls - 1)) {
+            line.append(' ').append(name);
+        }
+        for (String name : pick(spec._moving, spec._pawls)) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int i = 1; i < spec._numRotors; i += 1) {
+            line.append(symbol(spec));
+        }
+        String plugs = shuffle(spec._symbols);
+        int nplugs = Math.min(_random.nextInt(maxPlugs + 1),
+                              plugs.length() / 2);
+        for (int i = 0; i < nplugs; i += 1) {
+            line.append(" (").append(plugs, 2 * i, 2 * i + 2).append(')');
+        }
+        return line.toString();
+    }
+
+    /** Return a random message of LEN characters of SPEC's alphabet. */
+    String message(Spec spec, int len) {
+        StringBuilder msg = new StringBuilder(len);
+        for (int i = 0; i < len; i += 1) {
+            msg.append(symbol(spec));
+        }
+        return msg.toString();
+    }
+
+    /** Return a random input file for SPEC of SECTIONS settings lines,
+     *  each followed by up to LINES message lines of up to LINELEN
+     *  characters, with occasional blanks, blank lines and lower-case
+     *  letters. */
+    String input(Spec spec, int sections, int lines, int lineLen) {
+        StringBuilder input = new StringBuilder();
+        for (int s = 0; s < sections; s += 1) {
+            if (_random.nextInt(4) == 0) {
+                input.append('\n');
+            }
+            input.append(settings(spec, 5)).append('\n');
+            int n = 1 + _random.nextInt(lines);
+            for (int i = 0; i < n; i += 1) {
+                String msg = message(spec, _random.nextInt(lineLen + 1));
+                for (int k = 0; k < msg.length(); k += 1) {
+                    char c = msg.charAt(k);
+                    if (_random.nextInt(8) == 0) {
+                        input.append(' ');
+                    }
+                    input.append(_random.nextInt(5) == 0
+                                 ? Character.toLowerCase(c) : c);
+                }
+                input.append('\n');
+            }
+        }
+        return input.toString();
+    }
+
+    /** Append a rotor named NAME of type TYPE (type letter and notches)
+     *  with permutation CYCLES to SPEC's configuration. */
+    private void rotor(Spec spec, String name, String type, String cycles) {
+        spec._text.append(name).append(' ').append(type).append(' ')
+            .append(cycles).append('\n');
+    }
+
+    /** Return a rotor name with prefix PREFIX and number K, in random
+     *  case. */
+    private String name(String prefix, int k) {
+        String name = prefix + k;
+        switch (_random.nextInt(3)) {
+        case 0:
+            return name.toUpperCase();
+        case 1:
+            return name.toLowerCase();
+        default:
+            return name;
+        }
+    }
+
+    /** Return a random permutation of SYMBOLS in cycle notation, with
+     *  fixed points sometimes written out and cycles sometimes written
+     *  without separating blanks or on a continuation line. */
+    private String cycles(String symbols) {
+        String order = shuffle(symbols);
+        StringBuilder cycles = new StringBuilder();
+        int i = 0;
+        while (i < order.length()) {
+            int len = 1 + _random.nextInt(order.length() - i);
+            if (len > 1 || _random.nextBoolean()) {
+                separate(cycles);
+                cycles.append('(').append(order, i, i + len).append(')');
+            }
+            i += len;
+        }
+        return cycles.toString();
+    }
+
+    /** Return a random involution of SYMBOLS in cycle notation, with at
+     *  most one fixed point. */
+    private String reflectorCycles(String symbols) {
+        String order = shuffle(symbols);
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i + 1 < order.length(); i += 2) {
+            separate(cycles);
+            cycles.append('(').append(order, i, i + 2).append(')');
+        }
+        return cycles.toString();
+    }
+
+    /** Append a random separator between cycles to CYCLES, if it is not
+     *  empty. */
+    private void separate(StringBuilder cycles) {
+        if (cycles.length() == 0) {
+            return;
+        }
+        switch (_random.nextInt(8)) {
+        case 0:
+            break;
+        case 1:
+            cycles.append("\n    ");
+            break;
+        default:
+            cycles.append(' ');
+        }
+    }
+
+    /** Return a random set of zero to MAX notches from SYMBOLS. */
+    private String notches(String symbols, int max) {
+        String order = shuffle(symbols);
+        int n = Math.min(symbols.length(), _random.nextInt(max + 1));
+        return order.substring(0, n);
+    }
+
+    /** Return a random character of SPEC's alphabet. */
+    private char symbol(Spec spec) {
+        return spec._symbols.charAt(_random.nextInt(spec._symbols.length()));
+    }
+
+    /** Return N distinct random elements of NAMES. */
+    private List<String> pick(List<String> names, int n) {
+        List<String> copy = new ArrayList<>(names);
+        Collections.shuffle(copy, _random);
+        return copy.subList(0, n);
+    }
+
+    /** Return the characters of S in random order. */
+    private String shuffle(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = chars.length - 1; i > 0; i -= 1) {
+            int k = _random.nextInt(i + 1);
+            char t = chars[i];
+            chars[i] = chars[k];
+            chars[k] = t;
+        }
+        return new String(chars);
+    }
+
+    /** The runs of consecutive ASCII punctuation characters from which the
+     *  punctuation alphabets of randomConfig are drawn. They leave out
+     *  the characters that punctuate configurations and settings lines,
+     *  the '.' and ',' that tests skip in messages, and '~', which is in
+     *  no alphabet generated so that it may stand for a character outside
+     *  one. */
+    static final String[] PUNCTUATION = {
+        "!\"#$%&'", ":;<=>?@", "[\\]^_`", "{|}"
+    };
+
+    /** First character of symbols(int) for more than 26 symbols. */
+    private static final char FIRST_SYMBOL = '\u4e00';
+
+    /** Source of random choices. */
+    private final Random _random;
+}
@@ -0,0 +1,410 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.error;
+
+/** Differential harness: runs random configurations, settings and
+ *  messages through both the reference model (ReferenceEnigma) and the
+ *  current simulator, checks that their outputs are identical, and
+ *  measures the throughput of each. Run as
+ *      java enigma.Differential [ROUNDS [SEED [SWITCH...]]]
+ *  to print a correctness and speedup report, with the current simulator
+ *  run under the switches named (see Mode).
+ *  @author Ho Jong Kang
+ */
+final class Differential {
+
+    /** A combination of the switches of Main under which the current
+     *  simulator is run: "kernels" (KERNELS_PROPERTY), "pipeline"
+     *  (PIPELINE_PROPERTY), "indicators" (INDICATOR_PROPERTY) and "skip"
+     *  (SKIP_PROPERTY, with characters other than the blank sprinkled
+     *  through the message lines). The reference model has none of them,
+     *  so under indicators its input is rewritten to give the output
+     *  the message-key procedure should. */
+    static final class Mode {
+
+        /** The names of the switches. */
+        static final List<String> SWITCHES =
+            Arrays.asList("kernels", "pipeline", "indicators", "skip");
+
+        /** Characters skipped under the skip switch. */
+        static final String SKIPPED = " -.,";
+
+        /** A mode with the switches named by NAMES on. */
+        Mode(String... names) {
+            for (String name : names) {
+                switch (name) {
+                case "kernels":
+                    _kernels = true;
+                    break;
+                case "pipeline":
+                    _pipeline = true;
+                    break;
+                case "indicators":
+                    _indicators = true;
+                    break;
+                case "skip":
+                    _skip = true;
+                    break;
+                default:
+                    throw error("unknown switch: %s", name);
+                }
+            }
+        }
+
+        /** Return every mode, with every combination of switches. */
+        static List<Mode> all() {
+            List<Mode> modes = new ArrayList<>();
+            for (int bits = 0; bits < 1 << SWITCHES.size(); bits += 1) {
+                List<String> names = new ArrayList<>();
+                for (int i = 0; i < SWITCHES.size(); i += 1) {
+                    if ((bits & 1 << i) != 0) {
+                        names.add(SWITCHES.get(i));
+                    }
+                }
+                modes.add(new Mode(names.toArray(new String[0])));
+            }
+            return modes;
+        }
+
+        /** Return the output of RUN with my switches set. */
+        private String apply(Run run) {
+            System.setProperty(Main.KERNELS_PROPERTY,
+                               String.valueOf(_kernels));
+            System.setProperty(Main.PIPELINE_PROPERTY,
+                               String.valueOf(_pipeline));
+            System.setProperty(Main.INDICATOR_PROPERTY,
+                               String.valueOf(_indicators));
+            if (_skip) {
+                System.setProperty(Main.SKIP_PROPERTY, SKIPPED);
+            }
+            try {
+                return run.output();
+            } finally {
+                System.clearProperty(Main.KERNELS_PROPERTY);
+                System.clearProperty(Main.PIPELINE_PROPERTY);
+                System.clearProperty(Main.INDICATOR_PROPERTY);
+                System.clearProperty(Main.SKIP_PROPERTY);
+            }
+        }
+
+        @Override
+        public String toString() {
+            List<String> names = new ArrayList<>();
+            boolean[] on = { _kernels, _pipeline, _indicators, _skip };
+            for (int i = 0; i < on.length; i += 1) {
+                if (on[i]) {
+                    names.add(SWITCHES.get(i));
+                }
+            }
+            return names.isEmpty() ? "plain" : String.join(" ", names);
+        }
+
+        /** Whether each switch is on. */
+        private boolean _kernels, _pipeline, _indicators, _skip;
+    }
+
+    /** The result of a differential run. */
+    static final class Report {
+
+        /** Number of cases run. */
+        private int _cases;
+
+        /** Number of cases whose outputs differed. */
+        private int _mismatches;
+
+        /** Number of cases on which both simulators failed. */
+        private int _errors;
+
+        /** Total characters of input converted. */
+        private long _chars;
+
+        /** Nanoseconds spent in the reference model and the current
+         *  simulator. */
+        private long _referenceNanos, _currentNanos;
+
+        /** Description of the first mismatch, if any. */
+        private String _firstMismatch;
+
+        /** Return the number of cases whose outputs differed. */
+        int mismatches() {
+            return _mismatches;
+        }
+
+        /** Return a description of the first mismatch, or null. */
+        String firstMismatch() {
+            return _firstMismatch;
+        }
+
+        @Override
+        public String toString() {
+            double ref = _chars * 1e9 / Math.max(1, _referenceNanos);
+            double cur = _chars * 1e9 / Math.max(1, _currentNanos);
+            return String.format("%d cases (%d failing), %d mismatches, "
+                                 + "%d chars%n"
+                                 + "reference: %12.0f chars/s%n"
+                                 + "current:   %12.0f chars/s%n"
+                                 + "speedup:   %12.2fx",
+                                 _cases, _errors, _mismatches, _chars,
+                                 ref, cur, cur / ref);
+        }
+    }
+
+    /** Not instantiable. */
+    private Differential() {
+    }
+
+    /** Print the report of a run of ARGS[0] (default 1000) rounds with
+     *  seed ARGS[1] (default 0), under the switches named by the rest of
+     *  ARGS. */
+    public static void main(String... args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        Mode mode = new Mode(Arrays.copyOfRange(args, Math.min(2,
+                                                               args.length),
+                                                args.length));
+        Report report = run(rounds, seed, mode);
+        System.out.println(report);
+        if (report.mismatches() > 0) {
+            System.out.println("first mismatch:");
+            System.out.println(report.firstMismatch());
+            System.exit(1);
+        }
+    }
+
+    /** Return the report of ROUNDS random cases drawn from SEED. Every
+     *  tenth case or so has one input character replaced by one outside
+     *  the alphabet, to check that both simulators fail alike; every case
+     *  is also run without a plugboard directly on the machines. */
+    static Report run(int rounds, long seed) {
+        return run(rounds, seed, new Mode());
+    }
+
+    /** As for run(ROUNDS, SEED), with the current simulator under MODE.
+     *  The cases are those of run(ROUNDS, SEED). */
+    static Report run(int rounds, long seed, Mode mode) {
+        Random random = new Random(seed);
+        Random noise = new Random(~seed);
+        ConfigGenerator gen = new ConfigGenerator(random);
+        Report report = new Report();
+        for (int r = 0; r < rounds; r += 1) {
+            String name = String.format("round %d of seed %d", r, seed);
+            ConfigGenerator.Spec spec = gen.randomConfig();
+            String input = gen.input(spec, 1 + random.nextInt(4), 6, 80);
+            if (random.nextInt(10) == 0) {
+                int k = random.nextInt(input.length());
+                input = input.substring(0, k) + "~" + input.substring(k + 1);
+            }
+            check(report, spec.text(), input, name, mode, noise);
+            checkMachine(report, spec.text(), gen.settings(spec, 0),
+                         gen.message(spec, 200), name, mode);
+        }
+        return report;
+    }
+
+    /** Insert and set the rotors named by the settings line SETTINGS into
+     *  machines of both simulators for CONFIG, leaving their plugboards
+     *  unset, and compare their conversions of MSG, recording the outcome
+     *  in REPORT under the name NAME. The current machine is made under
+     *  MODE. */
+    static void checkMachine(Report report, String config, String settings,
+                             String msg, String name, Mode mode) {
+        String[] tokens = settings.split(" ");
+        String[] rotors = new String[tokens.length - 2];
+        for (int i = 0; i < rotors.length; i += 1) {
+            rotors[i] = tokens[i + 1].toUpperCase();
+        }
+        String position = tokens[tokens.length - 1];
+        boolean lower = lowerCase(config);
+        long start = System.nanoTime();
+        String expected = outcome(() -> {
+            ReferenceEnigma.RMachine mach =
+                ReferenceEnigma.machine(lower ? config.toUpperCase() : config);
+            mach.insertRotors(rotors);
+            mach.setRotors(lower ? position.toUpperCase() : position);
+            String output = mach.convert(lower ? msg.toUpperCase() : msg);
+            return lower ? output.toLowerCase() : output;
+        });
+        long middle = System.nanoTime();
+        String actual = outcome(() -> mode.apply(() -> {
+            Machine mach = Main.configure(new Scanner(config));
+            mach.insertRotors(rotors);
+            mach.setRotors(position);
+            return mach.convert(msg);
+        }));
+        record(report, msg.length(), middle - start,
+               System.nanoTime() - middle, expected, actual,
+               () -> String.format("%s, no plugboard, %s%n--- config%n"
+                                   + "%s%n--- settings%n%s%n--- message%n"
+                                   + "%s%n--- expected%n%s%n--- actual%n%s",
+                                   name, mode, config, settings, msg,
+                                   expected, actual));
+    }
+
+    /** Run CONFIG and INPUT through both simulators, the current one
+     *  under MODE, recording the outcome in REPORT under the name NAME.
+     *  Skipped characters are drawn with NOISE. */
+    static void check(Report report, String config, String input,
+                      String name, Mode mode, Random noise) {
+        String fed = mode._skip ? sprinkle(input, noise) : input;
+        boolean lower = lowerCase(config);
+        String upper = lower ? config.toUpperCase() : config;
+        long start = System.nanoTime();
+        String expected = outcome(() -> {
+            String output = ReferenceEnigma.run(
+                upper, mode._indicators ? indicators(upper, input) : input);
+            return lower ? output.toLowerCase() : output;
+        });
+        long middle = System.nanoTime();
+        String actual = outcome(() -> mode.apply(() -> current(config,
+                                                               fed)));
+        record(report, input.length(), middle - start,
+               System.nanoTime() - middle, expected, actual,
+               () -> String.format("%s, %s%n--- config%n%s%n--- input%n"
+                                   + "%s%n--- expected%n%s%n--- actual%n%s",
+                                   name, mode, config, fed, expected,
+                                   actual));
+    }
+
+    /** Return true iff CONFIG has an alphabet of lower-case letters. The
+     *  reference model, which upper-cases all it reads, is then given
+     *  CONFIG in upper case, and its output is taken in lower case. */
+    private static boolean lowerCase(String config) {
+        String alphabet = new Scanner(config).next();
+        return !alphabet.equals(alphabet.toUpperCase());
+    }
+
+    /** Return INPUT with characters of Mode.SKIPPED drawn with RANDOM
+     *  inserted into its message lines that are not empty. */
+    private static String sprinkle(String input, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (String line : input.split("\n", -1)) {
+            if (line.isEmpty() || line.contains("*")) {
+                result.append(line);
+            } else {
+                for (int i = 0; i < line.length(); i += 1) {
+                    if (random.nextInt(6) == 0) {
+                        result.append(Mode.SKIPPED.charAt(
+                            random.nextInt(Mode.SKIPPED.length())));
+                    }
+                    result.append(line.charAt(i));
+                }
+            }
+            result.append('\n');
+        }
+        result.setLength(result.length() - 1);
+        return result.toString();
+    }
+
+    /** Return the input for the reference model that gives the output
+     *  the message-key procedure should give on INPUT for CONFIG: each
+     *  message line whose message is not empty is replaced by a settings
+     *  line whose rotor settings are its message key, deciphered under
+     *  the settings line before it, and the rest of the message. A
+     *  settings line directly followed by a message so replaced is
+     *  dropped, since both simulators take a settings line right after
+     *  another as the end of an empty section and ignore it. */
+    static String indicators(String config, String input) {
+        Scanner shape = new Scanner(config);
+        shape.next();
+        int keyLength = shape.nextInt() - 1;
+        StringBuilder result = new StringBuilder();
+        String settings = null;
+        String[] lines = input.split("\n", -1);
+        for (int i = 0; i < lines.length; i += 1) {
+            String line = lines[i];
+            String msg = line.replace(" ", "").toUpperCase();
+            if (line.contains("*")) {
+                settings = line;
+                if (i + 1 < lines.length && !lines[i + 1].contains("*")
+                    && !lines[i + 1].replace(" ", "").isEmpty()) {
+                    continue;
+                }
+            } else if (settings != null && !msg.isEmpty()) {
+                if (msg.length() < keyLength) {
+                    throw error("Message too short for message key");
+                }
+                String key = ReferenceEnigma.run(
+                    config, settings + "\n" + msg.substring(0, keyLength))
+                    .replaceAll("\\s", "");
+                String[] tokens = settings.trim().split("\\s+");
+                tokens[keyLength + 2] = key;
+                result.append(String.join(" ", tokens)).append('\n');
+                line = msg.substring(keyLength);
+            }
+            result.append(line);
+            if (i < lines.length - 1) {
+                result.append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Record in REPORT a case of CHARS characters on which the reference
+     *  model took REFNANOS nanoseconds to produce EXPECTED and the current
+     *  simulator CURNANOS to produce ACTUAL. DESCRIPTION describes the
+     *  case if it is the first mismatch. */
+    private static void record(Report report, int chars, long refNanos,
+                               long curNanos, String expected, String actual,
+                               Run description) {
+        report._cases += 1;
+        report._chars += chars;
+        report._referenceNanos += refNanos;
+        report._currentNanos += curNanos;
+        if (expected.equals(ERROR) && actual.equals(ERROR)) {
+            report._errors += 1;
+        }
+        if (!expected.equals(actual)) {
+            report._mismatches += 1;
+            if (report._firstMismatch == null) {
+                report._firstMismatch = description.output();
+            }
+        }
+    }
+
+    /** Return the output of the current simulator for CONFIG and
+     *  INPUT. CONFIG is loaded as a configuration file is (ConfigFile),
+     *  while checkMachine loads it through a Scanner. */
+    static String current(String config, String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(bytes);
+        Machine enigma = ConfigFile.of(config).machine();
+        new Main(enigma.alphabet(), new LineReader(input), output)
+            .process(enigma);
+        output.flush();
+        return bytes.toString();
+    }
+
+    /** Outcome of a simulator run that failed. */
+    private static final String ERROR = "error";
+
+    /** A computation producing a String, such as a simulator run. */
+    private interface Run {
+        /** Return the output. */
+        String output();
+    }
+
+    /** Return the output of RUN, or "error" if it fails with an
+     *  EnigmaException. Both simulators must fail on the same inputs,
+     *  though not necessarily with the same message. Any other exception
+     *  is a fault, returned with where it was thrown, so that it matches
+     *  nothing and is reported with its case. */
+    private static String outcome(Run run) {
+        try {
+            return run.output();
+        } catch (EnigmaException excp) {
+            return ERROR;
+        } catch (RuntimeException excp) {
+            StackTraceElement[] trace = excp.getStackTrace();
+            return "fault: " + excp
+                + (trace.length > 0 ? " at " + trace[0] : "");
+        }
+    }
+}
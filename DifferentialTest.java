@@ -0,0 +1,39 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** Differential tests of the simulator against ReferenceEnigma.
+ *  @author Ho Jong Kang
+ */
+public class DifferentialTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRandomCases() {
+        for (long seed = 0; seed < 4; seed += 1) {
+            Differential.Report report = Differential.run(100, seed);
+            assertEquals(report.firstMismatch(), 0, report.mismatches());
+        }
+    }
+
+    @Test
+    public void testModes() {
+        for (Differential.Mode mode : Differential.Mode.all()) {
+            for (long seed = 0; seed < 2; seed += 1) {
+                Differential.Report report =
+                    Differential.run(25, seed, mode);
+                assertEquals(mode + ": " + report.firstMismatch(), 0,
+                             report.mismatches());
+            }
+        }
+    }
+
+}
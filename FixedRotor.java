@@ -13,4 +13,9 @@ class FixedRotor extends Rotor {
     FixedRotor(String name, Permutation perm) {
         super(name, perm);
     }
+
+    @Override
+    Rotor copy(Permutation perm) {
+        return new FixedRotor(name(), perm);
+    }
 }
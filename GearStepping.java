@@ -0,0 +1,50 @@
+package enigma;
+
+/** Stepping in which every rotor is driven through gearing and turns on
+ *  every character, the Kth rotor from the right advancing STRIDES[K]
+ *  positions at a time (the last stride serving for any further rotors).
+ *  Notches play no part.
+ *  @author Ho Jong Kang
+ */
+final class GearStepping implements SteppingStrategy {
+
+    /** A strategy in which the Kth rotor from the right advances
+     *  STRIDES[K] >= 0 positions per character. */
+    GearStepping(int... strides) {
+        if (strides.length == 0) {
+            throw new EnigmaException("no gear strides");
+        }
+        for (int stride : strides) {
+            if (stride < 0) {
+                throw new EnigmaException("negative gear stride");
+            }
+        }
+        _strides = strides.clone();
+    }
+
+    @Override
+    public void step(Rotor[] rotors) {
+        for (int k = 0; k < rotors.length; k += 1) {
+            rotors[rotors.length - 1 - k].advance(stride(k));
+        }
+    }
+
+    /** {@inheritDoc} Each rotor advances by N times its stride, so the
+     *  time taken is proportional to the number of rotors. */
+    @Override
+    public void advance(Rotor[] rotors, long n) {
+        for (int k = 0; k < rotors.length; k += 1) {
+            Rotor rotor = rotors[rotors.length - 1 - k];
+            long size = rotor.size();
+            rotor.advance((n % size) * (stride(k) % size));
+        }
+    }
+
+    /** Return the stride of the Kth rotor from the right. */
+    private int stride(int k) {
+        return _strides[Math.min(k, _strides.length - 1)];
+    }
+
+    /** Strides of the rotors, from the right. */
+    private final int[] _strides;
+}
@@ -0,0 +1,207 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+import static enigma.EnigmaException.error;
+
+/** Buffered writer for converted messages, which are printed in groups
+ *  separated by blanks. Characters are copied straight from the caller's
+ *  char[] into one reusable byte buffer, with the separators inserted on
+ *  the way, and the buffer is handed to the underlying stream with a
+ *  single write each time it fills. The format is that of the original
+ *  Main.printMessageLine: every full group is followed by a blank, so a
+ *  line whose length is a multiple of the group size ends in one.
+ *  Output that someone may be watching, such as the standard output, can
+ *  instead be flushed at the end of every line (see setLineFlush).
+ *  @author Ho Jong Kang
+ */
+final class GroupWriter {
+
+    /** Default group size. */
+    static final int GROUP = 5;
+
+    /** Default buffer size in bytes. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A writer to OUT printing messages in groups of GROUP characters,
+     *  starting a new line after every LINEWIDTH characters of a message
+     *  (never, if LINEWIDTH is 0), and buffering BUFFERSIZE bytes. */
+    GroupWriter(OutputStream out, int group, int lineWidth, int bufferSize) {
+        if (group < 1 || lineWidth < 0 || bufferSize < 16) {
+            throw error("bad output format");
+        }
+        _out = out;
+        _group = group;
+        _lineWidth = lineWidth;
+        _buffer = new byte[bufferSize];
+        _newline = System.lineSeparator().getBytes();
+        _encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _maxCharBytes = (int) Math.ceil(_encoder.maxBytesPerChar())
+            + _encoder.replacement().length;
+        if (_maxCharBytes > bufferSize) {
+            throw error("bad output format");
+        }
+        _sink = ByteBuffer.wrap(_buffer);
+    }
+
+    /** A writer to OUT using the default format and buffer size. */
+    GroupWriter(OutputStream out) {
+        this(out, GROUP, 0, BUFFER_SIZE);
+    }
+
+    /** Write out each line as soon as it is printed iff ON, rather than
+     *  when the buffer fills. Off by default. */
+    void setLineFlush(boolean on) {
+        _lineFlush = on;
+    }
+
+    /** Print the first LEN characters of MSG in groups, ending the
+     *  line. */
+    void printLine(char[] msg, int len) {
+        if (_lineWidth == 0 || len <= _lineWidth) {
+            printGroups(msg, 0, len);
+        } else {
+            for (int start = 0; start < len; start += _lineWidth) {
+                printGroups(msg, start, Math.min(len, start + _lineWidth));
+            }
+        }
+        if (_lineFlush) {
+            flush();
+        }
+    }
+
+    /** Print an empty line. */
+    void newLine() {
+        put(_newline);
+        if (_lineFlush) {
+            flush();
+        }
+    }
+
+    /** Write out everything buffered so far. */
+    void flush() {
+        drain();
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Return the number of bytes printed so far, buffered or not. */
+    long bytesWritten() {
+        return _written + _count;
+    }
+
+    /** Print MSG[START .. END-1] in groups, followed by a newline. */
+    private void printGroups(char[] msg, int start, int end) {
+        int full = end - (end - start) % _group;
+        int i = start;
+        while (i < full) {
+            for (int k = 0; k < _group; k += 1, i += 1) {
+                put(msg[i]);
+            }
+            put(' ');
+        }
+        while (i < end) {
+            put(msg[i]);
+            i += 1;
+        }
+        put(_newline);
+    }
+
+    /** Buffer the encoding of CH. */
+    private void put(char ch) {
+        if (ch >= 0x80) {
+            encode(ch);
+            return;
+        }
+        if (_count == _buffer.length) {
+            drain();
+        }
+        _buffer[_count] = (byte) ch;
+        _count += 1;
+    }
+
+    /** Buffer BYTES. */
+    private void put(byte[] bytes) {
+        if (_count + bytes.length > _buffer.length) {
+            drain();
+        }
+        System.arraycopy(bytes, 0, _buffer, _count, bytes.length);
+        _count += bytes.length;
+    }
+
+    /** Buffer the encoding of CH, a character outside ASCII, encoded
+     *  alone, as String.getBytes would encode it. */
+    private void encode(char ch) {
+        if (_buffer.length - _count < _maxCharBytes) {
+            drain();
+        }
+        _char.clear();
+        _char.put(ch).flip();
+        _sink.limit(_buffer.length).position(_count);
+        _encoder.reset();
+        _encoder.encode(_char, _sink, true);
+        _encoder.flush(_sink);
+        _count = _sink.position();
+    }
+
+    /** Hand my buffer to the underlying stream and empty it. */
+    private void drain() {
+        if (_count == 0) {
+            return;
+        }
+        try {
+            _out.write(_buffer, 0, _count);
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+        _written += _count;
+        _count = 0;
+    }
+
+    /** Destination stream. */
+    private final OutputStream _out;
+
+    /** Characters per group. */
+    private final int _group;
+
+    /** Message characters per output line, or 0 for no limit. */
+    private final int _lineWidth;
+
+    /** Bytes not yet written to _out. */
+    private final byte[] _buffer;
+
+    /** Number of bytes in _buffer. */
+    private int _count;
+
+    /** Number of bytes already written to _out. */
+    private long _written;
+
+    /** Encoding of the line separator. */
+    private final byte[] _newline;
+
+    /** Encoder of characters outside ASCII. */
+    private final CharsetEncoder _encoder;
+
+    /** Most bytes _encoder produces for one character. */
+    private final int _maxCharBytes;
+
+    /** The character being encoded. */
+    private final CharBuffer _char = CharBuffer.allocate(1);
+
+    /** _buffer, as the destination of _encoder. */
+    private final ByteBuffer _sink;
+
+    /** True iff each line is written out as soon as it is printed. */
+    private boolean _lineFlush;
+}
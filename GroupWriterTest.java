@@ -0,0 +1,99 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/** The suite of all JUnit tests for the GroupWriter class.
+ *  @author Ho Jong Kang
+ */
+public class GroupWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return MSG formatted as the original Main.printMessageLine did. */
+    private String legacy(String msg) {
+        String result = "";
+        int remainder = msg.length() % 5;
+        for (int i = 0; i < msg.length() - remainder; i += 5) {
+            result += msg.substring(i, i + 5) + " ";
+        }
+        return result + msg.substring(msg.length() - remainder)
+            + System.lineSeparator();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesLegacyFormat() {
+        String alpha = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GroupWriter writer = new GroupWriter(out, 5, 0, 16);
+        String expected = "";
+        for (int len = 0; len <= alpha.length(); len += 1) {
+            writer.printLine(alpha.toCharArray(), len);
+            expected += legacy(alpha.substring(0, len));
+        }
+        writer.newLine();
+        expected += System.lineSeparator();
+        writer.flush();
+        assertEquals(expected, out.toString());
+        assertEquals(out.size(), writer.bytesWritten());
+    }
+
+    @Test
+    public void testGroupAndLineWidth() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GroupWriter writer = new GroupWriter(out, 3, 6, 64);
+        writer.printLine("ABCDEFGHIJ".toCharArray(), 10);
+        writer.flush();
+        String nl = System.lineSeparator();
+        assertEquals("ABC DEF " + nl + "GHI J" + nl, out.toString());
+    }
+
+    @Test
+    public void testNonAscii() {
+        String msg = "A\u00e9\u4e00BC\u0416\ufffbDEFG\ud800";
+        for (int size = 16; size <= 64; size += 48) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            GroupWriter writer = new GroupWriter(out, 5, 0, size);
+            for (int k = 0; k < 4; k += 1) {
+                writer.printLine(msg.toCharArray(), msg.length());
+            }
+            writer.flush();
+            StringBuilder expected = new StringBuilder();
+            for (int k = 0; k < 4; k += 1) {
+                for (char c : legacy(msg).toCharArray()) {
+                    expected.append(new String(String.valueOf(c)
+                                               .getBytes(),
+                                               Charset.defaultCharset()));
+                }
+            }
+            assertEquals(expected.toString(),
+                         out.toString(Charset.defaultCharset()));
+            assertEquals(out.size(), writer.bytesWritten());
+        }
+    }
+
+    @Test
+    public void testLineFlush() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GroupWriter writer = new GroupWriter(out);
+        writer.printLine("ABCDEFG".toCharArray(), 7);
+        assertEquals(0, out.size());
+        writer.setLineFlush(true);
+        writer.printLine("HIJ".toCharArray(), 3);
+        String nl = System.lineSeparator();
+        assertEquals("ABCDE FG" + nl + "HIJ" + nl, out.toString());
+        writer.newLine();
+        assertEquals("ABCDE FG" + nl + "HIJ" + nl + nl, out.toString());
+    }
+}
@@ -0,0 +1,103 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.error;
+
+/** The normalization of message input for an alphabet, as a table giving
+ *  the class of every character: mapped to a character of the alphabet,
+ *  skipped, or an error. A character of the alphabet maps to itself. One
+ *  that is not, but whose upper- or lower-case form is, maps to that
+ *  form, so that messages may be given in either case. The characters
+ *  to be skipped, normally just the blank, are named when the filter is
+ *  made; any other character is an error. Converting through the table
+ *  (see Machine.convert(char[], int, InputFilter)) takes the place of
+ *  copying each line to upper case and stripping its blanks first.
+ *  @author Ho Jong Kang
+ */
+final class InputFilter {
+
+    /** Class of a character that is dropped. */
+    static final int SKIP = -1;
+
+    /** Class of a character that may not appear. */
+    static final int ERROR = -2;
+
+    /** Characters skipped by default. */
+    static final String BLANKS = " ";
+
+    /** A filter for ALPHABET that skips the characters of SKIP that are
+     *  not in ALPHABET. */
+    InputFilter(Alphabet alphabet, String skip) {
+        _alphabet = alphabet;
+        _classes = new int[Character.MAX_VALUE + 1];
+        Arrays.fill(_classes, ERROR);
+        int n = alphabet.size();
+        for (int i = 0; i < n; i += 1) {
+            _classes[alphabet.toChar(i)] = i;
+        }
+        for (int i = 0; i < n; i += 1) {
+            char c = alphabet.toChar(i);
+            fold(Character.toUpperCase(c), i);
+            fold(Character.toLowerCase(c), i);
+        }
+        for (int i = 0; i < skip.length(); i += 1) {
+            char c = skip.charAt(i);
+            if (_classes[c] == ERROR) {
+                _classes[c] = SKIP;
+            }
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the class of C: the index in my alphabet of the character
+     *  it maps to, SKIP or ERROR. */
+    int classify(char c) {
+        return _classes[c];
+    }
+
+    /** Return the index in my alphabet of the character to which C
+     *  maps. Throw an EnigmaException if there is none. */
+    int toInt(char c) {
+        int k = _classes[c];
+        if (k < 0) {
+            throw error("character out of range");
+        }
+        return k;
+    }
+
+    /** Replace each of the first LEN characters of MSG with the one it
+     *  maps to, dropping those skipped, and return the number left, now
+     *  at the start of MSG. Throw an EnigmaException at the first error. */
+    int apply(char[] msg, int len) {
+        int n = 0;
+        for (int i = 0; i < len; i += 1) {
+            int k = _classes[msg[i]];
+            if (k >= 0) {
+                msg[n] = _alphabet.toChar(k);
+                n += 1;
+            } else if (k == ERROR) {
+                throw error("character out of range");
+            }
+        }
+        return n;
+    }
+
+    /** Map C, a case form of the character at INDEX in my alphabet, to
+     *  INDEX, unless C is already mapped. */
+    private void fold(char c, int index) {
+        if (_classes[c] == ERROR) {
+            _classes[c] = index;
+        }
+    }
+
+    /** The alphabet mapped to. */
+    private final Alphabet _alphabet;
+
+    /** The class of each character. */
+    private final int[] _classes;
+}
@@ -0,0 +1,87 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+/** The suite of all JUnit tests for the InputFilter class.
+ *  @author Ho Jong Kang
+ */
+public class InputFilterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the output of Main on INPUT with MACHINE. */
+    private String run(Machine machine, String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        new Main(machine.alphabet(), new LineReader(input), out)
+            .process(machine);
+        out.flush();
+        return bytes.toString(Charset.defaultCharset());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testClasses() {
+        InputFilter filter =
+            new InputFilter(Main.alphabet("ABCDab.-"), " .,");
+        assertEquals(0, filter.classify('A'));
+        assertEquals(4, filter.classify('a'));
+        assertEquals(5, filter.classify('b'));
+        assertEquals(2, filter.classify('c'));
+        assertEquals(6, filter.classify('.'));
+        assertEquals(InputFilter.SKIP, filter.classify(' '));
+        assertEquals(InputFilter.SKIP, filter.classify(','));
+        assertEquals(InputFilter.ERROR, filter.classify('E'));
+        assertEquals(InputFilter.ERROR, filter.classify('\t'));
+        char[] msg = "a b,C.d".toCharArray();
+        assertEquals(5, filter.apply(msg, msg.length));
+        assertEquals("abC.D", new String(msg, 0, 5));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testError() {
+        char[] msg = "AB?".toCharArray();
+        new InputFilter(Main.alphabet("A-Z"), " ").apply(msg, msg.length);
+    }
+
+    @Test
+    public void testExplicitAlphabet() {
+        Alphabet alphabet = Main.alphabet("acegi");
+        assertEquals(5, alphabet.size());
+        assertTrue(alphabet.contains('e'));
+        assertFalse(alphabet.contains('b'));
+        assertFalse(alphabet.contains('E'));
+        assertEquals(2, alphabet.toInt('e'));
+    }
+
+    @Test
+    public void testMixedCase() {
+        Machine upper = Naval.machine();
+        String expected = run(upper, Naval.SETTINGS
+                              + "\nFROM his shoulder Hiawatha\n");
+        String config = Pattern.compile("(?m)^(\\S+) ([mnr])")
+            .matcher(Naval.CONFIG.toLowerCase())
+            .replaceAll(m -> m.group(1) + " " + m.group(2).toUpperCase());
+        Machine lower = Main.configure(new Scanner(config));
+        assertEquals(expected.toLowerCase(),
+                     run(lower, Naval.SETTINGS.toLowerCase()
+                         + "\nFROM HIS shoulder hiawatha\n"));
+        assertEquals(expected.toLowerCase(),
+                     run(lower, Naval.SETTINGS
+                         + "\nfromhisshoulderhiawatha\n"));
+    }
+}
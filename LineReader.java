@@ -0,0 +1,224 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.NoSuchElementException;
+
+import static enigma.EnigmaException.error;
+
+/** The lines of a message input, read as a Scanner with its default
+ *  delimiter reads them through hasNext, hasNextLine and nextLine, but
+ *  without regular expressions. Scanner compiles its patterns and looks
+ *  up the number formats of the default locale when it is made, which
+ *  is most of the work of a short run; this reader only looks at each
+ *  character once more than it must. As with a Scanner, a failure to
+ *  read ends the input.
+ *  @author Ho Jong Kang
+ */
+final class LineReader implements Closeable {
+
+    /** Characters read from the source at a time. */
+    private static final int CHUNK = 8192;
+
+    /** A reader of the lines of IN. */
+    LineReader(Reader in) {
+        _in = in;
+    }
+
+    /** A reader of the lines of TEXT. */
+    LineReader(String text) {
+        this(new StringReader(text));
+    }
+
+    /** Return a reader of the lines of IN, decoded in the default
+     *  charset, with replacement characters for bytes that cannot be. */
+    static LineReader of(InputStream in) {
+        return new LineReader(new InputStreamReader(in,
+                                                    Charset.defaultCharset()));
+    }
+
+    /** Return a reader of the lines of FILE, decoded in the default
+     *  charset. As with a Scanner on a file, the input ends at the first
+     *  bytes that cannot be decoded. */
+    static LineReader open(File file) {
+        try {
+            FileChannel channel = new FileInputStream(file).getChannel();
+            return new LineReader(Channels.newReader(
+                channel, Charset.defaultCharset().newDecoder(), -1));
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return true iff another token remains: a character that is not
+     *  whitespace in the sense of Character.isWhitespace. */
+    boolean hasNext() {
+        return tokenStart() >= 0;
+    }
+
+    /** Return true iff another token remains, beginning with FIRST and
+     *  holding no line separator, as a token matching "[FIRST].*"
+     *  would. */
+    boolean hasNext(char first) {
+        int p = tokenStart();
+        if (p < 0 || _buf[p] != first) {
+            return false;
+        }
+        while (true) {
+            for (; p < _end; p += 1) {
+                char c = _buf[p];
+                if (Character.isWhitespace(c)) {
+                    return true;
+                } else if (c == '\u0085') {
+                    return false;
+                }
+            }
+            p -= _pos;
+            if (!fill()) {
+                return true;
+            }
+            p += _pos;
+        }
+    }
+
+    /** Return true iff any input remains, if only a line separator. */
+    boolean hasNextLine() {
+        return _pos < _end || fill();
+    }
+
+    /** Return the rest of the current line, without its line separator,
+     *  and move past it. The separator is then given by separator().
+     *  Throw NoSuchElementException if no input remains. */
+    String nextLine() {
+        if (!hasNextLine()) {
+            throw new NoSuchElementException("No line found");
+        }
+        int p = _pos;
+        while (true) {
+            for (; p < _end; p += 1) {
+                char c = _buf[p];
+                if (c == '\n' || c == '\r' || c == '\u2028'
+                    || c == '\u2029' || c == '\u0085') {
+                    return endLine(p);
+                }
+            }
+            p -= _pos;
+            if (!fill()) {
+                return endLine(_pos + p);
+            }
+            p += _pos;
+        }
+    }
+
+    /** Return the line separator that ended the line last returned by
+     *  nextLine, or null if the input ended it. */
+    String separator() {
+        return _separator;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _in.close();
+    }
+
+    /** Return the line from _pos to END, which is the end of the input
+     *  or the index of the separator after it, and move past both. */
+    private String endLine(int end) {
+        String line = new String(_buf, _pos, end - _pos);
+        _pos = end;
+        if (end == _end) {
+            _separator = null;
+            return line;
+        }
+        char c = _buf[end];
+        _pos = end + 1;
+        if (c == '\r') {
+            if (_pos == _end) {
+                fill();
+            }
+            if (_pos < _end && _buf[_pos] == '\n') {
+                _pos += 1;
+                _separator = "\r\n";
+                return line;
+            }
+        }
+        _separator = String.valueOf(c);
+        return line;
+    }
+
+    /** Return the index in _buf of the start of the next token, reading
+     *  as much as needed to find it, or -1 if there is none. Whitespace
+     *  before it is kept. */
+    private int tokenStart() {
+        int p = _pos;
+        while (true) {
+            for (; p < _end; p += 1) {
+                if (!Character.isWhitespace(_buf[p])) {
+                    return p;
+                }
+            }
+            p -= _pos;
+            if (!fill()) {
+                return -1;
+            }
+            p += _pos;
+        }
+    }
+
+    /** Read more of the input into _buf after the unread characters,
+     *  which may be moved to its start, so that _pos may change. Return
+     *  true iff any characters were read. */
+    private boolean fill() {
+        if (_eof) {
+            return false;
+        }
+        if (_pos > 0) {
+            System.arraycopy(_buf, _pos, _buf, 0, _end - _pos);
+            _end -= _pos;
+            _pos = 0;
+        }
+        if (_buf.length - _end < CHUNK) {
+            char[] buf = new char[Math.max(2 * _buf.length, _end + CHUNK)];
+            System.arraycopy(_buf, 0, buf, 0, _end);
+            _buf = buf;
+        }
+        try {
+            int n = _in.read(_buf, _end, _buf.length - _end);
+            if (n > 0) {
+                _end += n;
+                return true;
+            }
+        } catch (IOException excp) {
+            /* Ends the input, as in a Scanner. */
+        }
+        _eof = true;
+        return false;
+    }
+
+    /** The source of the input. */
+    private final Reader _in;
+
+    /** Input read but not yet returned, from _pos to _end. */
+    private char[] _buf = new char[0];
+
+    /** Index in _buf of the first character not yet returned. */
+    private int _pos;
+
+    /** Index in _buf of the end of the input read so far. */
+    private int _end;
+
+    /** True once the source has ended. */
+    private boolean _eof;
+
+    /** The separator that ended the last line returned, or null. */
+    private String _separator;
+}
@@ -0,0 +1,115 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the LineReader class.
+ *  @author Ho Jong Kang
+ */
+public class LineReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Inputs whose lines are read the same way by both readers. */
+    private static final String[] INPUTS = {
+        "", "\n", "ABC", "ABC\n", "\n\nABC\n\n", "* B I\nABC\r\nDEF\rGHI",
+        "A\u2028B\u2029C\u0085D\r\r\nE", "  * X\n\t*Y\u0085Z\n  \n",
+        "*\u0085\nAB", "   ", "x\r", "\u2028 * A\n"
+    };
+
+    /** Return a record of reading IN as Main does, through a Scanner. */
+    private String scan(String in) {
+        Scanner input = new Scanner(in);
+        StringBuilder record = new StringBuilder();
+        while (true) {
+            record.append(input.hasNext()).append(' ')
+                .append(input.hasNext("\\s*[*].*")).append(' ');
+            if (!input.hasNextLine()) {
+                return record.toString();
+            }
+            record.append('[').append(input.nextLine()).append(']')
+                .append(input.match().group(1)).append('\n');
+        }
+    }
+
+    /** Return a record of reading IN as Main does, through a
+     *  LineReader. */
+    private String read(LineReader input) {
+        StringBuilder record = new StringBuilder();
+        while (true) {
+            record.append(input.hasNext()).append(' ')
+                .append(input.hasNext('*')).append(' ');
+            if (!input.hasNextLine()) {
+                return record.toString();
+            }
+            record.append('[').append(input.nextLine()).append(']')
+                .append(input.separator()).append('\n');
+        }
+    }
+
+    /** A Reader that gives the characters of a string one at a time. */
+    private static class Trickle extends Reader {
+
+        /** A Reader of TEXT. */
+        Trickle(String text) {
+            _in = new StringReader(text);
+        }
+
+        @Override
+        public int read(char[] buf, int off, int len) throws IOException {
+            return _in.read(buf, off, Math.min(len, 1));
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** The source of my characters. */
+        private final StringReader _in;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testAsScanner() {
+        for (String in : INPUTS) {
+            String expected = scan(in);
+            assertEquals(in, expected, read(new LineReader(in)));
+            assertEquals(in, expected, read(new LineReader(new Trickle(in))));
+        }
+    }
+
+    @Test
+    public void testLongLines() {
+        Random random = new Random(42);
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < 20; i += 1) {
+            in.append(i % 3 == 0 ? "* B I II" : "");
+            in.append(Naval.randomText(random, random.nextInt(30000))
+                      .replace('\n', ' '));
+            in.append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        String text = in.toString();
+        assertEquals(scan(text), read(new LineReader(text)));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testNoLine() {
+        LineReader input = new LineReader("AB\n");
+        assertEquals("AB", input.nextLine());
+        input.nextLine();
+    }
+}
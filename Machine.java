@@ -2,8 +2,6 @@ package enigma;
 
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Set;
-import java.util.HashSet;
 import java.util.Collection;
 
 /**
@@ -29,9 +27,9 @@ class Machine {
     private int _pawls;
 
     /**
-     * List of Rotors that keeps all rotors.
+     * My available rotors, indexed by upper-case name.
      */
-    private List<Rotor> _allRotors;
+    private RotorLibrary _library;
 
     /**
      * List of Rotors that keeps my rotors.
@@ -43,6 +41,54 @@ class Machine {
      */
     private Permutation _plugboard;
 
+    /**
+     * Rule by which my rotors advance.
+     */
+    private SteppingStrategy _stepping = new ClassicStepping();
+
+    /**
+     * The rotors in my pawled slots, from left to right (or, with no
+     * pawls, the rightmost rotor), as passed to _stepping. Null when it
+     * must be rebuilt from _myRotors.
+     */
+    private Rotor[] _pawled;
+
+    /**
+     * Converts characters through my rotors and plugboard from their
+     * tables, or null to convert through the rotors themselves.
+     */
+    private RotorEngine _engine;
+
+    /**
+     * True when _engine must be rebuilt before use.
+     */
+    private boolean _engineStale = true;
+
+    /**
+     * True iff I convert through a RotorEngine when I can.
+     */
+    private boolean _useEngines = true;
+
+    /**
+     * Converts characters by code generated for my rotors, or null.
+     */
+    private CipherKernel _kernel;
+
+    /**
+     * True when _kernel must be rebuilt before use.
+     */
+    private boolean _kernelStale = true;
+
+    /**
+     * True iff I convert through a CipherKernel when I can.
+     */
+    private boolean _useKernels;
+
+    /**
+     * Counts the characters I convert, or null.
+     */
+    private Statistics _statistics;
+
     /**
      * A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      * and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
@@ -50,12 +96,101 @@ class Machine {
      */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, new RotorLibrary(allRotors));
+    }
+
+    /**
+     * A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     * and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are those
+     * of LIBRARY.
+     */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorLibrary library) {
         _alphabet = alpha;
         this._numRotors = numRotors;
         this._pawls = pawls;
         this._myRotors = new ArrayList<>();
-        this._allRotors = new ArrayList<>();
-        this._allRotors.addAll(allRotors);
+        this._library = library;
+    }
+
+    /**
+     * Return the common alphabet of my rotors.
+     */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /**
+     * Return a new machine with my alphabet, slots and pawls whose
+     * available rotors are fresh copies of mine. The copy shares my
+     * permutations but no rotor state, so it may run on another thread.
+     */
+    Machine copy() {
+        Machine copy =
+            new Machine(_alphabet, _numRotors, _pawls, _library.copy());
+        copy._stepping = _stepping;
+        copy._useEngines = _useEngines;
+        copy._useKernels = _useKernels;
+        return copy;
+    }
+
+    /**
+     * Return my available rotors.
+     */
+    RotorLibrary library() {
+        return _library;
+    }
+
+    /**
+     * Return the rule by which my rotors advance.
+     */
+    SteppingStrategy stepping() {
+        return _stepping;
+    }
+
+    /**
+     * Make STEPPING the rule by which my rotors advance. By default, it is
+     * ClassicStepping.
+     */
+    void setStepping(SteppingStrategy stepping) {
+        _stepping = stepping;
+        _kernelStale = true;
+    }
+
+    /**
+     * Convert through a RotorEngine when I can iff ON, as I do by default.
+     * Converting through the rotors themselves gives the same results
+     * more slowly.
+     */
+    void setEngines(boolean on) {
+        _useEngines = on;
+        _engineStale = true;
+    }
+
+    /**
+     * Convert through a CipherKernel generated for my rotors when I can
+     * iff ON. By default, I do not. Kernels are used only with
+     * ClassicStepping, and give the same results as the other ways of
+     * converting.
+     */
+    void setKernels(boolean on) {
+        _useKernels = on;
+        _kernelStale = true;
+    }
+
+    /**
+     * Return the statistics gathered as I convert, or null if none are.
+     */
+    Statistics statistics() {
+        return _statistics;
+    }
+
+    /**
+     * Count the characters I convert from now on in STATS, or if it is
+     * null, stop counting. Only conversions of character arrays and
+     * strings are counted, and message keys are not.
+     */
+    void setStatistics(Statistics stats) {
+        _statistics = stats;
     }
 
     /**
@@ -79,15 +214,19 @@ class Machine {
      */
     void insertRotors(String[] rotors) {
         _myRotors.clear();
+        _pawled = null;
+        _engineStale = _kernelStale = true;
         for (String rotor : rotors) {
-            for (Rotor availrotor : _allRotors) {
-                if (rotor.equals(availrotor.name().toUpperCase())) {
-                    if (_myRotors.contains(availrotor)) {
-                        throw new EnigmaException("Duplicate rotor name");
-                    }
-                    _myRotors.add(availrotor);
+            Rotor availrotor = _library.get(rotor);
+            if (availrotor == null) {
+                continue;
+            }
+            for (Rotor inserted : _myRotors) {
+                if (inserted.name().equals(availrotor.name())) {
+                    throw new EnigmaException("Duplicate rotor name");
                 }
             }
+            _myRotors.add(availrotor);
         }
         if (_myRotors.size() != rotors.length) {
             throw new EnigmaException("Bad rotor name");
@@ -118,10 +257,231 @@ class Machine {
 
     }
 
+    /**
+     * Return the setting of the rotor in each of my slots, from left to
+     * right.
+     */
+    int[] positions() {
+        int[] positions = new int[_myRotors.size()];
+        for (int i = 0; i < positions.length; i += 1) {
+            positions[i] = _myRotors.get(i).setting();
+        }
+        return positions;
+    }
+
+    /**
+     * Set the rotor in each of my slots, from left to right, to the
+     * setting in POSITIONS, as returned by positions() for the same
+     * rotors.
+     */
+    void setPositions(int[] positions) {
+        if (positions.length != _myRotors.size()) {
+            throw new EnigmaException("Wrong number of positions");
+        }
+        for (int i = 0; i < positions.length; i += 1) {
+            _myRotors.get(i).set(positions[i]);
+        }
+    }
+
+    /**
+     * Return my state: the rotor in each of my slots, its setting and my
+     * plugboard, such that restore() returns me to it.
+     */
+    Snapshot snapshot() {
+        int n = _myRotors.size();
+        Rotor[] rotors = new Rotor[n];
+        int[] positions = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            rotors[i] = _myRotors.get(i);
+            positions[i] = rotors[i].setting();
+        }
+        if (n == _numRotors) {
+            kernel();
+            engine();
+            if (_pawled == null) {
+                _pawled = pawled();
+            }
+        }
+        return new Snapshot(this, rotors, positions);
+    }
+
+    /**
+     * Return me to STATE, as returned by snapshot() for me or a machine
+     * sharing my rotors, in time proportional to the number of rotors
+     * and without allocating. When the rotors or plugboard differ from
+     * mine, what I derived from them when STATE was taken is put back
+     * rather than rebuilt, unless the way I convert has changed since.
+     */
+    void restore(Snapshot state) {
+        if (state._library != _library) {
+            throw new EnigmaException("Snapshot of another machine");
+        }
+        Rotor[] rotors = state._rotors;
+        boolean same = rotors.length == _myRotors.size()
+            && state._plugboard == _plugboard;
+        for (int i = 0; same && i < rotors.length; i += 1) {
+            same = rotors[i] == _myRotors.get(i);
+        }
+        if (!same) {
+            _myRotors.clear();
+            for (Rotor rotor : rotors) {
+                _myRotors.add(rotor);
+            }
+            _plugboard = state._plugboard;
+            if (state._pawled != null && state._stepping == _stepping
+                && state._useEngines == _useEngines
+                && state._useKernels == _useKernels) {
+                _pawled = state._pawled;
+                _engine = state._engine;
+                _kernel = state._kernel;
+                _engineStale = _kernelStale = false;
+            } else {
+                _pawled = null;
+                _engineStale = _kernelStale = true;
+            }
+        }
+        int[] positions = state._positions;
+        for (int i = 0; i < positions.length; i += 1) {
+            rotors[i].set(positions[i]);
+        }
+    }
+
+    /**
+     * The state of a machine as returned by snapshot(): which rotor is
+     * in each slot, its setting, and the plugboard. With them it keeps
+     * the tables and engines the machine had built for those rotors, so
+     * that they need not be built again. It is immutable.
+     */
+    static final class Snapshot {
+
+        /**
+         * The state of MACHINE, which holds ROTORS at POSITIONS.
+         */
+        private Snapshot(Machine machine, Rotor[] rotors, int[] positions) {
+            _library = machine._library;
+            _rotors = rotors;
+            _positions = positions;
+            _plugboard = machine._plugboard;
+            _stepping = machine._stepping;
+            _useEngines = machine._useEngines;
+            _useKernels = machine._useKernels;
+            boolean built = rotors.length == machine._numRotors;
+            _pawled = built ? machine._pawled : null;
+            _engine = machine._engine;
+            _kernel = machine._kernel;
+        }
+
+        /**
+         * Return the number of slots filled.
+         */
+        int size() {
+            return _rotors.length;
+        }
+
+        /**
+         * Return the name of the rotor in slot K, from the left.
+         */
+        String rotor(int k) {
+            return _rotors[k].name();
+        }
+
+        /**
+         * Return the setting of the rotor in slot K, from the left.
+         */
+        int position(int k) {
+            return _positions[k];
+        }
+
+        /**
+         * Library holding the rotors.
+         */
+        private final RotorLibrary _library;
+
+        /**
+         * The rotor in each slot.
+         */
+        private final Rotor[] _rotors;
+
+        /**
+         * The setting of each rotor.
+         */
+        private final int[] _positions;
+
+        /**
+         * The plugboard, or null.
+         */
+        private final Permutation _plugboard;
+
+        /**
+         * The machine's stepping rule.
+         */
+        private final SteppingStrategy _stepping;
+
+        /**
+         * Whether the machine converted through engines and kernels.
+         */
+        private final boolean _useEngines, _useKernels;
+
+        /**
+         * The machine's pawled rotors, or null if the slots were not all
+         * filled, in which case nothing else it built is kept.
+         */
+        private final Rotor[] _pawled;
+
+        /**
+         * The machine's engine, or null.
+         */
+        private final RotorEngine _engine;
+
+        /**
+         * The machine's kernel, or null.
+         */
+        private final CipherKernel _kernel;
+    }
+
+    /**
+     * Set my rotors to DAILY, as returned by positions(), replace the
+     * first numRotors() - 1 characters of MSG, the enciphered message key
+     * of a message, with their decryption, and set my rotors to the
+     * decrypted key as by setRotors, ready to convert the rest of the
+     * message.
+     */
+    void setMessageKey(int[] daily, char[] msg) {
+        setMessageKey(daily, msg, msg.length);
+    }
+
+    /**
+     * As for setMessageKey(DAILY, MSG), where the message is the first
+     * LENGTH characters of MSG.
+     */
+    void setMessageKey(int[] daily, char[] msg, int length) {
+        int len = _numRotors - 1;
+        if (length < len) {
+            throw new EnigmaException("Message too short for message key");
+        }
+        setPositions(daily);
+        Statistics stats = _statistics;
+        _statistics = null;
+        try {
+            convert(msg, len);
+        } finally {
+            _statistics = stats;
+        }
+        setRotors(new String(msg, 0, len));
+        if (stats != null) {
+            stats.endMessage();
+        }
+    }
+
     /**
      * Set the plugboard to PLUGBOARD.
      */
     void setPlugboard(Permutation plugboard) {
+        if (plugboard != _plugboard
+            && (plugboard == null || _plugboard == null
+                || !plugboard.sameMapping(_plugboard))) {
+            _engineStale = _kernelStale = true;
+        }
         this._plugboard = plugboard;
     }
 
@@ -132,20 +492,21 @@ class Machine {
      * the machine.
      */
     int convert(int c) {
-        Set<Rotor> move = new HashSet<>();
-        for (int i = _numRotors - _pawls; i < _numRotors - 1; i += 1) {
-            if (_myRotors.get(i + 1).atNotch()
-                    || move.contains(_myRotors.get(i - 1))) {
-                move.add(_myRotors.get(i));
-                if (_myRotors.get(i).atNotch()) {
-                    move.add(_myRotors.get(i - 1));
-                }
+        if (kernel() != null) {
+            _kernel.load();
+            try {
+                return _kernel.convert(c);
+            } finally {
+                _kernel.store();
             }
         }
-        move.add(_myRotors.get(_numRotors - 1));
+        if (_pawled == null) {
+            _pawled = pawled();
+        }
+        _stepping.step(_pawled);
 
-        for (Rotor elem : move) {
-            elem.advance();
+        if (engine() != null) {
+            return _engine.convert(c);
         }
 
         try {
@@ -174,17 +535,153 @@ class Machine {
 
     }
 
+    /**
+     * Advance my rotors as converting N >= 0 characters would, without
+     * converting any.
+     */
+    void advance(long n) {
+        if (_pawled == null) {
+            _pawled = pawled();
+        }
+        _stepping.advance(_pawled, n);
+    }
+
+    /**
+     * Return the RotorEngine through which I convert, or null if I do not
+     * use one.
+     */
+    private RotorEngine engine() {
+        if (_engineStale) {
+            _engineStale = false;
+            _engine = _useEngines && _myRotors.size() == _numRotors
+                ? RotorEngine.of(_myRotors, _plugboard) : null;
+        }
+        return _engine;
+    }
+
+    /**
+     * Return the CipherKernel through which I convert, or null if I do not
+     * use one.
+     */
+    private CipherKernel kernel() {
+        if (_kernelStale) {
+            _kernelStale = false;
+            _kernel = _useKernels && _myRotors.size() == _numRotors
+                && _stepping instanceof ClassicStepping
+                ? CipherKernel.of(_myRotors, _pawls, _plugboard) : null;
+        }
+        return _kernel;
+    }
+
+    /**
+     * Return the rotors in my pawled slots, from left to right, or if I
+     * have no pawls, my rightmost rotor.
+     */
+    private Rotor[] pawled() {
+        if (_pawls >= _numRotors) {
+            throw new EnigmaException("Too many pawls");
+        }
+        int first = _numRotors - Math.max(_pawls, 1);
+        Rotor[] pawled = new Rotor[_numRotors - first];
+        for (int i = first; i < _numRotors; i += 1) {
+            pawled[i - first] = _myRotors.get(i);
+        }
+        return pawled;
+    }
+
     /**
      * Returns the encoding/decoding of MSG, updating the state of
      * the rotors accordingly.
      */
     String convert(String msg) {
-        String result = "";
-        for (int i = 0; i < msg.length(); i += 1) {
-            char convert = _alphabet.
-                    toChar(convert(_alphabet.toInt(msg.charAt(i))));
-            result += convert;
+        char[] result = msg.toCharArray();
+        convert(result, result.length);
+        return new String(result);
+    }
+
+    /**
+     * Replace the first LEN characters of MSG with their encoding/decoding,
+     * updating the state of the rotors accordingly, after normalizing each
+     * by FILTER, which is for my alphabet: characters it skips are
+     * dropped, and those it maps are converted as what they map to.
+     * Return the number of characters converted, which are now at the
+     * start of MSG.
+     */
+    int convert(char[] msg, int len, InputFilter filter) {
+        Statistics stats = _statistics;
+        CipherKernel kernel = kernel();
+        int n = 0;
+        if (kernel != null) {
+            kernel.load();
+            try {
+                for (int i = 0; i < len; i += 1) {
+                    int in = filter.classify(msg[i]);
+                    if (in < 0) {
+                        if (in == InputFilter.SKIP) {
+                            continue;
+                        }
+                        throw new EnigmaException("character out of range");
+                    }
+                    int out = kernel.convert(in);
+                    msg[n] = _alphabet.toChar(out);
+                    n += 1;
+                    if (stats != null) {
+                        stats.add(in, out);
+                    }
+                }
+            } finally {
+                kernel.store();
+            }
+            return n;
+        }
+        for (int i = 0; i < len; i += 1) {
+            int in = filter.classify(msg[i]);
+            if (in < 0) {
+                if (in == InputFilter.SKIP) {
+                    continue;
+                }
+                throw new EnigmaException("character out of range");
+            }
+            int out = convert(in);
+            msg[n] = _alphabet.toChar(out);
+            n += 1;
+            if (stats != null) {
+                stats.add(in, out);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Replace the first LEN characters of MSG with their encoding/decoding,
+     * updating the state of the rotors accordingly.
+     */
+    void convert(char[] msg, int len) {
+        Statistics stats = _statistics;
+        CipherKernel kernel = kernel();
+        if (kernel != null) {
+            kernel.load();
+            try {
+                for (int i = 0; i < len; i += 1) {
+                    int in = _alphabet.toInt(msg[i]);
+                    int out = kernel.convert(in);
+                    msg[i] = _alphabet.toChar(out);
+                    if (stats != null) {
+                        stats.add(in, out);
+                    }
+                }
+            } finally {
+                kernel.store();
+            }
+            return;
+        }
+        for (int i = 0; i < len; i += 1) {
+            int in = _alphabet.toInt(msg[i]);
+            int out = convert(in);
+            msg[i] = _alphabet.toChar(out);
+            if (stats != null) {
+                stats.add(in, out);
+            }
         }
-        return result;
     }
 }
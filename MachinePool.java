@@ -0,0 +1,247 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/** A bounded pool of copies of a configured machine, for converting many
+ *  short, independent requests on many threads without configuring a
+ *  machine for each. A thread borrows a machine set up for its request,
+ *  converts with it, and closes the lease to return it.
+ *
+ *  The pool takes no locks. Idle machines sit in an array of slots that
+ *  borrowers and returners claim with compare-and-set, each thread
+ *  starting its search at its own place in the array, so that threads
+ *  rarely touch the same slot. At most CAPACITY machines are ever made;
+ *  once all are lent out, a borrower waits for one to be returned. Hits,
+ *  misses and waiting are counted with LongAdders, which do not contend
+ *  either.
+ *  @author Ho Jong Kang
+ */
+final class MachinePool {
+
+    /** Times a waiting borrower looks for a returned machine before it
+     *  starts to park. */
+    private static final int SPINS = 64;
+
+    /** Longest a waiting borrower parks between looks, in nanoseconds. */
+    private static final long MAX_PARK = 1_000_000;
+
+    /** A pool lending at most CAPACITY > 0 copies of PROTOTYPE, which
+     *  itself is never lent. */
+    MachinePool(Machine prototype, int capacity) {
+        if (capacity < 1) {
+            throw new EnigmaException("Pool capacity must be positive");
+        }
+        _prototype = prototype;
+        _slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /** A machine lent by a pool. Closing the lease returns the machine,
+     *  which must not be used afterwards. */
+    static final class Lease implements AutoCloseable {
+
+        /** A lease of MACHINE from POOL. */
+        private Lease(MachinePool pool, Machine machine) {
+            _pool = pool;
+            _machine = machine;
+        }
+
+        /** Return the machine lent. */
+        Machine machine() {
+            return _machine;
+        }
+
+        /** Return the machine to the pool. Closing a lease again has no
+         *  effect. */
+        @Override
+        public void close() {
+            if (_lent) {
+                _lent = false;
+                _pool.giveBack(this);
+            }
+        }
+
+        /** Set my machine up by the settings line SETTINGS. If it was
+         *  last set up by the same line, its state then is restored
+         *  without parsing the line again. */
+        private void reset(String settings) {
+            if (settings.equals(_settings)) {
+                _machine.restore(_state);
+                return;
+            }
+            _settings = null;
+            Main.setUp(_machine, settings);
+            _state = _machine.snapshot();
+            _settings = settings;
+        }
+
+        /** The pool that lent me. */
+        private final MachinePool _pool;
+
+        /** The machine lent. */
+        private final Machine _machine;
+
+        /** True until I am closed. */
+        private boolean _lent;
+
+        /** The settings line by which my machine was last set up, or null
+         *  if its setup is unknown. */
+        private String _settings;
+
+        /** The state in which _settings leaves my machine. */
+        private Machine.Snapshot _state;
+    }
+
+    /** Return a lease of a machine set up by the settings line SETTINGS,
+     *  waiting for one to be returned if all are lent. */
+    Lease borrow(String settings) {
+        Lease lease = take();
+        lease._lent = true;
+        try {
+            lease.reset(settings);
+        } catch (RuntimeException excp) {
+            lease.close();
+            throw excp;
+        }
+        return lease;
+    }
+
+    /** Return the number of borrowings that reused an idle machine. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return the number of borrowings that made a new machine. */
+    long misses() {
+        return _misses.sum();
+    }
+
+    /** Return the number of borrowings that had to wait for a machine to
+     *  be returned. */
+    long waits() {
+        return _waits.sum();
+    }
+
+    /** Return the total time borrowers have waited, in nanoseconds. */
+    long waitNanos() {
+        return _waitNanos.sum();
+    }
+
+    /** Return the number of machines made so far. */
+    int size() {
+        return _made.get();
+    }
+
+    /** Return the most machines I will make. */
+    int capacity() {
+        return _slots.length();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d machines, %d hits, %d misses, "
+                             + "%d waits (%.3f ms)", size(), capacity(),
+                             hits(), misses(), waits(), waitNanos() / 1e6);
+    }
+
+    /** Return an idle lease, a new one if none is idle and I am not at
+     *  capacity, or else the first to be returned. */
+    private Lease take() {
+        long start = 0;
+        int looks = 0;
+        while (true) {
+            Lease lease = claimIdle();
+            if (lease == null) {
+                lease = make();
+            }
+            if (lease != null) {
+                if (start != 0) {
+                    _waits.increment();
+                    _waitNanos.add(System.nanoTime() - start);
+                }
+                return lease;
+            }
+            if (start == 0) {
+                start = System.nanoTime();
+            }
+            looks += 1;
+            if (looks < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                int doublings = Math.min(30, looks - SPINS);
+                LockSupport.parkNanos(Math.min(MAX_PARK, 1L << doublings));
+            }
+        }
+    }
+
+    /** Remove and return an idle lease, or return null if there is
+     *  none. */
+    private Lease claimIdle() {
+        int n = _slots.length();
+        int k = home(n);
+        for (int i = 0; i < n; i += 1) {
+            Lease lease = _slots.get(k);
+            if (lease != null && _slots.compareAndSet(k, lease, null)) {
+                _hits.increment();
+                return lease;
+            }
+            k = k + 1 == n ? 0 : k + 1;
+        }
+        return null;
+    }
+
+    /** Return a lease of a new copy of my prototype, or null if I am at
+     *  capacity. */
+    private Lease make() {
+        while (true) {
+            int made = _made.get();
+            if (made == _slots.length()) {
+                return null;
+            }
+            if (_made.compareAndSet(made, made + 1)) {
+                _misses.increment();
+                return new Lease(this, _prototype.copy());
+            }
+        }
+    }
+
+    /** Put LEASE in an empty slot. There is always one, since no more
+     *  leases are made than there are slots. */
+    private void giveBack(Lease lease) {
+        int n = _slots.length();
+        int k = home(n);
+        while (!_slots.compareAndSet(k, null, lease)) {
+            k = k + 1 == n ? 0 : k + 1;
+        }
+    }
+
+    /** Return the slot, among N, at which the current thread starts its
+     *  searches. */
+    private static int home(int n) {
+        long id = Thread.currentThread().getId() * 0x9e3779b97f4a7c15L;
+        return (int) ((id >>> 32) % n);
+    }
+
+    /** The machine of which I lend copies. */
+    private final Machine _prototype;
+
+    /** Idle leases, or nulls. */
+    private final AtomicReferenceArray<Lease> _slots;
+
+    /** Number of leases made. */
+    private final AtomicInteger _made = new AtomicInteger();
+
+    /** Borrowings that reused an idle lease. */
+    private final LongAdder _hits = new LongAdder();
+
+    /** Borrowings that made a new lease. */
+    private final LongAdder _misses = new LongAdder();
+
+    /** Borrowings that waited. */
+    private final LongAdder _waits = new LongAdder();
+
+    /** Total time waited, in nanoseconds. */
+    private final LongAdder _waitNanos = new LongAdder();
+}
@@ -0,0 +1,138 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** The suite of all JUnit tests for the MachinePool class.
+ *  @author Ho Jong Kang
+ */
+public class MachinePoolTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings lines for the naval machine. */
+    private static final String[] SETTINGS = {
+        Naval.SETTINGS,
+        "* B BETA III IV I QRST (AB) (CD)",
+        "* C GAMMA I II V AAAA",
+    };
+
+    /** A message. */
+    private static final String MSG = "FROMHISSHOULDERHIAWATHA";
+
+    /** Return MSG converted by a fresh machine set up by SETTINGS. */
+    private String expected(String settings) {
+        Machine machine = Naval.machine();
+        Main.setUp(machine, settings);
+        return machine.convert(MSG);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReuse() {
+        MachinePool pool = new MachinePool(Naval.machine(), 2);
+        for (int i = 0; i < 9; i += 1) {
+            String settings = SETTINGS[i % SETTINGS.length];
+            try (MachinePool.Lease lease = pool.borrow(settings)) {
+                assertEquals(expected(settings),
+                             lease.machine().convert(MSG));
+            }
+        }
+        assertEquals(1, pool.misses());
+        assertEquals(8, pool.hits());
+        assertEquals(0, pool.waits());
+        MachinePool.Lease first = pool.borrow(SETTINGS[0]);
+        MachinePool.Lease second = pool.borrow(SETTINGS[0]);
+        assertNotSame(first.machine(), second.machine());
+        first.close();
+        first.close();
+        second.close();
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testBadSettings() {
+        MachinePool pool = new MachinePool(Naval.machine(), 1);
+        try {
+            pool.borrow("* B BETA III IV NONE AAAA");
+            fail("bad settings accepted");
+        } catch (EnigmaException excp) {
+            try (MachinePool.Lease lease = pool.borrow(SETTINGS[1])) {
+                assertEquals(expected(SETTINGS[1]),
+                             lease.machine().convert(MSG));
+            }
+        }
+    }
+
+    @Test
+    public void testWait() throws Exception {
+        MachinePool pool = new MachinePool(Naval.machine(), 1);
+        MachinePool.Lease held = pool.borrow(SETTINGS[0]);
+        Thread returner = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException excp) {
+                    return;
+                }
+                held.close();
+            });
+        returner.start();
+        try (MachinePool.Lease lease = pool.borrow(SETTINGS[2])) {
+            assertSame(held.machine(), lease.machine());
+            assertEquals(expected(SETTINGS[2]), lease.machine().convert(MSG));
+        }
+        returner.join();
+        assertEquals(1, pool.waits());
+        assertTrue(pool.waitNanos() > 0);
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        MachinePool pool = new MachinePool(Naval.machine(), 4);
+        String[] expected = new String[SETTINGS.length];
+        for (int i = 0; i < SETTINGS.length; i += 1) {
+            expected[i] = expected(SETTINGS[i]);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 16; t += 1) {
+                int first = t;
+                results.add(executor.submit(() -> {
+                    for (int i = first; i < first + 300; i += 1) {
+                        int k = i % SETTINGS.length;
+                        try (MachinePool.Lease lease =
+                                 pool.borrow(SETTINGS[k])) {
+                            if (!lease.machine().convert(MSG)
+                                .equals(expected[k])) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(pool.size() <= 4);
+        assertEquals(16 * 300, pool.hits() + pool.misses());
+    }
+
+}
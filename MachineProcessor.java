@@ -0,0 +1,175 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+/** A reactive stage that converts a stream of text chunks with a Machine.
+ *  Its input has the format of the input file of Main: a line whose first
+ *  non-blank character is '*' is a settings line, as when Main looks for
+ *  the settings line that ends a message, applied as by Main.setUp when
+ *  its newline arrives; every other line is message text whose letters
+ *  are converted as they arrive and whose blanks are dropped, so only
+ *  settings lines are held whole. A '*' later in a line is message text
+ *  here, where Main would drop the line. Newlines of message lines are
+ *  passed through. Lines may be split anywhere between chunks; rotor
+ *  state carries across chunks exactly as it does across the characters
+ *  of one call to Machine.convert(String).
+ *
+ *  The next chunk is requested only once the converted form of the last
+ *  one has been accepted downstream, so a slow subscriber throttles the
+ *  upstream publisher and at most the downstream buffer capacity of chunks
+ *  are held.
+ *  @author Ho Jong Kang
+ */
+final class MachineProcessor extends SubmissionPublisher<CharBuffer>
+    implements Flow.Processor<CharBuffer, CharBuffer> {
+
+    /** A processor converting with MACHINE that delivers to subscribers
+     *  asynchronously on EXECUTOR, buffering at most MAXBUFFERCAPACITY
+     *  chunks per subscriber. */
+    MachineProcessor(Machine machine, Executor executor,
+                     int maxBufferCapacity) {
+        super(executor, maxBufferCapacity);
+        _machine = machine;
+        _alphabet = machine.alphabet();
+    }
+
+    /** A processor converting with MACHINE on the common pool with the
+     *  default buffer capacity. */
+    MachineProcessor(Machine machine) {
+        this(machine, ForkJoinPool.commonPool(), Flow.defaultBufferSize());
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        _subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(CharBuffer chunk) {
+        CharBuffer out = CharBuffer.allocate(chunk.remaining());
+        try {
+            while (chunk.hasRemaining()) {
+                accept(chunk.get(), out);
+            }
+        } catch (EnigmaException excp) {
+            _subscription.cancel();
+            closeExceptionally(excp);
+            return;
+        }
+        out.flip();
+        if (out.hasRemaining()) {
+            submit(out);
+        }
+        _subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable excp) {
+        closeExceptionally(excp);
+    }
+
+    @Override
+    public void onComplete() {
+        try {
+            if (_state == SETTINGS) {
+                applySettings();
+            }
+        } catch (EnigmaException excp) {
+            closeExceptionally(excp);
+            return;
+        }
+        close();
+    }
+
+    /** Process the input character CH, appending any output to OUT. */
+    private void accept(char ch, CharBuffer out) {
+        if (ch == '\r') {
+            return;
+        }
+        if (ch == '\n') {
+            if (_state == SETTINGS) {
+                applySettings();
+            } else {
+                out.put(ch);
+            }
+            _state = LINE_START;
+            return;
+        }
+        switch (_state) {
+        case LINE_START:
+            if (ch == ' ' || ch == '\t') {
+                return;
+            }
+            if (ch == '*') {
+                _state = SETTINGS;
+                _settings.append(ch);
+                return;
+            }
+            _state = MESSAGE;
+            convert(ch, out);
+            return;
+        case SETTINGS:
+            _settings.append(ch);
+            return;
+        default:
+            convert(ch, out);
+        }
+    }
+
+    /** Append the conversion of message character CH to OUT, unless it
+     *  is a blank. */
+    private void convert(char ch, CharBuffer out) {
+        if (ch == ' ') {
+            return;
+        }
+        if (!_configured) {
+            throw new EnigmaException("No config");
+        }
+        int in = _alphabet.filter().toInt(ch);
+        out.put(_alphabet.toChar(_machine.convert(in)));
+    }
+
+    /** Set up my machine from the settings line collected so far. */
+    private void applySettings() {
+        String line = _settings.toString();
+        _settings.setLength(0);
+        Main.setUp(_machine, line);
+        _configured = true;
+    }
+
+    /** State at the start of a line, before any non-blank. */
+    private static final int LINE_START = 0;
+
+    /** State within a settings line. */
+    private static final int SETTINGS = 1;
+
+    /** State within a message line. */
+    private static final int MESSAGE = 2;
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Accumulates the settings line being received. */
+    private final StringBuilder _settings = new StringBuilder();
+
+    /** One of LINE_START, SETTINGS, MESSAGE. */
+    private int _state = LINE_START;
+
+    /** True once a settings line has been applied. */
+    private boolean _configured;
+
+    /** Subscription to my upstream publisher. */
+    private Flow.Subscription _subscription;
+}
@@ -0,0 +1,229 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** The suite of all JUnit tests for the MachineProcessor class.
+ *  @author Ho Jong Kang
+ */
+public class MachineProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Collects everything delivered to it. */
+    private static class Collector implements Flow.Subscriber<CharBuffer> {
+        @Override
+        public void onSubscribe(Flow.Subscription sub) {
+            sub.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(CharBuffer item) {
+            text.append(item);
+        }
+
+        @Override
+        public void onError(Throwable excp) {
+            error = excp;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+
+        /** Text received. */
+        private StringBuilder text = new StringBuilder();
+        /** Error received, if any. */
+        private Throwable error;
+        /** True once completed. */
+        private boolean complete;
+    }
+
+    /** A subscriber that takes only the chunks requested of it through
+     *  request. */
+    private static class Slow implements Flow.Subscriber<CharBuffer> {
+        @Override
+        public void onSubscribe(Flow.Subscription sub) {
+            subscription = sub;
+        }
+
+        @Override
+        public void onNext(CharBuffer item) {
+            text.append(item);
+            received.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Throwable excp) {
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+
+        /** Request N more chunks. */
+        void request(long n) {
+            subscription.request(n);
+        }
+
+        /** My subscription. */
+        private volatile Flow.Subscription subscription;
+        /** Text received. */
+        private StringBuffer text = new StringBuffer();
+        /** Number of chunks received. */
+        private AtomicInteger received = new AtomicInteger();
+        /** True once completed. */
+        private volatile boolean complete;
+    }
+
+    /** Wait until COUNT stops changing, and return its value. */
+    private int settle(AtomicInteger count) throws InterruptedException {
+        while (true) {
+            int last = count.get();
+            Thread.sleep(100);
+            if (count.get() == last) {
+                return last;
+            }
+        }
+    }
+
+    /** Feed INPUT to a fresh processor in chunks of CHUNK characters,
+     *  delivering synchronously, and return what it produced. */
+    private Collector run(String input, int chunk) {
+        SubmissionPublisher<CharBuffer> source =
+            new SubmissionPublisher<>(Runnable::run, 1);
+        MachineProcessor processor =
+            new MachineProcessor(Naval.machine(), Runnable::run, 1);
+        Collector result = new Collector();
+        source.subscribe(processor);
+        processor.subscribe(result);
+        for (int i = 0; i < input.length(); i += chunk) {
+            source.submit(CharBuffer.wrap(input, i,
+                          Math.min(input.length(), i + chunk)));
+        }
+        source.close();
+        return result;
+    }
+
+    /** Input in the format of Main's input files. */
+    private static final String INPUT =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM his shoulder Hiawatha\n"
+        + "Took the camera of rosewood\n";
+
+    /** Expected conversion of INPUT. */
+    private static final String OUTPUT =
+        "QVPQSOKOILPUBKJZPISFXDW\n"
+        + "BHCNSCXNUOAATZXSRCFYDGU\n";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testChunkBoundaries() {
+        for (int chunk = 1; chunk <= INPUT.length(); chunk += 1) {
+            Collector result = run(INPUT, chunk);
+            assertNull(result.error);
+            assertTrue(result.complete);
+            assertEquals("chunk " + chunk, OUTPUT, result.text.toString());
+        }
+    }
+
+    @Test
+    public void testSettingsReset() {
+        Collector result = run(INPUT + INPUT, 7);
+        assertEquals(OUTPUT + OUTPUT, result.text.toString());
+    }
+
+    @Test
+    public void testSettingsLinesAsMain() {
+        String input = "  " + INPUT + "\n\t" + INPUT + INPUT;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        Machine machine = Naval.machine();
+        new Main(machine.alphabet(), new LineReader(input), out)
+            .process(machine);
+        out.flush();
+        String expected =
+            bytes.toString(Charset.defaultCharset()).replace(" ", "");
+        for (int chunk = 1; chunk <= 9; chunk += 1) {
+            Collector result = run(input, chunk);
+            assertNull(result.error);
+            assertEquals(expected, result.text.toString());
+        }
+        Collector result = run(INPUT + "HELLO *\n", 4);
+        assertTrue(result.error instanceof EnigmaException);
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        SubmissionPublisher<CharBuffer> source =
+            new SubmissionPublisher<>(executor, 1);
+        MachineProcessor processor =
+            new MachineProcessor(Naval.machine(), executor, 2);
+        Slow slow = new Slow();
+        source.subscribe(processor);
+        processor.subscribe(slow);
+        AtomicInteger offered = new AtomicInteger();
+        int lines = 40;
+        Thread producer = new Thread(() -> {
+            source.submit(CharBuffer.wrap(Naval.SETTINGS + "\n"));
+            for (int i = 0; i < lines; i += 1) {
+                source.submit(CharBuffer.wrap("HELLOWORLD\n"));
+                offered.incrementAndGet();
+            }
+            source.close();
+        });
+        producer.start();
+        try {
+            /* One chunk in the source's buffer, one being converted and
+             * two in the processor's buffer. */
+            int bound = 1 + 1 + 2;
+            assertTrue(settle(offered) <= bound);
+            assertEquals(0, slow.received.get());
+            slow.request(3);
+            assertEquals(3, settle(slow.received));
+            assertTrue(settle(offered) <= bound + 3);
+            slow.request(Long.MAX_VALUE);
+            producer.join();
+            while (!slow.complete) {
+                Thread.sleep(10);
+            }
+            assertEquals(lines, slow.received.get());
+            StringBuilder expected = new StringBuilder();
+            Machine machine = Naval.machine();
+            Main.setUp(machine, Naval.SETTINGS);
+            for (int i = 0; i < lines; i += 1) {
+                expected.append(machine.convert("HELLOWORLD")).append('\n');
+            }
+            assertEquals(expected.toString(), slow.text.toString());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNoSettings() {
+        Collector result = run("HELLO\n", 3);
+        assertTrue(result.error instanceof EnigmaException);
+    }
+
+}
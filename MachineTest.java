@@ -4,6 +4,8 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.Scanner;
 
 public class MachineTest {
     @Test
@@ -100,6 +102,86 @@ public class MachineTest {
 
     }
 
+    @Test
+    public void testMessageKey() {
+        Machine mach = Naval.machine();
+        Main.setUp(mach, Naval.SETTINGS);
+        int[] daily = mach.positions();
+        String indicator = mach.convert("QRST");
+        char[] msg = (indicator + "HELLOWORLD").toCharArray();
+
+        Machine keyed = Naval.machine();
+        Main.setUp(keyed, Naval.SETTINGS.replace("AXLE", "QRST"));
+        String expected = keyed.convert("HELLOWORLD");
+
+        mach.setMessageKey(daily, msg);
+        assertEquals("QRST", new String(msg, 0, 4));
+        assertEquals(expected, mach.convert("HELLOWORLD"));
+        mach.setMessageKey(daily, (indicator + "X").toCharArray());
+        assertEquals(expected.substring(0, 1), mach.convert("H"));
+        try {
+            mach.setMessageKey(daily, "QRS".toCharArray());
+            fail("short message accepted");
+        } catch (EnigmaException excp) {
+            return;
+        }
+    }
+
+    @Test
+    public void testSnapshot() {
+        for (int kind = 0; kind < 3; kind += 1) {
+            Machine mach = Naval.machine();
+            mach.setEngines(kind == 1);
+            mach.setKernels(kind == 2);
+            Main.setUp(mach, Naval.SETTINGS);
+            mach.convert("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+            Machine.Snapshot state = mach.snapshot();
+            assertEquals(5, state.size());
+            assertEquals("Beta", state.rotor(1));
+            assertEquals(mach.positions()[4], state.position(4));
+            String expected = mach.convert("FROMHISSHOULDERHIAWATHA");
+            mach.restore(state);
+            assertEquals(expected, mach.convert("FROMHISSHOULDERHIAWATHA"));
+            Main.setUp(mach, "* C GAMMA I II V AAAA (AZ)");
+            mach.convert("HELLO");
+            mach.restore(state);
+            assertEquals(expected, mach.convert("FROMHISSHOULDERHIAWATHA"));
+            Main.setUp(mach, "* C GAMMA I II V AAAA (AZ)");
+            mach.setKernels(kind != 2);
+            mach.restore(state);
+            assertEquals(expected, mach.convert("FROMHISSHOULDERHIAWATHA"));
+        }
+    }
+
+    @Test
+    public void testGeneratedShapes() {
+        ConfigGenerator gen = new ConfigGenerator(new Random(3));
+        String symbols = ConfigGenerator.symbols(60000);
+        assertEquals(60000, symbols.chars().distinct().count());
+        assertEquals(-1, symbols.indexOf('*'));
+        int[][] shapes = { { 60000, 4 }, { 300, 64 } };
+        for (int[] shape : shapes) {
+            ConfigGenerator.Spec spec =
+                gen.config(symbols.substring(0, shape[0]), true, shape[1],
+                           shape[1] / 2, 0, 5);
+            Machine mach = Main.configure(new Scanner(spec.text()));
+            assertEquals(shape[0], mach.alphabet().size());
+            String settings = gen.settings(spec, 10);
+            String msg = gen.message(spec, 500);
+            Main.setUp(mach, settings);
+            String cipher = mach.convert(msg);
+            Main.setUp(mach, settings);
+            assertEquals(msg, mach.convert(cipher));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSnapshotOfAnother() {
+        Machine mach = Naval.machine();
+        Main.setUp(mach, Naval.SETTINGS);
+        mach.copy().restore(mach.snapshot());
+    }
+
     private String getSetting(Alphabet alph, Rotor[] machineRotors) {
         String currSetting = "";
         for (Rotor r : machineRotors) {
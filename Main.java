@@ -3,13 +3,23 @@ package enigma;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.List;
-import java.util.ArrayList;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Scanner;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 import static enigma.EnigmaException.error;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Enigma simulator.
@@ -19,9 +29,98 @@ import static enigma.EnigmaException.error;
 public final class Main {
 
     /**
-     *  ArrayList of all rotors.
+     * System property naming a file through which the rotor tables of
+     * the configuration are shared with other processes (see
+     * RotorTableFile). When it is unset, tables are kept on the heap.
+     * Machines whose tables are shared convert without engines or
+     * kernels.
      */
-    private List<Rotor> _allRotors = new ArrayList<>();
+    static final String TABLES_PROPERTY = "enigma.tables";
+
+    /**
+     * System property that, when "true", has every rotor of a
+     * configuration checked as it is loaded (see RotorValidator), and
+     * the configuration rejected with a report of any problems found.
+     * Otherwise, rotors are only built as they are used.
+     */
+    static final String VALIDATE_PROPERTY = "enigma.validate";
+
+    /**
+     * System property that, when "true", makes machines convert through
+     * code generated for their rotors (see CipherKernel).
+     */
+    static final String KERNELS_PROPERTY = "enigma.kernels";
+
+    /**
+     * System property that, when "true", selects the message-key
+     * procedure: each settings line gives the daily setting, and each
+     * non-blank message line after it is a message of its own, beginning
+     * with its message key enciphered under the daily setting. Only the
+     * rest of each message is printed.
+     */
+    static final String INDICATOR_PROPERTY = "enigma.indicator";
+
+    /**
+     * System property naming a file to receive a report of statistics of
+     * the input and output of a run (see Statistics), or "-" for the
+     * standard error. The statistics are gathered as the messages are
+     * converted. A run resumed from a checkpoint reports only on the part
+     * it converted.
+     */
+    static final String STATISTICS_PROPERTY = "enigma.stats";
+
+    /**
+     * System property that, when "true", has the output written as a
+     * packed file (see PackedFile) rather than as text. Such a file is
+     * turned back into text by running Main with --unpack.
+     */
+    static final String PACKED_PROPERTY = "enigma.packed";
+
+    /**
+     * System property that, when "true", runs reading, converting and
+     * writing the messages as three stages on their own threads (see
+     * Pipeline), so that input and output overlap conversion. It is
+     * ignored when checkpointing.
+     */
+    static final String PIPELINE_PROPERTY = "enigma.pipeline";
+
+    /**
+     * System property listing characters that are dropped from message
+     * lines, unless they are in the alphabet, in place of just the blank
+     * (see InputFilter). Any other character outside the alphabet whose
+     * upper- or lower-case form is not in it either is an error.
+     */
+    static final String SKIP_PROPERTY = "enigma.skip";
+
+    /**
+     * System property naming a file to which a run whose input and output
+     * are files writes checkpoints (see Checkpoint), so that it can be
+     * resumed if it fails. The file is removed when the run succeeds.
+     */
+    static final String CHECKPOINT_PROPERTY = "enigma.checkpoint";
+
+    /**
+     * System property that, when "true", resumes a run from the
+     * checkpoint file named by CHECKPOINT_PROPERTY, if it exists.
+     */
+    static final String RESUME_PROPERTY = "enigma.resume";
+
+    /**
+     * System property giving the number of bytes of input between
+     * checkpoints.
+     */
+    static final String CHECKPOINT_INTERVAL_PROPERTY =
+        "enigma.checkpoint.interval";
+
+    /**
+     * Default number of bytes of input between checkpoints.
+     */
+    static final long CHECKPOINT_INTERVAL = 1 << 24;
+
+    /**
+     *  Library of all rotors.
+     */
+    private RotorLibrary _library;
     /**
      * Alphabet used in this machine.
      */
@@ -29,15 +128,78 @@ public final class Main {
     /**
      * Source of input messages.
      */
-    private Scanner _input;
+    private LineReader _input;
     /**
      * Source of machine configuration.
      */
     private Scanner _config;
+    /**
+     * Source of machine configuration, mapped and loaded lazily. When it
+     * is set, _config is not used.
+     */
+    private ConfigFile _configFile;
     /**
      * File for encoded/decoded messages.
      */
     private PrintStream _output;
+    /**
+     * Formats messages onto _output.
+     */
+    private GroupWriter _writer;
+    /**
+     * Packs messages onto _output in place of _writer, or null.
+     */
+    private PackedFile.Writer _packed;
+    /**
+     * Takes the lines read while a run is pipelined, or null.
+     */
+    private Pipeline _pipeline;
+    /**
+     * File receiving checkpoints, or null if none are taken.
+     */
+    private Path _checkpointFile;
+    /**
+     * Writes checkpoints to _checkpointFile while messages are processed.
+     */
+    private Checkpoint.Writer _checkpoints;
+    /**
+     * The checkpoint from which to resume, until resumed.
+     */
+    private Checkpoint _resumeFrom;
+    /**
+     * True iff the input is in UTF-8; otherwise, when checkpointing, it is
+     * in an encoding of one byte per character.
+     */
+    private boolean _utf8Input;
+    /**
+     * Bytes of input consumed, when checkpointing.
+     */
+    private long _inputBytes;
+    /**
+     * Bytes of output before the first written by _writer.
+     */
+    private long _outputBase;
+    /**
+     * Value of _inputBytes at which the next checkpoint is due.
+     */
+    private long _nextCheckpoint;
+    /**
+     * The settings line last applied.
+     */
+    private String _settingsLine;
+    /**
+     * True iff each message line begins with its enciphered message key.
+     */
+    private boolean _indicators = Boolean.getBoolean(INDICATOR_PROPERTY);
+    /**
+     * Normalizes message lines for the machine being run.
+     */
+    private InputFilter _filter;
+    /**
+     * Rotor settings given by the settings line last applied, when
+     * _indicators.
+     */
+    private int[] _daily;
 
     /**
      * Check ARGS and open the necessary files (see comment on main).
@@ -47,19 +209,114 @@ public final class Main {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configFile = mapConfig(args[0]);
+        if (_configFile == null) {
+            _config = getConfig(args[0]);
+        }
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
+        String checkpoint = System.getProperty(CHECKPOINT_PROPERTY);
+        if (checkpoint != null) {
+            openCheckpointed(args, Paths.get(checkpoint));
         } else {
-            _input = new Scanner(System.in);
+            if (args.length > 1) {
+                _input = getInput(args[1]);
+            } else {
+                _input = LineReader.of(System.in);
+            }
+
+            if (args.length > 2) {
+                _output = getOutput(args[2]);
+            } else {
+                _output = System.out;
+            }
         }
+        _writer = new GroupWriter(_output);
+        _writer.setLineFlush(_output == System.out);
+    }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
-        } else {
-            _output = System.out;
+    /**
+     * Open the input and output files named by ARGS[1] and ARGS[2] for a
+     * run checkpointed to FILE. If RESUME_PROPERTY is set and FILE holds
+     * a checkpoint, the input is opened where the checkpoint was taken and
+     * the output is cut back to where it then ended; otherwise both start
+     * at the beginning.
+     */
+    private void openCheckpointed(String[] args, Path file) {
+        if (args.length != 3) {
+            throw error("checkpoints need input and output files");
+        }
+        Charset charset = Charset.defaultCharset();
+        _utf8Input = charset.equals(UTF_8);
+        if (!_utf8Input && charset.newEncoder().maxBytesPerChar() != 1) {
+            throw error("checkpoints need UTF-8 or a single-byte encoding");
+        }
+        _checkpointFile = file;
+        if (Boolean.getBoolean(RESUME_PROPERTY)) {
+            _resumeFrom = Checkpoint.read(file);
+        }
+        long inputOffset = 0, outputOffset = 0;
+        if (_resumeFrom != null) {
+            inputOffset = _resumeFrom.inputOffset();
+            outputOffset = _resumeFrom.outputOffset();
+        }
+        FileChannel input = openChannel(args[1], inputOffset,
+                                        StandardOpenOption.READ);
+        _input = new LineReader(Channels.newReader(input, charset));
+        FileChannel output = openChannel(args[2], outputOffset,
+                                         StandardOpenOption.WRITE,
+                                         StandardOpenOption.CREATE);
+        try {
+            output.truncate(outputOffset);
+        } catch (IOException excp) {
+            throw error("could not open %s", args[2]);
         }
+        _output = new PrintStream(Channels.newOutputStream(output));
+        _inputBytes = inputOffset;
+        _outputBase = outputOffset;
+    }
+
+    /**
+     * Return a channel open with OPTIONS on the file named NAME, positioned
+     * at OFFSET, which must not be past its end.
+     */
+    private static FileChannel openChannel(String name, long offset,
+                                           OpenOption... options) {
+        try {
+            FileChannel channel = FileChannel.open(Paths.get(name), options);
+            if (channel.size() < offset) {
+                channel.close();
+                throw error("checkpoint does not match %s", name);
+            }
+            return channel.position(offset);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * A Main that converts the messages in INPUT to OUTPUT using machines
+     * over ALPHABET supplied by its caller, as in batch mode.
+     */
+    Main(Alphabet alphabet, LineReader input, PrintStream output) {
+        this(alphabet, input, new GroupWriter(output));
+        _output = output;
+    }
+
+    /**
+     * A Main that converts the messages in INPUT to WRITER using machines
+     * over ALPHABET supplied by its caller, so that one writer may serve
+     * many inputs.
+     */
+    Main(Alphabet alphabet, LineReader input, GroupWriter writer) {
+        _alphabet = alphabet;
+        _input = input;
+        _writer = writer;
+    }
+
+    /**
+     * A Main with no files open, used only to read configurations.
+     */
+    private Main() {
     }
 
     /**
@@ -72,9 +329,30 @@ public final class Main {
      * file for processed messages.  Otherwise, output goes to the
      * standard output. Exits normally if there are no errors in the input;
      * otherwise with code 1.
+     * If ARGS[0] is --batch, the remaining ARGS are handled by Batch,
+     * if it is --bench, by PipelineBench, if it is --unpack, by
+     * PackedFile.unpack, and if it is --bombe, by Bombe.
      */
     public static void main(String... args) {
         try {
+            if (args.length > 0 && args[0].equals("--batch")) {
+                if (Batch.run(Arrays.copyOfRange(args, 1, args.length))) {
+                    return;
+                }
+                System.exit(1);
+            }
+            if (args.length > 0 && args[0].equals("--bench")) {
+                PipelineBench.run(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--unpack")) {
+                PackedFile.unpack(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--bombe")) {
+                Bombe.run(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
             new Main(args).process();
             return;
         } catch (EnigmaException excp) {
@@ -95,10 +373,17 @@ public final class Main {
         return new String(temp);
     }
 
+    /**
+     * Return a reader of the lines of the file named NAME.
+     */
+    private LineReader getInput(String name) {
+        return LineReader.open(new File(name));
+    }
+
     /**
      * Return a Scanner reading from the file named NAME.
      */
-    private Scanner getInput(String name) {
+    private Scanner getConfig(String name) {
         try {
             return new Scanner(new File(name));
         } catch (IOException excp) {
@@ -106,6 +391,35 @@ public final class Main {
         }
     }
 
+    /**
+     * Return the configuration file named NAME, mapped to be loaded
+     * lazily, or null if it must be read by a Scanner instead: when the
+     * default charset is not UTF-8 and either is not US-ASCII or
+     * ISO-8859-1 or the file is not all ASCII, or when NAME is not a
+     * regular file that can be mapped.
+     */
+    private static ConfigFile mapConfig(String name) {
+        Charset charset = Charset.defaultCharset();
+        boolean utf8 = charset.equals(UTF_8);
+        if (!utf8 && !charset.equals(US_ASCII)
+            && !charset.equals(ISO_8859_1)) {
+            return null;
+        }
+        try {
+            Path path = Paths.get(name);
+            if (!Files.isRegularFile(path)) {
+                return null;
+            }
+            ConfigFile file = ConfigFile.map(path);
+            if (file == null || utf8 || file.isAscii()) {
+                return file;
+            }
+            return null;
+        } catch (IOException | InvalidPathException excp) {
+            return null;
+        }
+    }
+
     /**
      * Return a PrintStream writing to the file named NAME.
      */
@@ -122,78 +436,380 @@ public final class Main {
      * file _config and apply it to the messages in _input, sending the
      * results to _output.
      */
-    private void process() {
+    void process() {
         Machine enigma = readConfig();
+        String report = System.getProperty(STATISTICS_PROPERTY);
+        if (report == null) {
+            process(enigma);
+            return;
+        }
+        Statistics stats = new Statistics(enigma.alphabet());
+        enigma.setStatistics(stats);
+        process(enigma);
+        report(stats, report);
+    }
+
+    /**
+     * Print a report of STATS to the file named NAME, or if NAME is "-",
+     * to the standard error.
+     */
+    static void report(Statistics stats, String name) {
+        if (name.equals("-")) {
+            stats.report(System.err);
+            return;
+        }
+        try (PrintStream out = new PrintStream(new File(name))) {
+            stats.report(out);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
 
+    /**
+     * Apply ENIGMA to the messages in _input, sending the results to
+     * _output, packed if PACKED_PROPERTY is set.
+     */
+    void process(Machine enigma) {
+        String skip = System.getProperty(SKIP_PROPERTY);
+        _filter = skip == null ? enigma.alphabet().filter()
+            : new InputFilter(enigma.alphabet(), skip);
+        if (_output != null && Boolean.getBoolean(PACKED_PROPERTY)) {
+            if (_checkpointFile != null) {
+                throw error("checkpoints need text output");
+            }
+            _packed = new PackedFile.Writer(_output, enigma.alphabet());
+        }
+        if (_checkpointFile != null) {
+            _checkpoints = new Checkpoint.Writer(_checkpointFile);
+            _nextCheckpoint = _inputBytes
+                + Long.getLong(CHECKPOINT_INTERVAL_PROPERTY,
+                               CHECKPOINT_INTERVAL);
+        }
+        boolean done = false;
+        try {
+            if (_checkpoints == null
+                && Boolean.getBoolean(PIPELINE_PROPERTY)) {
+                convertPipelined(enigma);
+            } else {
+                convertMessages(enigma);
+            }
+            done = true;
+        } finally {
+            _writer.flush();
+            if (_packed != null) {
+                _packed.finish();
+                _packed = null;
+            }
+            if (_checkpoints != null) {
+                finishCheckpoints(done);
+            }
+        }
+    }
+
+    /**
+     * Stop writing checkpoints. If DONE, the run is complete, and the
+     * checkpoint file is removed.
+     */
+    private void finishCheckpoints(boolean done) {
+        boolean written = _checkpoints.close();
+        _checkpoints = null;
+        if (!done) {
+            return;
+        }
+        if (!written) {
+            throw error("could not write checkpoint %s", _checkpointFile);
+        }
+        try {
+            Files.deleteIfExists(_checkpointFile);
+        } catch (IOException excp) {
+            throw error("could not remove checkpoint %s", _checkpointFile);
+        }
+    }
+
+    /**
+     * Apply ENIGMA to the messages in _input, sending the results to
+     * _writer, with the lines read on this thread and converted and
+     * written on others.
+     */
+    private void convertPipelined(Machine enigma) {
+        Pipeline pipeline = new Pipeline(this, enigma);
+        Throwable failure = null;
+        _pipeline = pipeline;
+        try {
+            convertMessages(enigma);
+        } catch (RuntimeException | Error excp) {
+            failure = excp;
+        }
+        _pipeline = null;
+        pipeline.finish(failure);
+    }
+
+    /**
+     * Apply ENIGMA to the messages in _input, sending the results to
+     * _writer.
+     */
+    private void convertMessages(Machine enigma) {
+        if (_resumeFrom != null) {
+            resume(enigma);
+        }
         while (_input.hasNext()) {
-            String next = _input.nextLine().toUpperCase();
+            String next = nextLine();
             if (next.equals("")) {
-                _output.println();
+                if (_pipeline != null) {
+                    _pipeline.blankLine();
+                } else {
+                    printBlankLine();
+                }
                 continue;
             }
             if (!next.contains("*")) {
                 throw new EnigmaException("No config");
             }
-            setUp(enigma, next);
+            if (_pipeline != null) {
+                _pipeline.settingsLine(next);
+            } else {
+                applySettings(enigma, next);
+                beginMessage();
+            }
 
             if (_input.hasNextLine()) {
-                next = (_input.nextLine()).toUpperCase();
-            } else {
-                break;
+                convertSection(enigma, nextLine());
             }
-            while (true) {
-                if (next.contains("*")) {
-                    break;
-                }
-                String result = enigma.convert(next.replaceAll(" ", ""));
-                printMessageLine(result);
-                if (_input.hasNext("\\s*[*].*")) {
-                    break;
-                }
-                if (_input.hasNextLine()) {
-                    next = (_input.nextLine()).toUpperCase();
-                } else {
-                    break;
-                }
+        }
+
+    }
+
+    /**
+     * Set ENIGMA up by the settings line LINE, which begins a new message
+     * or, under the message-key procedure, gives the daily setting.
+     */
+    void applySettings(Machine enigma, String line) {
+        _settingsLine = line;
+        setUp(enigma, line);
+        if (_indicators) {
+            _daily = enigma.positions();
+        }
+        Statistics stats = enigma.statistics();
+        if (stats != null) {
+            stats.endMessage();
+        }
+    }
 
+    /**
+     * Apply ENIGMA to the message line NEXT and the message lines after
+     * it, up to the next settings line.
+     */
+    private void convertSection(Machine enigma, String next) {
+        while (!next.contains("*")) {
+            if (_pipeline != null) {
+                _pipeline.messageLine(next);
+            } else {
+                char[] msg = next.toCharArray();
+                printMessageLine(msg, convertLine(enigma, msg, msg.length));
+            }
+            if (_checkpoints != null && _inputBytes >= _nextCheckpoint) {
+                checkpoint(enigma);
+            }
+            if (atSectionEnd()) {
+                return;
             }
+            next = nextLine();
         }
+    }
 
+    /**
+     * Convert the first LEN characters of MSG, a message line as read,
+     * with ENIGMA in place, returning the number of converted characters
+     * now at the start of MSG. The line is normalized by _filter as it is
+     * converted. If it begins with an enciphered message key, the key is
+     * used and dropped.
+     */
+    int convertLine(Machine enigma, char[] msg, int len) {
+        if (!_indicators) {
+            return enigma.convert(msg, len, _filter);
+        }
+        len = _filter.apply(msg, len);
+        if (len > 0) {
+            enigma.setMessageKey(_daily, msg, len);
+            int key = enigma.numRotors() - 1;
+            len -= key;
+            System.arraycopy(msg, key, msg, 0, len);
+        }
+        enigma.convert(msg, len);
+        return len;
     }
 
     /**
-     * Return an Enigma machine configured from the contents of configuration
-     * file _config.
+     * Return true iff no message lines remain before the next settings
+     * line or the end of _input.
      */
-    private Machine readConfig() {
-        try {
-            String range = _config.next();
-            if (range.length() < 2) {
-                throw new EnigmaException("Bad config");
+    private boolean atSectionEnd() {
+        return _input.hasNext('*') || !_input.hasNextLine();
+    }
+
+    /**
+     * Restore ENIGMA to its state at _resumeFrom and convert the rest of
+     * the message lines of the section in which it was taken.
+     */
+    private void resume(Machine enigma) {
+        applySettings(enigma, _resumeFrom.settings());
+        enigma.setPositions(_resumeFrom.positions());
+        _resumeFrom = null;
+        if (!atSectionEnd()) {
+            convertSection(enigma, nextLine());
+        }
+    }
+
+    /**
+     * Return the next line of _input, counting its bytes if
+     * checkpointing.
+     */
+    private String nextLine() {
+        String line = _input.nextLine();
+        if (_checkpoints != null) {
+            String separator = _input.separator();
+            _inputBytes += encodedLength(line);
+            if (separator != null) {
+                _inputBytes += encodedLength(separator);
             }
-            if (range.charAt(1) == '-') {
-                _alphabet = new CharacterRange(range.charAt(0),
-                        range.charAt(2));
+        }
+        return line;
+    }
+
+    /**
+     * Return the number of bytes of input that S was decoded from. Input
+     * that could not be decoded shows as replacement characters, whose
+     * length is unknown in UTF-8, so checkpointing stops at the first.
+     */
+    private long encodedLength(String s) {
+        if (!_utf8Input) {
+            return s.length();
+        }
+        long bytes = 0;
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                bytes += 2;
+            } else if (c != '\ufffd') {
+                bytes += 3;
             } else {
-                String sortedrange = sortString(range);
-                _alphabet = new CharacterRangeExtra(range, sortedrange);
+                System.err.println("Warning: undecodable input; "
+                                   + "checkpoints stopped");
+                _nextCheckpoint = Long.MAX_VALUE;
+                bytes += 3;
             }
+        }
+        return bytes;
+    }
 
+    /**
+     * Submit a checkpoint of the run with ENIGMA, after flushing the output
+     * so far.
+     */
+    private void checkpoint(Machine enigma) {
+        _writer.flush();
+        _checkpoints.submit(new Checkpoint(_inputBytes,
+                                           _outputBase
+                                           + _writer.bytesWritten(),
+                                           _settingsLine,
+                                           enigma.positions()));
+        _nextCheckpoint = _inputBytes
+            + Long.getLong(CHECKPOINT_INTERVAL_PROPERTY, CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Return an Enigma machine configured from the contents of the
+     * configuration file named NAME.
+     */
+    static Machine configure(String name) {
+        ConfigFile file = mapConfig(name);
+        if (file != null) {
+            return file.machine();
+        }
+        return configure(new Main().getConfig(name));
+    }
+
+    /**
+     * Return an Enigma machine configured from the configuration read
+     * from CONFIG.
+     */
+    static Machine configure(Scanner config) {
+        Main main = new Main();
+        main._config = config;
+        return main.readConfig();
+    }
+
+    /**
+     * Return an Enigma machine configured from the contents of configuration
+     * file _configFile, or if that is not set, _config.
+     */
+    private Machine readConfig() {
+        if (_configFile != null) {
+            return _configFile.machine();
+        }
+        try {
+            _alphabet = alphabet(_config.next());
             int numRotors = _config.nextInt();
             int pawls = _config.nextInt();
+            _library = new RotorLibrary(_alphabet,
+                                        RotorLibrary.DEFAULT_CAPACITY);
             while (_config.hasNext()) {
-                _allRotors.add(readRotor());
+                readRotor();
             }
-            return new Machine(_alphabet, numRotors, pawls, _allRotors);
+            return machine(_alphabet, numRotors, pawls, _library);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
     }
 
     /**
-     * Return a rotor, reading its description from _config.
+     * Return the alphabet described by RANGE, the first item of a
+     * configuration file.
+     */
+    static Alphabet alphabet(String range) {
+        if (range.length() < 2) {
+            throw new EnigmaException("Bad config");
+        }
+        if (range.charAt(1) == '-') {
+            return new CharacterRange(range.charAt(0), range.charAt(2));
+        } else {
+            String sortedrange = sortString(range);
+            return new CharacterRangeExtra(range, sortedrange);
+        }
+    }
+
+    /**
+     * Return a machine with alphabet ALPHABET, NUMROTORS slots and PAWLS
+     * pawls whose rotors are those defined in LIBRARY, shared through the
+     * table file named by TABLES_PROPERTY if it is set, and checked first
+     * if VALIDATE_PROPERTY is set. The machine converts through generated
+     * code if KERNELS_PROPERTY is set.
+     */
+    static Machine machine(Alphabet alphabet, int numRotors, int pawls,
+                           RotorLibrary library) {
+        if (Boolean.getBoolean(VALIDATE_PROPERTY)) {
+            RotorValidator.Report report = RotorValidator.validate(library);
+            if (!report.ok()) {
+                throw error("bad rotors in configuration: %s", report);
+            }
+        }
+        String tables = System.getProperty(TABLES_PROPERTY);
+        if (tables != null) {
+            library = RotorTableFile.share(Paths.get(tables), alphabet,
+                                           library);
+        }
+        Machine machine = new Machine(alphabet, numRotors, pawls, library);
+        machine.setKernels(Boolean.getBoolean(KERNELS_PROPERTY));
+        return machine;
+    }
+
+    /**
+     * Read a rotor description from _config and define the rotor in
+     * _library. Its permutation is built when it is first used.
      */
-    private Rotor readRotor() {
+    private void readRotor() {
         try {
             String name = _config.next();
             String perm = "";
@@ -204,14 +820,7 @@ public final class Main {
                 next = _config.next().replaceAll("[)][(]", ") (");
                 perm = perm + next + " ";
             }
-            if (first == 'R') {
-                return new Reflector(name, new Permutation(perm, _alphabet));
-            } else if (first == 'N') {
-                return new FixedRotor(name, new Permutation(perm, _alphabet));
-            } else {
-                return new MovingRotor(name,
-                        new Permutation(perm, _alphabet), notches);
-            }
+            _library.define(name, first, notches, perm);
         } catch (NoSuchElementException excp) {
             throw error("bad rotor description");
         }
@@ -221,34 +830,39 @@ public final class Main {
      * Set M according to the specification given on SETTINGS,
      * which must have the format specified in the assignment.
      */
-    private void setUp(Machine M, String settings) {
-        String[] rotors = new String[M.numRotors()];
-        Scanner scan = new Scanner(settings);
-        String temp = "";
-        if (scan.hasNext()) {
-            scan.next();
-            for (int i = 0; i < rotors.length; i += 1) {
-                rotors[i] = scan.next();
-            }
-            M.insertRotors(rotors);
-            M.setRotors(scan.next());
-            while (scan.hasNext()) {
-                temp = temp + scan.next() + " ";
-            }
-            M.setPlugboard(new Permutation(temp, _alphabet));
+    static void setUp(Machine M, String settings) {
+        SettingsParser.apply(M, settings);
+    }
+
+    /**
+     * Start a new message in the output, where it is packed.
+     */
+    void beginMessage() {
+        if (_packed != null) {
+            _packed.beginMessage();
+        }
+    }
+
+    /**
+     * Print a blank line between messages.
+     */
+    void printBlankLine() {
+        if (_packed != null) {
+            _packed.newLine();
+        } else {
+            _writer.newLine();
         }
     }
 
     /**
-     * Print MSG in groups of five (except that the last group may
-     * have fewer letters).
+     * Print the first LEN characters of MSG in groups of five (except
+     * that the last group may have fewer letters).
      */
-    private void printMessageLine(String msg) {
-        int remainder = msg.length() % 5;
-        for (int i = 0; i < msg.length() - remainder; i += 5) {
-            _output.print(msg.substring(i, i + 5) + " ");
+    void printMessageLine(char[] msg, int len) {
+        if (_packed != null) {
+            _packed.printLine(msg, len);
+            return;
         }
-        _output.println(msg.substring((msg.length() - remainder),
-                msg.length()));
+        _writer.printLine(msg, len);
     }
 }
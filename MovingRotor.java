@@ -17,6 +17,11 @@ class MovingRotor extends Rotor {
         this._notches = notches;
     }
 
+    /** Return my notches, as given. */
+    String notches() {
+        return _notches;
+    }
+
     @Override
     boolean rotates() {
         return true;
@@ -27,14 +32,98 @@ class MovingRotor extends Rotor {
         set(permutation().wrap(setting() + 1));
     }
 
+    @Override
+    void advance(long k) {
+        set(setting() + (int) (k % size()));
+    }
+
     @Override
     boolean atNotch() {
-        return _notches.indexOf(permutation()
-                .alphabet().toChar(setting())) != -1;
+        if (_toNotch == null) {
+            compileNotches();
+        }
+        if (_irregular) {
+            return _notches.indexOf(permutation()
+                    .alphabet().toChar(setting())) != -1;
+        }
+        return _toNotch[setting()] == 0;
+    }
+
+    @Override
+    int toNotch() {
+        if (_toNotch == null) {
+            compileNotches();
+        }
+        return _toNotch[setting()];
+    }
+
+    @Override
+    long notchesWithin(long k) {
+        if (_toNotch == null) {
+            compileNotches();
+        }
+        int n = size();
+        long turns = k / n;
+        int from = setting(), to = from + (int) (k % n);
+        long within = turns * _notchCount[n];
+        if (to <= n) {
+            return within + _notchCount[to] - _notchCount[from];
+        }
+        return within + _notchCount[n] - _notchCount[from]
+            + _notchCount[to - n];
+    }
+
+    /** Fill in _toNotch and _notchCount from _notches. Settings that my
+     *  alphabet cannot convert to characters are taken to have no notch,
+     *  and make my alphabet irregular. */
+    private void compileNotches() {
+        int n = size();
+        Alphabet alphabet = alphabet();
+        boolean[] notch = new boolean[n];
+        for (int p = 0; p < n; p += 1) {
+            try {
+                notch[p] = _notches.indexOf(alphabet.toChar(p)) != -1;
+            } catch (RuntimeException excp) {
+                _irregular = true;
+            }
+        }
+        int[] count = new int[n + 1];
+        for (int p = 0; p < n; p += 1) {
+            count[p + 1] = count[p] + (notch[p] ? 1 : 0);
+        }
+        int[] toNotch = new int[n];
+        int next = -1;
+        for (int p = 2 * n - 1; p >= 0; p -= 1) {
+            if (notch[p % n]) {
+                next = p;
+            }
+            if (p < n) {
+                toNotch[p] = next < 0 ? -1 : next - p;
+            }
+        }
+        _notchCount = count;
+        _toNotch = toNotch;
+    }
+
+    @Override
+    Rotor copy(Permutation perm) {
+        return new MovingRotor(name(), perm, _notches);
     }
 
     /** A string that keeps track of notches.
      */
     private String _notches;
 
+    /** For each setting, the number of positions to the next notch, or
+     *  -1 if there are none. Built when first needed. */
+    private int[] _toNotch;
+
+    /** For each setting P, the number of notches at settings below P,
+     *  and at index size(), the number of notches. */
+    private int[] _notchCount;
+
+    /** True iff some setting has no character in my alphabet, in which
+     *  case atNotch reads _notches directly, failing as it always has. */
+    private boolean _irregular;
+
 }
@@ -0,0 +1,33 @@
+package enigma;
+
+import java.util.Random;
+
+/** The standard naval machine and random messages for it, as the JUnit
+ *  tests use them.  The definitions are Bench's, which the jar needs for
+ *  its training run; this class only gives the tests one place to reach
+ *  them, and the Makefile leaves it out of the jar.
+ *  @author Ho Jong Kang
+ */
+final class Naval {
+
+    /** The standard naval configuration: Bench.NAVAL_CONFIG. */
+    static final String CONFIG = Bench.NAVAL_CONFIG;
+
+    /** A settings line for CONFIG: Bench.NAVAL_SETTINGS. */
+    static final String SETTINGS = Bench.NAVAL_SETTINGS;
+
+    /** Not instantiable. */
+    private Naval() {
+    }
+
+    /** Return a new machine configured by CONFIG. */
+    static Machine machine() {
+        return Bench.navalMachine();
+    }
+
+    /** Return a random message of LEN upper-case letters drawn with
+     *  RANDOM, broken into lines of 60 characters. */
+    static String randomText(Random random, int len) {
+        return Bench.randomText(random, len);
+    }
+}
@@ -0,0 +1,32 @@
+package enigma;
+
+/** Stepping like an odometer, without the double step. The rightmost
+ *  rotor always advances, and each other rotor advances exactly when the
+ *  rotor to its right advances from a notch.
+ *  @author Ho Jong Kang
+ */
+final class OdometerStepping implements SteppingStrategy {
+
+    @Override
+    public void step(Rotor[] rotors) {
+        for (int i = rotors.length - 1; i >= 0; i -= 1) {
+            boolean carry = rotors[i].atNotch();
+            rotors[i].advance();
+            if (!carry) {
+                return;
+            }
+        }
+    }
+
+    /** {@inheritDoc} Each rotor advances by the number of notches the
+     *  rotor to its right passes, so the time taken is proportional to
+     *  the number of rotors. */
+    @Override
+    public void advance(Rotor[] rotors, long n) {
+        for (int i = rotors.length - 1; i >= 0 && n > 0; i -= 1) {
+            long carries = rotors[i].notchesWithin(n);
+            rotors[i].advance(n);
+            n = carries;
+        }
+    }
+}
@@ -0,0 +1,544 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.error;
+
+/** A container of converted messages that stores each character as its
+ *  index in the alphabet, in the fewest bits that hold every index,
+ *  instead of as text in groups. It keeps where each message (the lines
+ *  converted under one settings line) begins and the length of each of
+ *  its lines, so that the text Main would have printed can be
+ *  regenerated exactly, for the whole file or for any one message. The
+ *  settings lines themselves are not stored.
+ *
+ *  A file holds a header: a magic number, the version, the group size
+ *  and line width of the text, and the alphabet, as a count followed by
+ *  its characters. Then come the messages, each the number of blank
+ *  lines printed before it, then for each line its length plus one and
+ *  its characters packed least significant bit first and padded to a
+ *  byte, and finally a zero. The lengths and counts are unsigned
+ *  varints. Last come the offset of each message and a trailer of the
+ *  offset of that index, the number of messages, the number of blank
+ *  lines at the end, and the magic number again. All fixed-size numbers
+ *  are big-endian.
+ *  @author Ho Jong Kang
+ */
+final class PackedFile implements AutoCloseable {
+
+    /** Identifies packed files. */
+    private static final int MAGIC = 0x454e504b;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Bytes in the trailer. */
+    private static final int TRAILER = 20;
+
+    /** Bytes buffered when reading and writing. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Return the number of bits that hold every index of an alphabet of
+     *  SIZE characters. */
+    static int bits(int size) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    /** Print the text of the packed file named by ARGS[0] on the standard
+     *  output, or if ARGS[1] is present, only that of message number
+     *  ARGS[1], counting from 0. */
+    static void unpack(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            throw error("usage: --unpack FILE [MESSAGE]");
+        }
+        Path path;
+        try {
+            path = Paths.get(args[0]);
+        } catch (InvalidPathException excp) {
+            throw error("could not open %s", args[0]);
+        }
+        try (PackedFile file = open(path)) {
+            if (args.length == 1) {
+                file.unpack(System.out);
+            } else {
+                try {
+                    file.unpack(Integer.parseInt(args[1]), System.out);
+                } catch (NumberFormatException excp) {
+                    throw error("bad message number: %s", args[1]);
+                }
+            }
+        }
+    }
+
+    /** Return the packed file FILE, open for reading. */
+    static PackedFile open(Path file) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+        try {
+            return new PackedFile(file, channel);
+        } catch (IOException | RuntimeException excp) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                /* Already failing. */
+            }
+            if (excp instanceof EnigmaException) {
+                throw (EnigmaException) excp;
+            }
+            throw error("%s is not a packed file", file);
+        }
+    }
+
+    /** The packed file FILE, read through CHANNEL. */
+    private PackedFile(Path file, FileChannel channel) throws IOException {
+        _file = file;
+        _channel = channel;
+        long size = channel.size();
+        ByteBuffer trailer = read(size - TRAILER, TRAILER);
+        long indexOffset = trailer.getLong();
+        int count = trailer.getInt();
+        _trailingBlanks = trailer.getInt();
+        if (trailer.getInt() != MAGIC || count < 0
+            || indexOffset + 8L * count != size - TRAILER) {
+            throw error("%s is not a packed file", file);
+        }
+        ByteBuffer header = read(0, 20);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw error("%s is not a packed file", file);
+        }
+        _group = header.getInt();
+        _lineWidth = header.getInt();
+        int alphabetSize = header.getInt();
+        if (alphabetSize < 1 || alphabetSize > 1 << 16) {
+            throw error("%s is not a packed file", file);
+        }
+        _bits = bits(alphabetSize);
+        _symbols = new char[alphabetSize];
+        read(20, 2 * alphabetSize).asCharBuffer().get(_symbols);
+        _offsets = new long[count];
+        read(indexOffset, 8 * count).asLongBuffer().get(_offsets);
+        _end = indexOffset;
+    }
+
+    /** Return the number of messages in me. */
+    int messages() {
+        return _offsets.length;
+    }
+
+    /** Return the number of bits in which each character is stored. */
+    int bitsPerChar() {
+        return _bits;
+    }
+
+    /** Write the text of all my messages to OUT. */
+    void unpack(OutputStream out) {
+        GroupWriter writer = textWriter(out, BUFFER_SIZE);
+        if (_offsets.length > 0) {
+            try (InputStream in = stream(_offsets[0], _end)) {
+                for (int n = 0; n < _offsets.length; n += 1) {
+                    unpackMessage(in, writer);
+                }
+            } catch (IOException excp) {
+                throw error("could not read %s", _file);
+            }
+        }
+        for (int i = 0; i < _trailingBlanks; i += 1) {
+            writer.newLine();
+        }
+        writer.flush();
+    }
+
+    /** Write the text of message N, counting from 0, to OUT: the blank
+     *  lines printed before it and its lines. */
+    void unpack(int n, OutputStream out) {
+        if (n < 0 || n >= _offsets.length) {
+            throw error("no message %d in %s", n, _file);
+        }
+        long end = n + 1 < _offsets.length ? _offsets[n + 1] : _end;
+        long expected = 2 * (end - _offsets[n]) + 16;
+        GroupWriter writer =
+            textWriter(out, (int) Math.min(BUFFER_SIZE, expected));
+        try (InputStream in = stream(_offsets[n], end)) {
+            unpackMessage(in, writer);
+        } catch (IOException excp) {
+            throw error("could not read %s", _file);
+        }
+        writer.flush();
+    }
+
+    @Override
+    public void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not close %s", _file);
+        }
+    }
+
+    /** Read the message at the current position of IN to WRITER. */
+    private void unpackMessage(InputStream in, GroupWriter writer)
+        throws IOException {
+        for (int blanks = readVarint(in); blanks > 0; blanks -= 1) {
+            writer.newLine();
+        }
+        for (int len = readVarint(in) - 1; len >= 0;
+             len = readVarint(in) - 1) {
+            int bytes = (int) (((long) len * _bits + 7) >>> 3);
+            if (_packed.length < bytes) {
+                _packed = new byte[Math.max(bytes, 2 * _packed.length)];
+            }
+            if (_chars.length < len) {
+                _chars = new char[Math.max(len, 2 * _chars.length)];
+            }
+            if (in.readNBytes(_packed, 0, bytes) != bytes) {
+                throw new EOFException();
+            }
+            unpackLine(bytes, len);
+            writer.printLine(_chars, len);
+        }
+    }
+
+    /** Decode LEN characters from the first BYTES bytes of _packed into
+     *  _chars. */
+    private void unpackLine(int bytes, int len) {
+        int bits = _bits, mask = (1 << bits) - 1;
+        char[] symbols = _symbols, chars = _chars;
+        byte[] packed = _packed;
+        long acc = 0;
+        int held = 0, b = 0;
+        for (int i = 0; i < len; i += 1) {
+            while (held < bits) {
+                acc |= (long) (packed[b] & 0xff) << held;
+                b += 1;
+                held += 8;
+            }
+            int code = (int) acc & mask;
+            if (code >= symbols.length) {
+                throw error("%s is corrupt", _file);
+            }
+            chars[i] = symbols[code];
+            acc >>>= bits;
+            held -= bits;
+        }
+    }
+
+    /** Return a writer of text to OUT in my format, buffering BUFFERSIZE
+     *  bytes. */
+    private GroupWriter textWriter(OutputStream out, int bufferSize) {
+        return new GroupWriter(out, _group, _lineWidth, bufferSize);
+    }
+
+    /** Return a buffered stream of the bytes of my file from START up to
+     *  END. Closing it does not close my channel. */
+    private InputStream stream(long start, long end) {
+        InputStream in = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (_position >= end) {
+                    return -1;
+                }
+                int n = (int) Math.min(len, end - _position);
+                int got = _channel.read(ByteBuffer.wrap(b, off, n),
+                                        _position);
+                if (got > 0) {
+                    _position += got;
+                }
+                return got;
+            }
+
+            /** Offset of the next byte to read. */
+            private long _position = start;
+        };
+        return new BufferedInputStream(in, (int) Math.max(1, Math.min(
+            BUFFER_SIZE, end - start)));
+    }
+
+    /** Return the LEN bytes of my file at OFFSET. */
+    private ByteBuffer read(long offset, int len) throws IOException {
+        if (offset < 0) {
+            throw new EOFException();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining()) {
+            if (_channel.read(buf, offset + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buf.flip();
+    }
+
+    /** Return the unsigned varint at the current position of IN. */
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        throw new IOException("bad varint");
+    }
+
+    /** Writes converted messages to a stream as a packed file, in place
+     *  of a GroupWriter. The index and trailer are written by finish. */
+    static final class Writer {
+
+        /** A writer to OUT of messages over ALPHABET, whose text is in
+         *  groups of GroupWriter.GROUP characters on unbroken lines. */
+        Writer(OutputStream out, Alphabet alphabet) {
+            _out = out;
+            int size = alphabet.size();
+            _bits = bits(size);
+            char[] symbols = new char[size];
+            char low = Character.MAX_VALUE, high = 0;
+            for (int i = 0; i < size; i += 1) {
+                symbols[i] = alphabet.toChar(i);
+                low = (char) Math.min(low, symbols[i]);
+                high = (char) Math.max(high, symbols[i]);
+            }
+            _low = low;
+            _codes = new int[high - low + 1];
+            Arrays.fill(_codes, -1);
+            for (int i = 0; i < size; i += 1) {
+                _codes[symbols[i] - low] = i;
+            }
+            putInt(MAGIC);
+            putInt(VERSION);
+            putInt(GroupWriter.GROUP);
+            putInt(0);
+            putInt(size);
+            for (char c : symbols) {
+                put((byte) (c >>> 8));
+                put((byte) c);
+            }
+        }
+
+        /** Begin a new message, as when a settings line is applied. */
+        void beginMessage() {
+            endMessage();
+            if (_messages == _offsets.length) {
+                _offsets = Arrays.copyOf(_offsets, 2 * _messages);
+            }
+            _offsets[_messages] = position();
+            _messages += 1;
+            putVarint(_blanks);
+            _blanks = 0;
+            _inMessage = true;
+        }
+
+        /** Add the first LEN characters of MSG, which must be in my
+         *  alphabet, as a line of the current message. */
+        void printLine(char[] msg, int len) {
+            if (!_inMessage) {
+                beginMessage();
+            }
+            putVarint(len + 1);
+            int bits = _bits, low = _low;
+            int[] codes = _codes;
+            long acc = 0;
+            int held = 0;
+            int i = 0;
+            while (i < len) {
+                int chunk = Math.min(len - i, 8 * _buffer.length / bits - 8);
+                if (_count + (chunk * bits >>> 3) + 1 > _buffer.length) {
+                    drain();
+                }
+                byte[] buffer = _buffer;
+                int count = _count;
+                for (int end = i + chunk; i < end; i += 1) {
+                    int k = msg[i] - low;
+                    int code = k >= 0 && k < codes.length ? codes[k] : -1;
+                    if (code < 0) {
+                        throw error("character %c not in alphabet", msg[i]);
+                    }
+                    acc |= (long) code << held;
+                    held += bits;
+                    while (held >= 8) {
+                        buffer[count] = (byte) acc;
+                        count += 1;
+                        acc >>>= 8;
+                        held -= 8;
+                    }
+                }
+                _count = count;
+            }
+            if (held > 0) {
+                put((byte) acc);
+            }
+        }
+
+        /** Add an empty line before the next message. */
+        void newLine() {
+            _blanks += 1;
+        }
+
+        /** End the last message and write the index and trailer. Nothing
+         *  more may be written. */
+        void finish() {
+            endMessage();
+            long indexOffset = position();
+            for (int n = 0; n < _messages; n += 1) {
+                putLong(_offsets[n]);
+            }
+            putLong(indexOffset);
+            putInt(_messages);
+            putInt(_blanks);
+            putInt(MAGIC);
+            drain();
+            try {
+                _out.flush();
+            } catch (IOException excp) {
+                throw error("could not write output");
+            }
+        }
+
+        /** Return the number of bytes written so far, buffered or not. */
+        long position() {
+            return _written + _count;
+        }
+
+        /** End the current message, if any. */
+        private void endMessage() {
+            if (_inMessage) {
+                put((byte) 0);
+                _inMessage = false;
+            }
+        }
+
+        /** Buffer VALUE as an unsigned varint. */
+        private void putVarint(int value) {
+            while ((value & ~0x7f) != 0) {
+                put((byte) (value | 0x80));
+                value >>>= 7;
+            }
+            put((byte) value);
+        }
+
+        /** Buffer VALUE in four bytes. */
+        private void putInt(int value) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                put((byte) (value >>> shift));
+            }
+        }
+
+        /** Buffer VALUE in eight bytes. */
+        private void putLong(long value) {
+            putInt((int) (value >>> 32));
+            putInt((int) value);
+        }
+
+        /** Buffer B. */
+        private void put(byte b) {
+            if (_count == _buffer.length) {
+                drain();
+            }
+            _buffer[_count] = b;
+            _count += 1;
+        }
+
+        /** Hand my buffer to the underlying stream and empty it. */
+        private void drain() {
+            if (_count == 0) {
+                return;
+            }
+            try {
+                _out.write(_buffer, 0, _count);
+            } catch (IOException excp) {
+                throw error("could not write output");
+            }
+            _written += _count;
+            _count = 0;
+        }
+
+        /** Destination stream. */
+        private final OutputStream _out;
+
+        /** Bits per character. */
+        private final int _bits;
+
+        /** Smallest character of my alphabet. */
+        private final char _low;
+
+        /** Index of each character from _low in my alphabet, or -1. */
+        private final int[] _codes;
+
+        /** Bytes not yet written to _out. */
+        private final byte[] _buffer = new byte[BUFFER_SIZE];
+
+        /** Number of bytes in _buffer. */
+        private int _count;
+
+        /** Number of bytes already written to _out. */
+        private long _written;
+
+        /** Offset of each message begun. */
+        private long[] _offsets = new long[16];
+
+        /** Number of messages begun. */
+        private int _messages;
+
+        /** Empty lines added since the last message was begun. */
+        private int _blanks;
+
+        /** True iff a message has been begun and not ended. */
+        private boolean _inMessage;
+    }
+
+    /** Name of my file. */
+    private final Path _file;
+
+    /** Channel reading my file. */
+    private final FileChannel _channel;
+
+    /** Characters per group in my text. */
+    private final int _group;
+
+    /** Characters per line in my text, or 0 for no limit. */
+    private final int _lineWidth;
+
+    /** Bits per character. */
+    private final int _bits;
+
+    /** My alphabet, by index. */
+    private final char[] _symbols;
+
+    /** Offset of each message. */
+    private final long[] _offsets;
+
+    /** Offset of the index, where the messages end. */
+    private final long _end;
+
+    /** Blank lines printed after the last message. */
+    private final int _trailingBlanks;
+
+    /** Packed characters of the line being read. */
+    private byte[] _packed = new byte[256];
+
+    /** Characters of the line being read. */
+    private char[] _chars = new char[256];
+}
@@ -0,0 +1,155 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** The suite of all JUnit tests for the PackedFile class.
+ *  @author Ho Jong Kang
+ */
+public class PackedFileTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Messages, with blank lines before and within some of them, and
+     *  a settings line that loses the one after it. */
+    private static final String MESSAGES =
+        "\n"
+        + "* B BETA III IV I AXLE (YF) (ZH)\n"
+        + "HYIHL BBQNR BKLIA NOTHE\n"
+        + "\n"
+        + "ABCDEFGHIJKLMNOPQRSTUVWXY\n"
+        + "\n"
+        + "\n"
+        + "* B BETA I II III AAAA\n"
+        + "* B GAMMA III IV V BQRS (AQ)\n"
+        + "* B GAMMA III IV V BQRS (AQ)\n"
+        + "MADE OF SLIDING FOLDING ROSEWOOD\n"
+        + "NEATLY PUT IT ALL TOGETHER\n";
+
+    /** Run Main on the files CONFIG, INPUT and OUTPUT, packing the output
+     *  if PACKED. */
+    private void run(Path config, Path input, Path output, boolean packed) {
+        System.setProperty(Main.PACKED_PROPERTY, String.valueOf(packed));
+        try {
+            new Main(new String[] { config.toString(), input.toString(),
+                                    output.toString() }).process();
+        } finally {
+            System.clearProperty(Main.PACKED_PROPERTY);
+        }
+    }
+
+    /** Return the contents of FILE. */
+    private String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), Charset.defaultCharset());
+    }
+
+    /** Return the text of FILE, or of its message N if N >= 0. */
+    private String unpack(Path file, int n) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PackedFile packed = PackedFile.open(file)) {
+            if (n < 0) {
+                packed.unpack(out);
+            } else {
+                packed.unpack(n, out);
+            }
+        }
+        return out.toString(Charset.defaultCharset());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBits() {
+        assertEquals(1, PackedFile.bits(1));
+        assertEquals(1, PackedFile.bits(2));
+        assertEquals(5, PackedFile.bits(26));
+        assertEquals(5, PackedFile.bits(32));
+        assertEquals(6, PackedFile.bits(33));
+        assertEquals(16, PackedFile.bits(1 << 16));
+    }
+
+    @Test
+    public void testSameAsText() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path config = dir.resolve("config"), input = dir.resolve("input");
+        Path text = dir.resolve("text"), packed = dir.resolve("packed");
+        Files.write(config, Naval.CONFIG.getBytes());
+        Files.write(input, MESSAGES.getBytes());
+        run(config, input, text, false);
+        run(config, input, packed, true);
+        String expected = read(text);
+        assertEquals(expected, unpack(packed, -1));
+        try (PackedFile file = PackedFile.open(packed)) {
+            assertEquals(3, file.messages());
+            assertEquals(5, file.bitsPerChar());
+        }
+        StringBuilder joined = new StringBuilder();
+        for (int n = 0; n < 3; n += 1) {
+            joined.append(unpack(packed, n));
+        }
+        assertEquals(expected, joined.toString());
+        assertTrue(Files.size(packed) < Files.size(text) + 200);
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        Alphabet alphabet =
+            Main.alphabet(ConfigGenerator.symbols('\u4e00', 1000));
+        Path file = Files.createTempFile("enigma", ".packed");
+        char[][] lines = new char[50][];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            PackedFile.Writer writer = new PackedFile.Writer(out, alphabet);
+            for (int n = 0; n < lines.length; n += 1) {
+                lines[n] = new char[n * 7];
+                for (int i = 0; i < lines[n].length; i += 1) {
+                    lines[n][i] = alphabet.toChar((n * 31 + i * 17) % 1000);
+                }
+                writer.beginMessage();
+                writer.printLine(lines[n], lines[n].length);
+            }
+            writer.finish();
+        }
+        try (PackedFile packed = PackedFile.open(file)) {
+            assertEquals(lines.length, packed.messages());
+            assertEquals(10, packed.bitsPerChar());
+        }
+        for (int n = lines.length - 1; n >= 0; n -= 7) {
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            GroupWriter writer = new GroupWriter(text);
+            writer.printLine(lines[n], lines[n].length);
+            writer.flush();
+            assertEquals(text.toString(Charset.defaultCharset()),
+                         unpack(file, n));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNoSuchMessage() throws IOException {
+        Path file = Files.createTempFile("enigma", ".packed");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            new PackedFile.Writer(out, new CharacterRange('A', 'Z')).finish();
+        }
+        assertEquals("", unpack(file, -1));
+        unpack(file, 0);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotPacked() throws IOException {
+        Path file = Files.createTempFile("enigma", ".txt");
+        Files.write(file, "HELLO WORLD\n".getBytes());
+        PackedFile.open(file);
+    }
+}
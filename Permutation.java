@@ -1,6 +1,8 @@
 package enigma;
-import java.util.ArrayList;
-import java.util.List;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.error;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
@@ -16,15 +18,36 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         size = _alphabet.size();
-        result = new ArrayList<Integer>(size());
-        for (int i = 0; i < _alphabet.size(); i += 1) {
-            result.add(i);
+        _map = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            _map[i] = i;
         }
         String extractedCycle = cycles.replace("(", "")
                 .replace(")", "");
         for (String elem : extractedCycle.split(" ")) {
             addCycle(elem);
         }
+        _inverse = inverse(_map);
+    }
+
+    /** A permutation of ALPHABET that maps each index I to MAP[I]. MAP
+     *  becomes owned by this Permutation and must not be changed. */
+    Permutation(int[] map, Alphabet alphabet) {
+        _alphabet = alphabet;
+        size = _alphabet.size();
+        if (map.length != size) {
+            throw error("permutation does not match alphabet");
+        }
+        _map = map;
+        _inverse = inverse(_map);
+    }
+
+    /** A permutation of ALPHABET whose tables are kept elsewhere by a
+     *  subclass, which must override permute(int) and invert(int). */
+    Permutation(Alphabet alphabet) {
+        _alphabet = alphabet;
+        size = _alphabet.size();
+        _map = _inverse = null;
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
@@ -34,11 +57,22 @@ class Permutation {
             return;
         }
         for (int i = 0; i < (cycle.length() - 1); i += 1) {
-            result.set(_alphabet.toInt(cycle.charAt(i)),
-                    _alphabet.toInt(cycle.charAt(i + 1)));
+            _map[_alphabet.toInt(cycle.charAt(i))] =
+                    _alphabet.toInt(cycle.charAt(i + 1));
         }
-        result.set(_alphabet.toInt(cycle.
-                charAt(cycle.length() - 1)), _alphabet.toInt(cycle.charAt(0)));
+        _map[_alphabet.toInt(cycle.charAt(cycle.length() - 1))] =
+                _alphabet.toInt(cycle.charAt(0));
+    }
+
+    /** Return the inverse of MAP: the first index at which each value
+     *  occurs, or -1 for values that do not occur. */
+    private static int[] inverse(int[] map) {
+        int[] inverse = new int[map.length];
+        Arrays.fill(inverse, -1);
+        for (int i = map.length - 1; i >= 0; i -= 1) {
+            inverse[map[i]] = i;
+        }
+        return inverse;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -58,21 +92,26 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        try {
-            return result.get(wrap(p));
-        } catch (IndexOutOfBoundsException e) {
-            return p;
-        }
+        return _map[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        try {
-            return result.indexOf(wrap(c));
-        } catch (EnigmaException e) {
-            return c;
-        }
+        return _inverse[wrap(c)];
+    }
+
+    /** Return the table of this permutation, giving permute(I) at each
+     *  index I, or null if it is kept elsewhere. The table must not be
+     *  changed. */
+    int[] table() {
+        return _map;
+    }
+
+    /** Return the table of the inverse of this permutation, as for
+     *  table(). */
+    int[] inverseTable() {
+        return _inverse;
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -92,6 +131,22 @@ class Permutation {
 
     }
 
+    /** Return true iff OTHER maps every index as I do. */
+    boolean sameMapping(Permutation other) {
+        if (_map != null && other._map != null) {
+            return Arrays.equals(_map, other._map);
+        }
+        if (size() != other.size()) {
+            return false;
+        }
+        for (int i = 0; i < size(); i += 1) {
+            if (permute(i) != other.permute(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /** Return the alphabet used to initialize this Permutation. */
     Alphabet alphabet() {
         return _alphabet;
@@ -100,20 +155,61 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (int elem : result) {
-            if (elem == result.indexOf(elem)) {
+        for (int i = 0; i < size(); i += 1) {
+            int elem = permute(i);
+            if (elem == invert(elem)) {
                 return false;
             }
         }
         return true;
     }
 
+    /** Return the first index that this permutation does not map to
+     *  from any index, or -1 if it is a bijection. */
+    int missingValue() {
+        boolean[] seen = new boolean[size()];
+        for (int i = 0; i < size(); i += 1) {
+            seen[permute(i)] = true;
+        }
+        for (int i = 0; i < size(); i += 1) {
+            if (!seen[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the first index that this permutation, applied twice, does
+     *  not map to itself, or -1 if it is an involution. */
+    int nonInvolutive() {
+        for (int i = 0; i < size(); i += 1) {
+            if (permute(permute(i)) != i) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the first index that this permutation maps to itself, or -1
+     *  if it is a derangement. */
+    int fixedPoint() {
+        for (int i = 0; i < size(); i += 1) {
+            if (permute(i) == i) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
     /** Size variable. */
     private int size;
 
-    /** A list of integer that carries result. */
-    private List<Integer> result;
+    /** The image of each index. */
+    private final int[] _map;
+
+    /** The first index mapping to each value, or -1. */
+    private final int[] _inverse;
 }
@@ -0,0 +1,212 @@
+package enigma;
+
+import java.util.concurrent.CancellationException;
+
+/** Converts the messages of a run in three stages, each on its own
+ *  thread: the thread that reads the input splits it into blank,
+ *  settings and message lines, a converter thread applies the settings
+ *  and converts the message lines, and a writer thread formats them
+ *  onto the output. The stages are joined by bounded rings (see
+ *  SpscRing), so reading and writing overlap conversion, and the lines
+ *  keep their order. A settings line travels between the stages like
+ *  any other, so the machine is reset exactly where it was in the
+ *  input. The lines are recycled from the writer back to the reader,
+ *  so that once the rings have filled, none are allocated.
+ *
+ *  A failure in any stage ends the run as it would have ended in
+ *  one thread: the lines before it are still written, and none after.
+ *  @author Ho Jong Kang
+ */
+final class Pipeline {
+
+    /** Number of lines each ring between two stages holds. */
+    static final int LINES = 1024;
+
+    /** Kinds of line. */
+    private static final int BLANK = 0, SETTINGS = 1, MESSAGE = 2, END = 3;
+
+    /** A pipeline whose stages convert with ENIGMA and write through
+     *  MAIN, which reads the input and passes each line to the
+     *  pipeline, followed by a call of finish. */
+    Pipeline(Main main, Machine enigma) {
+        _main = main;
+        _enigma = enigma;
+        _converter = new Thread(this::convert, "enigma-convert");
+        _writer = new Thread(this::write, "enigma-write");
+        _converter.setDaemon(true);
+        _writer.setDaemon(true);
+        _converter.start();
+        _writer.start();
+    }
+
+    /** Pass on a blank line between messages. */
+    void blankLine() {
+        _toConvert.put(line(BLANK));
+    }
+
+    /** Pass on the settings line SETTINGS. */
+    void settingsLine(String settings) {
+        Line line = line(SETTINGS);
+        line._settings = settings;
+        _toConvert.put(line);
+    }
+
+    /** Pass on the message line TEXT. */
+    void messageLine(String text) {
+        Line line = line(MESSAGE);
+        int n = text.length();
+        if (line._chars.length < n) {
+            line._chars = new char[n];
+        }
+        text.getChars(0, n, line._chars, 0);
+        line._length = n;
+        _toConvert.put(line);
+    }
+
+    /** End the input, which stopped with FAILURE, or normally if FAILURE
+     *  is null, and wait for the other stages to finish. Throw the first
+     *  failure of the run in input order, if any. */
+    void finish(Throwable failure) {
+        Line end = line(END);
+        end._failure = failure;
+        try {
+            _toConvert.put(end);
+        } catch (CancellationException excp) {
+            /* A later stage has already failed. */
+        }
+        join(_converter);
+        join(_writer);
+        Throwable first = _failure;
+        if (first instanceof RuntimeException) {
+            throw (RuntimeException) first;
+        } else if (first instanceof Error) {
+            throw (Error) first;
+        }
+    }
+
+    /** Run the converter stage, until the end of the input or a
+     *  failure. */
+    private void convert() {
+        try {
+            while (true) {
+                Line line = _toConvert.take();
+                if (line._kind == SETTINGS) {
+                    _main.applySettings(_enigma, line._settings);
+                } else if (line._kind == MESSAGE) {
+                    line._length = _main.convertLine(_enigma, line._chars,
+                                                     line._length);
+                }
+                _toWrite.put(line);
+                if (line._kind == END) {
+                    return;
+                }
+            }
+        } catch (RuntimeException | Error excp) {
+            _toConvert.cancel();
+            Line end = new Line();
+            end._kind = END;
+            end._failure = excp;
+            try {
+                _toWrite.put(end);
+            } catch (CancellationException cancelled) {
+                /* The writer has already failed. */
+            }
+        }
+    }
+
+    /** Run the writer stage, until the end of the input or a
+     *  failure. */
+    private void write() {
+        try {
+            while (true) {
+                Line line = _toWrite.take();
+                switch (line._kind) {
+                case BLANK:
+                    _main.printBlankLine();
+                    break;
+                case SETTINGS:
+                    _main.beginMessage();
+                    break;
+                case MESSAGE:
+                    _main.printMessageLine(line._chars, line._length);
+                    break;
+                default:
+                    _failure = line._failure;
+                    return;
+                }
+                line._settings = null;
+                _free.offer(line);
+            }
+        } catch (RuntimeException | Error excp) {
+            _failure = excp;
+            _toWrite.cancel();
+            _toConvert.cancel();
+        }
+    }
+
+    /** Return a line of kind KIND, recycled if one is free. */
+    private Line line(int kind) {
+        Line line = _free.poll();
+        if (line == null) {
+            line = new Line();
+        }
+        line._kind = kind;
+        return line;
+    }
+
+    /** Wait for THREAD to finish. */
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException excp) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** A line of input as it passes through the stages. */
+    private static final class Line {
+        /** My kind: BLANK, SETTINGS, MESSAGE or END. */
+        private int _kind;
+        /** My text, if I am a settings line. */
+        private String _settings;
+        /** My characters, if I am a message line: first as read, then
+         *  as converted. */
+        private char[] _chars = new char[0];
+        /** Number of characters of _chars in use. */
+        private int _length;
+        /** If I end the input, what it failed with, or null. */
+        private Throwable _failure;
+    }
+
+    /** Reads the input and writes the output. */
+    private final Main _main;
+
+    /** Converts the message lines. */
+    private final Machine _enigma;
+
+    /** Lines read, to be converted. */
+    private final SpscRing<Line> _toConvert = new SpscRing<>(LINES);
+
+    /** Lines converted, to be written. */
+    private final SpscRing<Line> _toWrite = new SpscRing<>(LINES);
+
+    /** Lines written, to be reused by the reader. */
+    private final SpscRing<Line> _free = new SpscRing<>(4 * LINES);
+
+    /** Thread running the converter stage. */
+    private final Thread _converter;
+
+    /** Thread running the writer stage. */
+    private final Thread _writer;
+
+    /** The failure with which the run ended, set by the writer, or
+     *  null. */
+    private volatile Throwable _failure;
+}
@@ -0,0 +1,290 @@
+package enigma;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.error;
+
+/** Benchmark mode (Main --bench): converts a random workload through the
+ *  full pipeline of a normal run, in process, on each of a range of
+ *  thread counts. Each message is a settings line (applied by
+ *  Main.setUp) followed by message lines (converted by Machine.convert
+ *  and formatted by a GroupWriter into a discarding stream). For each
+ *  thread count it reports characters and messages per second, settings
+ *  lines applied per second, the median and 99th percentile time per
+ *  message, and the bytes allocated per character converted.
+ *  @author Ho Jong Kang
+ */
+final class PipelineBench {
+
+    /** Length of the lines of a message. */
+    private static final int LINE = 60;
+
+    /** First character of alphabets of more than 26 characters. */
+    private static final char FIRST = '\u4e00';
+
+    /** A benchmark of MESSAGES messages of LENGTH characters each, over
+     *  an alphabet of SIZE characters, drawn from SEED. */
+    private PipelineBench(int messages, int length, int size, long seed) {
+        Random random = new Random(seed);
+        ConfigGenerator gen = new ConfigGenerator(random);
+        char first = size <= 26 ? 'A' : FIRST;
+        ConfigGenerator.Spec spec =
+            gen.config(ConfigGenerator.symbols(first, size), false, 5, 3, 3);
+        _prototype = Main.configure(new Scanner(spec.text()));
+        _settings = new String[messages];
+        _texts = new String[messages];
+        for (int i = 0; i < messages; i += 1) {
+            _settings[i] = gen.settings(spec, 10).toUpperCase();
+            StringBuilder text = new StringBuilder(_settings[i]);
+            String msg = gen.message(spec, length);
+            for (int k = 0; k < length; k += LINE) {
+                text.append('\n')
+                    .append(msg, k, Math.min(length, k + LINE));
+            }
+            _texts[i] = text.append('\n').toString();
+        }
+        _chars = (long) messages * length;
+    }
+
+    /** Run the benchmark specified by ARGS, which are
+     *  [MESSAGES [LENGTH [THREADS [SIZE [SEED]]]]]: MESSAGES (default
+     *  2000) messages of LENGTH (default 500) characters over an alphabet
+     *  of SIZE (default 26) characters, drawn from SEED (default 0), run
+     *  on each of the comma-separated thread counts THREADS (default 1, 2,
+     *  4, ... up to the number of processors). Results go to the standard
+     *  output. */
+    static void run(String[] args) {
+        if (args.length > 5) {
+            throw error("usage: --bench [MESSAGES [LENGTH [THREADS [SIZE "
+                        + "[SEED]]]]]");
+        }
+        int messages = intArg(args, 0, 2000);
+        int length = intArg(args, 1, 500);
+        int[] threads = args.length > 2 ? threadCounts(args[2])
+            : defaultThreadCounts();
+        int size = intArg(args, 3, 26);
+        long seed = intArg(args, 4, 0);
+        if (messages < 1 || length < 0 || size < 2
+            || size > Character.MAX_VALUE - FIRST) {
+            throw error("bad benchmark size");
+        }
+        new PipelineBench(messages, length, size, seed).execute(threads);
+    }
+
+    /** Run my workload once on one thread to warm up, then on each of
+     *  THREADS threads, printing a line of results for each. */
+    private void execute(int[] threads) {
+        System.out.printf("%d messages of %d characters, alphabet of %d%n",
+                          _settings.length, _chars / _settings.length,
+                          _prototype.alphabet().size());
+        measure(1);
+        System.out.printf("%7s %14s %12s %12s %10s %10s %10s%n", "threads",
+                          "chars/s", "messages/s", "setups/s", "p50 us",
+                          "p99 us", "bytes/char");
+        for (int t : threads) {
+            Result setups = measureSetups(t);
+            Result full = measure(t);
+            long[] latencies = full._latencies;
+            Arrays.sort(latencies);
+            System.out.printf("%7d %14.0f %12.0f %12.0f %10.1f %10.1f %10s%n",
+                              t, _chars / full.seconds(),
+                              _settings.length / full.seconds(),
+                              _settings.length / setups.seconds(),
+                              percentile(latencies, 50) / 1e3,
+                              percentile(latencies, 99) / 1e3,
+                              full._allocated < 0 ? "n/a"
+                              : String.format("%.2f", (double)
+                                              full._allocated / _chars));
+        }
+    }
+
+    /** Return the result of converting all my messages on THREADS
+     *  threads, each message through its own Main. */
+    private Result measure(int threads) {
+        return runOn(threads, (machine, writer, k) ->
+            new Main(machine.alphabet(), new LineReader(_texts[k]), writer)
+                .process(machine));
+    }
+
+    /** Return the result of applying all my settings lines on THREADS
+     *  threads. */
+    private Result measureSetups(int threads) {
+        return runOn(threads, (machine, writer, k) ->
+            Main.setUp(machine, _settings[k]));
+    }
+
+    /** Return the result of doing TASK for each of my messages, divided
+     *  among THREADS threads, each with its own copy of my machine. */
+    private Result runOn(int threads, Task task) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> parts = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int w = 0; w < threads; w += 1) {
+                int first = w;
+                parts.add(pool.submit(() -> runPart(task, first, threads)));
+            }
+            Result result = new Result(_settings.length);
+            for (Future<Result> part : parts) {
+                result.add(part.get());
+            }
+            result._nanos = System.nanoTime() - start;
+            return result;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("benchmark interrupted");
+        } catch (ExecutionException excp) {
+            throw error("benchmark failed: %s", excp.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the result of doing TASK for messages FIRST, FIRST + STRIDE,
+     *  ... on the current thread. */
+    private Result runPart(Task task, int first, int stride) {
+        Machine machine = _prototype.copy();
+        GroupWriter writer = new GroupWriter(OutputStream.nullOutputStream());
+        Result result =
+            new Result((_settings.length - first + stride - 1) / stride);
+        long allocated = allocated();
+        for (int k = first; k < _settings.length; k += stride) {
+            long start = System.nanoTime();
+            task.run(machine, writer, k);
+            result._latencies[result._count] = System.nanoTime() - start;
+            result._count += 1;
+        }
+        result._allocated =
+            allocated < 0 ? -1 : allocated() - allocated;
+        return result;
+    }
+
+    /** Return the bytes allocated so far by the current thread, or -1 if
+     *  that cannot be measured. */
+    private static long allocated() {
+        java.lang.management.ThreadMXBean bean =
+            ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun =
+                (com.sun.management.ThreadMXBean) bean;
+            if (sun.isThreadAllocatedMemorySupported()
+                && sun.isThreadAllocatedMemoryEnabled()) {
+                return sun.getCurrentThreadAllocatedBytes();
+            }
+        }
+        return -1;
+    }
+
+    /** Return the Pth percentile of the sorted values SORTED. */
+    private static long percentile(long[] sorted, int p) {
+        int k = (int) Math.ceil(sorted.length * p / 100.0) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, k))];
+    }
+
+    /** Return the thread counts listed, separated by commas, in LIST. */
+    private static int[] threadCounts(String list) {
+        String[] items = list.split(",");
+        int[] result = new int[items.length];
+        for (int i = 0; i < items.length; i += 1) {
+            try {
+                result[i] = Integer.parseInt(items[i].trim());
+            } catch (NumberFormatException excp) {
+                throw error("bad thread count: %s", items[i]);
+            }
+            if (result[i] < 1) {
+                throw error("bad thread count: %s", items[i]);
+            }
+        }
+        return result;
+    }
+
+    /** Return the thread counts 1, 2, 4, ... up to the number of
+     *  processors, which is always included. */
+    private static int[] defaultThreadCounts() {
+        int max = Runtime.getRuntime().availableProcessors();
+        List<Integer> counts = new ArrayList<>();
+        for (int t = 1; t < max; t *= 2) {
+            counts.add(t);
+        }
+        counts.add(max);
+        return counts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Return ARGS[K] as an integer, or DFLT if ARGS is too short. */
+    private static int intArg(String[] args, int k, int dflt) {
+        if (args.length <= k) {
+            return dflt;
+        }
+        try {
+            return Integer.parseInt(args[k]);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", args[k]);
+        }
+    }
+
+    /** Work done for one message. */
+    private interface Task {
+        /** Do the work for message K with MACHINE, writing to WRITER. */
+        void run(Machine machine, GroupWriter writer, int k);
+    }
+
+    /** Measurements of a run or part of a run. */
+    private static final class Result {
+
+        /** A result with room for the latencies of MESSAGES messages. */
+        Result(int messages) {
+            _latencies = new long[messages];
+        }
+
+        /** Add the measurements of PART to mine. */
+        void add(Result part) {
+            System.arraycopy(part._latencies, 0, _latencies, _count,
+                             part._count);
+            _count += part._count;
+            if (part._allocated < 0 || _allocated < 0) {
+                _allocated = -1;
+            } else {
+                _allocated += part._allocated;
+            }
+        }
+
+        /** Return my elapsed time in seconds. */
+        double seconds() {
+            return Math.max(_nanos, 1) / 1e9;
+        }
+
+        /** Time taken by each message, in nanoseconds. */
+        private long[] _latencies;
+
+        /** Number of messages measured. */
+        private int _count;
+
+        /** Bytes allocated, or -1 if unknown. */
+        private long _allocated;
+
+        /** Elapsed time of a whole run, in nanoseconds. */
+        private long _nanos;
+    }
+
+    /** Machine whose copies convert the messages. */
+    private final Machine _prototype;
+
+    /** Settings line of each message. */
+    private final String[] _settings;
+
+    /** Full text of each message, starting with its settings line. */
+    private final String[] _texts;
+
+    /** Total characters in the messages. */
+    private final long _chars;
+}
@@ -0,0 +1,94 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Ho Jong Kang
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Messages, with blank lines before and within some of them, and
+     *  a settings line that loses the one after it. */
+    private static final String MESSAGES =
+        "\n"
+        + "* B BETA III IV I AXLE (YF) (ZH)\n"
+        + "HYIHL BBQNR BKLIA NOTHE\n"
+        + "\n"
+        + "ABCDEFGHIJKLMNOPQRSTUVWXY\n"
+        + "\n"
+        + "* B BETA I II III AAAA\n"
+        + "* B GAMMA III IV V BQRS (AQ)\n"
+        + "* B GAMMA III IV V BQRS (AQ)\n"
+        + "made of sliding folding rosewood\n";
+
+    /** Return the output of Main on INPUT with the naval machine,
+     *  pipelined if PIPELINED, followed by the message of the error it
+     *  stopped with, if any. */
+    private String run(String input, boolean pipelined) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        Machine machine = Naval.machine();
+        String error = "";
+        System.setProperty(Main.PIPELINE_PROPERTY,
+                           String.valueOf(pipelined));
+        try {
+            new Main(machine.alphabet(), new LineReader(input), out)
+                .process(machine);
+        } catch (EnigmaException excp) {
+            error = "error: " + excp.getMessage();
+        } finally {
+            System.clearProperty(Main.PIPELINE_PROPERTY);
+        }
+        out.flush();
+        return bytes.toString(Charset.defaultCharset()) + error;
+    }
+
+    /** Check that INPUT gives the same output, and error if any, whether
+     *  pipelined or not. */
+    private void checkSame(String input) {
+        assertEquals(run(input, false), run(input, true));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSameAsSerial() {
+        checkSame(MESSAGES);
+        checkSame("");
+        checkSame("\n\n");
+        Random random = new Random(7);
+        StringBuilder input = new StringBuilder();
+        for (int m = 0; m < 30; m += 1) {
+            input.append(Naval.SETTINGS).append('\n');
+            input.append(Naval.randomText(random, 60 * 5 * Pipeline.LINES
+                                          / 30 + m));
+            input.append("\n\n");
+        }
+        checkSame(input.toString());
+    }
+
+    @Test
+    public void testFailuresInOrder() {
+        String badSettings = MESSAGES + "* B BETA III IV X AAAA\n" + MESSAGES;
+        String output = run(badSettings, true);
+        assertTrue(output.startsWith(run(MESSAGES, false)));
+        assertTrue(output.contains("error: "));
+        checkSame(badSettings);
+        checkSame(MESSAGES + "HELLO\n" + MESSAGES);
+        checkSame("HELLO\n" + MESSAGES);
+    }
+}
@@ -0,0 +1,638 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.Set;
+
+import static enigma.EnigmaException.error;
+
+/** The original, unoptimized simulator, kept as a reference model for
+ *  differential testing of the optimized classes. Its classes are copies
+ *  of the first versions of Permutation, Rotor and its subclasses,
+ *  Machine and Main, and must not be changed except to fix bugs in those
+ *  originals' own logic.
+ *  @author Ho Jong Kang
+ */
+final class ReferenceEnigma {
+
+    /** Not instantiable. */
+    private ReferenceEnigma() {
+    }
+
+    /** Return the output of the original simulator for the configuration
+     *  CONFIG and the messages INPUT. Errors are reported by throwing the
+     *  exception the original would have thrown out of Main.process. */
+    static String run(String config, String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(bytes);
+        new RMain(new Scanner(config), new Scanner(input), output).process();
+        output.flush();
+        return bytes.toString();
+    }
+
+    /** Return a machine built by the original simulator from the
+     *  configuration CONFIG, with no rotors inserted. */
+    static RMachine machine(String config) {
+        return new RMain(new Scanner(config), null, null).readConfig();
+    }
+
+    /** The original Permutation. */
+    static class RPermutation {
+
+        /** Set this Permutation to that specified by CYCLES on ALPHABET. */
+        RPermutation(String cycles, Alphabet alphabet) {
+            _alphabet = alphabet;
+            size = _alphabet.size();
+            result = new ArrayList<Integer>(size());
+            for (int i = 0; i < _alphabet.size(); i += 1) {
+                result.add(i);
+            }
+            String extractedCycle = cycles.replace("(", "")
+                    .replace(")", "");
+            for (String elem : extractedCycle.split(" ")) {
+                addCycle(elem);
+            }
+        }
+
+        /** Add the cycle CYCLE to the permutation. */
+        private void addCycle(String cycle) {
+            if (cycle.length() == 0) {
+                return;
+            }
+            for (int i = 0; i < (cycle.length() - 1); i += 1) {
+                result.set(_alphabet.toInt(cycle.charAt(i)),
+                        _alphabet.toInt(cycle.charAt(i + 1)));
+            }
+            result.set(_alphabet.toInt(cycle.
+                    charAt(cycle.length() - 1)),
+                    _alphabet.toInt(cycle.charAt(0)));
+        }
+
+        /** Return the value of P modulo the size of this permutation. */
+        final int wrap(int p) {
+            int r = p % size();
+            if (r < 0) {
+                r += size();
+            }
+            return r;
+        }
+
+        /** Returns the size of the alphabet I permute. */
+        int size() {
+            return size;
+        }
+
+        /** Return the result of applying this permutation to P. */
+        int permute(int p) {
+            try {
+                return result.get(wrap(p));
+            } catch (IndexOutOfBoundsException e) {
+                return p;
+            }
+        }
+
+        /** Return the result of applying the inverse of this permutation
+         *  to C. */
+        int invert(int c) {
+            try {
+                return result.indexOf(wrap(c));
+            } catch (EnigmaException e) {
+                return c;
+            }
+        }
+
+        /** Return the alphabet used to initialize this Permutation. */
+        Alphabet alphabet() {
+            return _alphabet;
+        }
+
+        /** Alphabet of this permutation. */
+        private Alphabet _alphabet;
+
+        /** Size variable. */
+        private int size;
+
+        /** A list of integer that carries result. */
+        private List<Integer> result;
+    }
+
+    /** The original Rotor. */
+    static class RRotor {
+
+        /** A rotor named NAME whose permutation is given by PERM. */
+        RRotor(String name, RPermutation perm) {
+            _name = name;
+            _permutation = perm;
+            _setting = 0;
+        }
+
+        /** Return my name. */
+        String name() {
+            return _name;
+        }
+
+        /** Return my permutation. */
+        RPermutation permutation() {
+            return _permutation;
+        }
+
+        /** Return true iff I have a ratchet and can move. */
+        boolean rotates() {
+            return false;
+        }
+
+        /** Return true iff I reflect. */
+        boolean reflecting() {
+            return false;
+        }
+
+        /** Return my current setting. */
+        int setting() {
+            return _setting;
+        }
+
+        /** Set setting() to POSN.  */
+        void set(int posn) {
+            _setting = posn;
+        }
+
+        /** Return the conversion of P according to my permutation. */
+        int convertForward(int p) {
+            return _permutation.wrap(_permutation.
+                    permute(_permutation.wrap(p + _setting)) - _setting);
+        }
+
+        /** Return the conversion of E according to the inverse of my
+         *  permutation. */
+        int convertBackward(int e) {
+            return _permutation.wrap(_permutation.
+                    invert(_permutation.wrap(e + _setting)) - _setting);
+        }
+
+        /** Returns true iff I am positioned to allow the rotor to my left
+         *  to advance. */
+        boolean atNotch() {
+            return false;
+        }
+
+        /** Advance me one position, if possible. */
+        void advance() {
+        }
+
+        /** My name. */
+        private final String _name;
+
+        /** The permutation implemented by this rotor in its 0 position. */
+        private RPermutation _permutation;
+
+        /** My setting. */
+        private int _setting;
+    }
+
+    /** The original MovingRotor. */
+    static class RMovingRotor extends RRotor {
+
+        /** A rotor named NAME with permutation PERM and NOTCHES. */
+        RMovingRotor(String name, RPermutation perm, String notches) {
+            super(name, perm);
+            this._notches = notches;
+        }
+
+        @Override
+        boolean rotates() {
+            return true;
+        }
+
+        @Override
+        void advance() {
+            set(permutation().wrap(setting() + 1));
+        }
+
+        @Override
+        boolean atNotch() {
+            return _notches.indexOf(permutation()
+                    .alphabet().toChar(setting())) != -1;
+        }
+
+        /** A string that keeps track of notches. */
+        private String _notches;
+    }
+
+    /** The original FixedRotor. */
+    static class RFixedRotor extends RRotor {
+
+        /** A non-moving rotor named NAME with permutation PERM. */
+        RFixedRotor(String name, RPermutation perm) {
+            super(name, perm);
+        }
+    }
+
+    /** The original Reflector. */
+    static class RReflector extends RFixedRotor {
+
+        /** A reflector named NAME with permutation PERM. */
+        RReflector(String name, RPermutation perm) {
+            super(name, perm);
+        }
+
+        @Override
+        boolean reflecting() {
+            return true;
+        }
+
+        @Override
+        int convertBackward(int e) {
+            throw new EnigmaException("Reflector can only convert forward");
+        }
+
+        @Override
+        void set(int posn) {
+            if (posn != 0) {
+                throw error("reflector has only one position");
+            }
+        }
+    }
+
+    /** The original Machine. */
+    static class RMachine {
+
+        /** A machine with alphabet ALPHA, NUMROTORS slots, PAWLS pawls
+         *  and available rotors ALLROTORS. */
+        RMachine(Alphabet alpha, int numRotors, int pawls,
+                 Collection<RRotor> allRotors) {
+            _alphabet = alpha;
+            this._numRotors = numRotors;
+            this._pawls = pawls;
+            this._myRotors = new ArrayList<>();
+            this._allRotors = new ArrayList<>();
+            this._allRotors.addAll(allRotors);
+        }
+
+        /** Return the number of rotor slots I have. */
+        int numRotors() {
+            return _numRotors;
+        }
+
+        /** Return the number pawls I have. */
+        int numPawls() {
+            return _pawls;
+        }
+
+        /** Set my rotor slots to the rotors named ROTORS. */
+        void insertRotors(String[] rotors) {
+            _myRotors.clear();
+            for (String rotor : rotors) {
+                for (RRotor availrotor : _allRotors) {
+                    if (rotor.equals(availrotor.name().toUpperCase())) {
+                        if (_myRotors.contains(availrotor)) {
+                            throw new EnigmaException("Duplicate rotor name");
+                        }
+                        _myRotors.add(availrotor);
+                    }
+                }
+            }
+            if (_myRotors.size() != rotors.length) {
+                throw new EnigmaException("Bad rotor name");
+            }
+        }
+
+        /** Set my rotors according to SETTING. */
+        void setRotors(String setting) {
+            if (!_myRotors.get(0).reflecting()) {
+                throw new EnigmaException("Reflector in wrong place");
+            }
+            for (int i = 1; i < _myRotors.size(); i += 1) {
+                if (i < numRotors() - numPawls()) {
+                    if (_myRotors.get(i).rotates()) {
+                        throw new EnigmaException("Wrong number of arguments");
+                    }
+                } else {
+                    if (!_myRotors.get(i).rotates()) {
+                        throw new EnigmaException("Wrong number of arguments");
+                    }
+                }
+                _myRotors.get(i).set(_alphabet.toInt(setting.charAt(i - 1)));
+            }
+        }
+
+        /** Set the plugboard to PLUGBOARD. */
+        void setPlugboard(RPermutation plugboard) {
+            this._plugboard = plugboard;
+        }
+
+        /** Returns the result of converting the input character C after
+         *  first advancing the machine. */
+        int convert(int c) {
+            Set<RRotor> move = new HashSet<>();
+            for (int i = _numRotors - _pawls; i < _numRotors - 1; i += 1) {
+                if (_myRotors.get(i + 1).atNotch()
+                        || move.contains(_myRotors.get(i - 1))) {
+                    move.add(_myRotors.get(i));
+                    if (_myRotors.get(i).atNotch()) {
+                        move.add(_myRotors.get(i - 1));
+                    }
+                }
+            }
+            move.add(_myRotors.get(_numRotors - 1));
+
+            for (RRotor elem : move) {
+                elem.advance();
+            }
+
+            try {
+                int result = _plugboard.permute(c);
+                for (int i = _numRotors; i > 0; i -= 1) {
+                    RRotor forward = _myRotors.get(i - 1);
+                    result = forward.convertForward(result);
+                }
+                for (int j = 1; j < _myRotors.size(); j += 1) {
+                    RRotor backward = _myRotors.get(j);
+                    result = backward.convertBackward(result);
+                }
+                return _plugboard.permute(result);
+            } catch (NullPointerException e) {
+                int result = c;
+                for (int i = _numRotors; i > 0; i -= 1) {
+                    RRotor forward = _myRotors.get(i - 1);
+                    result = forward.convertForward(result);
+                }
+                for (int j = 1; j < _numRotors; j += 1) {
+                    RRotor backward = _myRotors.get(j);
+                    result = backward.convertBackward(result);
+                }
+                return result;
+            }
+        }
+
+        /** Returns the encoding/decoding of MSG. */
+        String convert(String msg) {
+            String result = "";
+            for (int i = 0; i < msg.length(); i += 1) {
+                char convert = _alphabet.
+                        toChar(convert(_alphabet.toInt(msg.charAt(i))));
+                result += convert;
+            }
+            return result;
+        }
+
+        /** Common alphabet of my rotors. */
+        private final Alphabet _alphabet;
+
+        /** Number of rotors. */
+        private int _numRotors;
+
+        /** Number of pawls. */
+        private int _pawls;
+
+        /** List of Rotors that keeps all rotors. */
+        private List<RRotor> _allRotors;
+
+        /** List of Rotors that keeps my rotors. */
+        private List<RRotor> _myRotors;
+
+        /** Plugboard being used. */
+        private RPermutation _plugboard;
+    }
+
+    /** The original alphabet for configurations such as "A-Z". */
+    static class RCharacterRange extends Alphabet {
+
+        /** All characters between FIRST and LAST, inclusive. */
+        RCharacterRange(char first, char last) {
+            _first = Character.toUpperCase(first);
+            _last = Character.toUpperCase(last);
+            if (_first > _last) {
+                throw error("empty range of characters");
+            }
+        }
+
+        @Override
+        int size() {
+            return _last - _first + 1;
+        }
+
+        @Override
+        boolean contains(char ch) {
+            return ch >= _first && ch <= _last;
+        }
+
+        @Override
+        char toChar(int index) {
+            if (!contains((char) (_first + index))) {
+                throw error("character index out of range");
+            }
+            return (char) (_first + index);
+        }
+
+        @Override
+        int toInt(char ch) {
+            if (!contains(ch)) {
+                throw error("character out of range");
+            }
+            return ch - _first;
+        }
+
+        /** Range of characters in this Alphabet. */
+        private char _first, _last;
+    }
+
+    /** The original alphabet for configurations listing their
+     *  characters. */
+    static class RCharacterRangeExtra extends Alphabet {
+
+        /** The characters of ORDER, whose sorted form is SORTED. */
+        RCharacterRangeExtra(String order, String sorted) {
+            _order = order;
+            _first = Character.toUpperCase(sorted.charAt(0));
+            _last = Character.toUpperCase(sorted.charAt(sorted.length() - 1));
+            if (_first > _last) {
+                throw error("empty range of characters");
+            }
+        }
+
+        @Override
+        int size() {
+            return _last - _first + 1;
+        }
+
+        @Override
+        boolean contains(char ch) {
+            return ch >= _first && ch <= _last;
+        }
+
+        @Override
+        char toChar(int index) {
+            return _order.charAt(index);
+        }
+
+        @Override
+        int toInt(char ch) {
+            if (!contains(ch)) {
+                throw error("character out of range");
+            }
+            return _order.indexOf(ch);
+        }
+
+        /** Range of characters in this Alphabet. */
+        private char _first, _last;
+
+        /** String that keeps order. */
+        private String _order;
+    }
+
+    /** The original Main, reading from Scanners. */
+    static class RMain {
+
+        /** A simulator for configuration CONFIG converting INPUT to
+         *  OUTPUT. */
+        RMain(Scanner config, Scanner input, PrintStream output) {
+            _config = config;
+            _input = input;
+            _output = output;
+        }
+
+        /** Configure a machine and convert _input to _output. */
+        void process() {
+            RMachine enigma = readConfig();
+
+            while (_input.hasNext()) {
+                String next = _input.nextLine().toUpperCase();
+                if (next.equals("")) {
+                    _output.println();
+                    continue;
+                }
+                if (!next.contains("*")) {
+                    throw new EnigmaException("No config");
+                }
+                setUp(enigma, next);
+
+                if (_input.hasNextLine()) {
+                    next = (_input.nextLine()).toUpperCase();
+                } else {
+                    break;
+                }
+                while (true) {
+                    if (next.contains("*")) {
+                        break;
+                    }
+                    String result = enigma.convert(next.replaceAll(" ", ""));
+                    printMessageLine(result);
+                    if (_input.hasNext("\\s*[*].*")) {
+                        break;
+                    }
+                    if (_input.hasNextLine()) {
+                        next = (_input.nextLine()).toUpperCase();
+                    } else {
+                        break;
+                    }
+                }
+            }
+        }
+
+        /** Return a machine configured from _config. */
+        private RMachine readConfig() {
+            try {
+                String range = _config.next();
+                if (range.length() < 2) {
+                    throw new EnigmaException("Bad config");
+                }
+                if (range.charAt(1) == '-') {
+                    _alphabet = new RCharacterRange(range.charAt(0),
+                            range.charAt(2));
+                } else {
+                    char[] temp = range.toCharArray();
+                    Arrays.sort(temp);
+                    _alphabet = new RCharacterRangeExtra(range,
+                                                         new String(temp));
+                }
+
+                int numRotors = _config.nextInt();
+                int pawls = _config.nextInt();
+                while (_config.hasNext()) {
+                    _allRotors.add(readRotor());
+                }
+                return new RMachine(_alphabet, numRotors, pawls, _allRotors);
+            } catch (NoSuchElementException excp) {
+                throw error("configuration file truncated");
+            }
+        }
+
+        /** Return a rotor, reading its description from _config. */
+        private RRotor readRotor() {
+            try {
+                String name = _config.next();
+                String perm = "";
+                String next = _config.next();
+                char first = next.charAt(0);
+                String notches = next.substring(1);
+                while (_config.hasNext("\\s*[(].+[)]\\s*")) {
+                    next = _config.next().replaceAll("[)][(]", ") (");
+                    perm = perm + next + " ";
+                }
+                if (first == 'R') {
+                    return new RReflector(name,
+                                          new RPermutation(perm, _alphabet));
+                } else if (first == 'N') {
+                    return new RFixedRotor(name,
+                                           new RPermutation(perm, _alphabet));
+                } else {
+                    return new RMovingRotor(name,
+                            new RPermutation(perm, _alphabet), notches);
+                }
+            } catch (NoSuchElementException excp) {
+                throw error("bad rotor description");
+            }
+        }
+
+        /** Set M according to SETTINGS. */
+        private void setUp(RMachine M, String settings) {
+            String[] rotors = new String[M.numRotors()];
+            Scanner scan = new Scanner(settings);
+            String temp = "";
+            if (scan.hasNext()) {
+                scan.next();
+                for (int i = 0; i < rotors.length; i += 1) {
+                    rotors[i] = scan.next();
+                }
+                M.insertRotors(rotors);
+                M.setRotors(scan.next());
+                while (scan.hasNext()) {
+                    temp = temp + scan.next() + " ";
+                }
+                M.setPlugboard(new RPermutation(temp, _alphabet));
+            }
+        }
+
+        /** Print MSG in groups of five. */
+        private void printMessageLine(String msg) {
+            int remainder = msg.length() % 5;
+            for (int i = 0; i < msg.length() - remainder; i += 5) {
+                _output.print(msg.substring(i, i + 5) + " ");
+            }
+            _output.println(msg.substring((msg.length() - remainder),
+                    msg.length()));
+        }
+
+        /** All rotors. */
+        private List<RRotor> _allRotors = new ArrayList<>();
+
+        /** Alphabet used in this machine. */
+        private Alphabet _alphabet;
+
+        /** Source of input messages. */
+        private Scanner _input;
+
+        /** Source of machine configuration. */
+        private Scanner _config;
+
+        /** File for encoded/decoded messages. */
+        private PrintStream _output;
+    }
+}
@@ -23,6 +23,11 @@ class Reflector extends FixedRotor {
         throw new EnigmaException("Reflector can only convert forward");
     }
 
+    @Override
+    Rotor copy(Permutation perm) {
+        return new Reflector(name(), perm);
+    }
+
     @Override
     void set(int posn) {
         if (posn != 0) {
@@ -47,9 +47,9 @@ class Rotor {
         return _setting;
     }
 
-    /** Set setting() to POSN.  */
+    /** Set setting() to POSN, modulo the size of my alphabet.  */
     void set(int posn) {
-        _setting = posn;
+        _setting = _permutation.wrap(posn);
     }
 
     /** Set setting() to character CPOSN. */
@@ -81,6 +81,35 @@ class Rotor {
     void advance() {
     }
 
+    /** Advance me K >= 0 positions, if possible. By default, does
+     *  nothing. */
+    void advance(long k) {
+    }
+
+    /** Return the number of positions I must advance to reach a notch (0
+     *  if I am at one), or -1 if I have none. */
+    int toNotch() {
+        return -1;
+    }
+
+    /** Return the number of times I would be at a notch before advancing,
+     *  were I to advance K >= 0 positions one at a time. */
+    long notchesWithin(long k) {
+        return 0;
+    }
+
+    /** Return a new rotor with my name and permutation, in its 0 setting.
+     *  The copy shares my permutation but none of my state. */
+    final Rotor copy() {
+        return copy(_permutation);
+    }
+
+    /** Return a new rotor like me, in its 0 setting, but whose
+     *  permutation is PERM. */
+    Rotor copy(Permutation perm) {
+        return new Rotor(_name, perm);
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -0,0 +1,295 @@
+package enigma;
+
+import java.util.List;
+
+/** Converts characters through the rotors and plugboard of a Machine by
+ *  indexing their permutation tables directly. The rotors' settings are
+ *  read as each character is converted, so an engine stays valid as the
+ *  rotors move, until different rotors or a different plugboard are
+ *  inserted. Machines of four and five slots, the common M3 and M4
+ *  shapes, get engines with the slots unrolled; others get one that
+ *  loops over its slots.
+ *
+ *  For alphabets of up to FUSE_LIMIT characters, the plugboard is fused
+ *  with the rightmost rotor into an entry and an exit table with a row
+ *  for each of its settings, so that a character passes through both in
+ *  one lookup on the way in and one on the way out. Building the tables
+ *  costs about as much as converting size^2 / 4 characters, so they are
+ *  built only once the engine has converted that many: short messages,
+ *  whose plugboard changes with each, never pay for them.
+ *  @author Ho Jong Kang
+ */
+abstract class RotorEngine {
+
+    /** Largest alphabet for which the plugboard is fused into the
+     *  rightmost rotor: the fused tables have one row per setting. */
+    static final int FUSE_LIMIT = 256;
+
+    /** An engine for an alphabet of SIZE characters with plugboard table
+     *  PLUGBOARD (null for none) whose rotors are SLOTS, with tables
+     *  FORWARD and inverse tables BACKWARD. */
+    RotorEngine(int size, int[] plugboard, Rotor[] slots, int[][] forward,
+                int[][] backward) {
+        int k = slots.length - 1;
+        _size = size;
+        _last = slots[k];
+        _plugboard = plugboard;
+        _lastForward = forward[k];
+        _lastBackward = backward[k];
+        _untilFused = size <= FUSE_LIMIT ? Math.max(size * size / 4, 1)
+            : -1;
+    }
+
+    /** Return an engine for ROTORS, from the reflector to the rightmost
+     *  rotor, and PLUGBOARD (which may be null), or null if they do not
+     *  all keep their tables in memory, do not share one size, place a
+     *  reflector after the first slot, or are fewer than two. */
+    static RotorEngine of(List<Rotor> rotors, Permutation plugboard) {
+        int k = rotors.size();
+        if (k < 2) {
+            return null;
+        }
+        int n = rotors.get(0).size();
+        int[] plug = null;
+        if (plugboard != null) {
+            plug = plugboard.table();
+            if (plug == null || plugboard.size() != n) {
+                return null;
+            }
+        }
+        Rotor[] slots = rotors.toArray(new Rotor[k]);
+        int[][] forward = new int[k][], backward = new int[k][];
+        for (int i = 0; i < k; i += 1) {
+            Permutation perm = slots[i].permutation();
+            forward[i] = perm.table();
+            backward[i] = perm.inverseTable();
+            if (forward[i] == null || perm.size() != n
+                || (i > 0 && slots[i].reflecting())) {
+                return null;
+            }
+        }
+        switch (k) {
+        case 4:
+            return new Four(n, plug, slots, forward, backward);
+        case 5:
+            return new Five(n, plug, slots, forward, backward);
+        default:
+            return new Slots(n, plug, slots, forward, backward);
+        }
+    }
+
+    /** Return the conversion of C, which is taken modulo the alphabet
+     *  size, by the current settings of my rotors. */
+    final int convert(int c) {
+        int n = _size;
+        if (c < 0 || c >= n) {
+            c %= n;
+            if (c < 0) {
+                c += n;
+            }
+        }
+        int s = _last.setting();
+        if (_entry != null) {
+            int base = s * n;
+            return _exit[base + throughInner(_entry[base + c])];
+        }
+        if (_untilFused > 0) {
+            _untilFused -= 1;
+            if (_untilFused == 0) {
+                fuse();
+            }
+        }
+        int x = _plugboard == null ? c : _plugboard[c];
+        x = through(_lastForward, x, s, n);
+        x = through(_lastBackward, throughInner(x), s, n);
+        return _plugboard == null ? x : _plugboard[x];
+    }
+
+    /** Build _entry and _exit. */
+    private void fuse() {
+        int n = _size;
+        int[] entry = new int[n * n], exit = new int[n * n];
+        for (int s = 0; s < n; s += 1) {
+            for (int c = 0; c < n; c += 1) {
+                int plugged = _plugboard == null ? c : _plugboard[c];
+                entry[s * n + c] = through(_lastForward, plugged, s, n);
+                int out = through(_lastBackward, c, s, n);
+                exit[s * n + c] = _plugboard == null ? out : _plugboard[out];
+            }
+        }
+        _entry = entry;
+        _exit = exit;
+    }
+
+    /** Return the conversion of P (in the range 0..size - 1) through my
+     *  rotors other than the rightmost, from the one left of it to the
+     *  reflector and back. */
+    abstract int throughInner(int p);
+
+    /** Return the conversion of P (in the range 0..N - 1) by a rotor of N
+     *  characters at SETTING (in the same range) whose table, or inverse
+     *  table, is TABLE, as Rotor.convertForward or convertBackward would
+     *  convert it. */
+    static int through(int[] table, int p, int setting, int n) {
+        int i = p + setting;
+        if (i >= n) {
+            i -= n;
+        }
+        int result = table[i] - setting;
+        if (result < 0) {
+            result += n;
+        }
+        return result;
+    }
+
+    /** Return the size of my alphabet. */
+    final int size() {
+        return _size;
+    }
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** My rightmost rotor. */
+    private final Rotor _last;
+
+    /** The plugboard followed by _last, and the inverse of _last followed
+     *  by the plugboard, indexed by setting * size + input. Null until
+     *  fused. */
+    private int[] _entry, _exit;
+
+    /** Characters left to convert before _entry and _exit are built, or
+     *  -1 if they never are. */
+    private int _untilFused;
+
+    /** Table of my plugboard, or null. */
+    private final int[] _plugboard;
+
+    /** Table and inverse table of _last. */
+    private final int[] _lastForward, _lastBackward;
+
+    /** An engine for four slots. */
+    private static final class Four extends RotorEngine {
+
+        /** An engine for an alphabet of SIZE characters with plugboard
+         *  table PLUGBOARD whose rotors are SLOTS, with tables FORWARD and
+         *  inverse tables BACKWARD. */
+        Four(int size, int[] plugboard, Rotor[] slots, int[][] forward,
+             int[][] backward) {
+            super(size, plugboard, slots, forward, backward);
+            _r0 = slots[0];
+            _r1 = slots[1];
+            _r2 = slots[2];
+            _f0 = forward[0];
+            _f1 = forward[1];
+            _f2 = forward[2];
+            _b1 = backward[1];
+            _b2 = backward[2];
+        }
+
+        @Override
+        int throughInner(int p) {
+            int n = size();
+            int s1 = _r1.setting(), s2 = _r2.setting();
+            int x = through(_f2, p, s2, n);
+            x = through(_f1, x, s1, n);
+            x = through(_f0, x, _r0.setting(), n);
+            x = through(_b1, x, s1, n);
+            return through(_b2, x, s2, n);
+        }
+
+        /** Rotors in each slot but the rightmost. */
+        private final Rotor _r0, _r1, _r2;
+
+        /** Tables of each slot but the rightmost. */
+        private final int[] _f0, _f1, _f2;
+
+        /** Inverse tables of each slot after the reflector but the
+         *  rightmost. */
+        private final int[] _b1, _b2;
+    }
+
+    /** An engine for five slots. */
+    private static final class Five extends RotorEngine {
+
+        /** An engine for an alphabet of SIZE characters with plugboard
+         *  table PLUGBOARD whose rotors are SLOTS, with tables FORWARD and
+         *  inverse tables BACKWARD. */
+        Five(int size, int[] plugboard, Rotor[] slots, int[][] forward,
+             int[][] backward) {
+            super(size, plugboard, slots, forward, backward);
+            _r0 = slots[0];
+            _r1 = slots[1];
+            _r2 = slots[2];
+            _r3 = slots[3];
+            _f0 = forward[0];
+            _f1 = forward[1];
+            _f2 = forward[2];
+            _f3 = forward[3];
+            _b1 = backward[1];
+            _b2 = backward[2];
+            _b3 = backward[3];
+        }
+
+        @Override
+        int throughInner(int p) {
+            int n = size();
+            int s1 = _r1.setting(), s2 = _r2.setting(), s3 = _r3.setting();
+            int x = through(_f3, p, s3, n);
+            x = through(_f2, x, s2, n);
+            x = through(_f1, x, s1, n);
+            x = through(_f0, x, _r0.setting(), n);
+            x = through(_b1, x, s1, n);
+            x = through(_b2, x, s2, n);
+            return through(_b3, x, s3, n);
+        }
+
+        /** Rotors in each slot but the rightmost. */
+        private final Rotor _r0, _r1, _r2, _r3;
+
+        /** Tables of each slot but the rightmost. */
+        private final int[] _f0, _f1, _f2, _f3;
+
+        /** Inverse tables of each slot after the reflector but the
+         *  rightmost. */
+        private final int[] _b1, _b2, _b3;
+    }
+
+    /** An engine for any number of slots. */
+    private static final class Slots extends RotorEngine {
+
+        /** An engine for an alphabet of SIZE characters with plugboard
+         *  table PLUGBOARD whose rotors are SLOTS, with tables FORWARD and
+         *  inverse tables BACKWARD. */
+        Slots(int size, int[] plugboard, Rotor[] slots, int[][] forward,
+              int[][] backward) {
+            super(size, plugboard, slots, forward, backward);
+            _slots = slots;
+            _forward = forward;
+            _backward = backward;
+        }
+
+        @Override
+        int throughInner(int p) {
+            int n = size();
+            int k = _slots.length - 1;
+            int x = p;
+            for (int i = k - 1; i >= 0; i -= 1) {
+                x = through(_forward[i], x, _slots[i].setting(), n);
+            }
+            for (int j = 1; j < k; j += 1) {
+                x = through(_backward[j], x, _slots[j].setting(), n);
+            }
+            return x;
+        }
+
+        /** Rotors in each slot. */
+        private final Rotor[] _slots;
+
+        /** Tables of each slot. */
+        private final int[][] _forward;
+
+        /** Inverse tables of each slot. */
+        private final int[][] _backward;
+    }
+}
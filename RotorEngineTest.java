@@ -0,0 +1,79 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the RotorEngine class.
+ *  @author Ho Jong Kang
+ */
+public class RotorEngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Alphabet of the rotors. */
+    private Alphabet ad = new CharacterRange('A', 'D');
+
+    /** Return a machine configured from SPEC, set up by SETTINGS, that
+     *  converts through a RotorEngine iff ENGINES. */
+    private Machine machine(ConfigGenerator.Spec spec, String settings,
+                            boolean engines) {
+        Machine machine = Main.configure(new Scanner(spec.text()));
+        machine.setEngines(engines);
+        Main.setUp(machine, settings);
+        return machine;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSameAsRotors() {
+        Random random = new Random(39);
+        ConfigGenerator gen = new ConfigGenerator(random);
+        for (int slots = 2; slots <= 7; slots += 1) {
+            for (int trial = 0; trial < 10; trial += 1) {
+                int size = trial == 9 ? RotorEngine.FUSE_LIMIT + 20
+                    : 2 + trial * 20;
+                String symbols = trial % 2 == 0
+                    ? ConfigGenerator.symbols('A', 26)
+                    : ConfigGenerator.symbols('\u4e00', size);
+                ConfigGenerator.Spec spec =
+                    gen.config(symbols, false,
+                               slots, 1 + random.nextInt(slots - 1), 1);
+                String settings = gen.settings(spec, 5).toUpperCase();
+                String msg = gen.message(spec, 500);
+                assertEquals(slots + " slots: " + settings,
+                             machine(spec, settings, false).convert(msg),
+                             machine(spec, settings, true).convert(msg));
+            }
+        }
+    }
+
+    @Test
+    public void testUnsuitable() {
+        Rotor reflector = new Reflector("B", new Permutation("(AB) (CD)", ad));
+        Rotor fixed = new FixedRotor("F", new Permutation("(ABC)", ad));
+        Rotor moving = new MovingRotor("M", new Permutation("(AD)", ad), "A");
+        Alphabet ae = new CharacterRange('A', 'E');
+        assertNotNull(RotorEngine.of(Arrays.asList(reflector, fixed, moving),
+                                     new Permutation("(AC)", ad)));
+        assertNull(RotorEngine.of(Arrays.asList(reflector, reflector, moving),
+                                  null));
+        assertNull(RotorEngine.of(Arrays.asList(reflector, fixed, moving),
+                                  new Permutation("(AC)", ae)));
+        assertNull(RotorEngine.of(Arrays.asList(reflector, fixed,
+                                                new MovingRotor("E",
+                                                    new Permutation("", ae),
+                                                    "A")), null));
+    }
+
+}
@@ -0,0 +1,360 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static enigma.EnigmaException.error;
+
+/** The rotors available to a machine, indexed by upper-case name.
+ *  A rotor is either given ready-made, or defined by its description
+ *  in a configuration file, in which case its Permutation is built
+ *  only when the rotor is first used. Built permutations are kept in a
+ *  bounded least-recently-used cache shared by all copies of a library,
+ *  so that memory grows with the rotors in use rather than with the
+ *  rotors declared. The permutations of defined rotors may instead be
+ *  read from a shared table file (see RotorTableFile).
+ *  @author Ho Jong Kang
+ */
+final class RotorLibrary {
+
+    /** Default number of built rotors kept. */
+    static final int DEFAULT_CAPACITY = 256;
+
+    /** Smallest capacity allowed: enough for the rotors of any one
+     *  machine to stay cached while it is set up. */
+    static final int MIN_CAPACITY = 64;
+
+    /** A library of the ready-made rotors ROTORS. Where two names differ
+     *  only in case, the first rotor is kept. */
+    RotorLibrary(Collection<Rotor> rotors) {
+        this(null, DEFAULT_CAPACITY);
+        _readyMade = true;
+        for (Rotor rotor : rotors) {
+            _index.putIfAbsent(rotor.name().toUpperCase(),
+                               new Entry(rotor, _index.size()));
+        }
+    }
+
+    /** An empty library of rotors over ALPHABET that keeps at most
+     *  CAPACITY built rotors. */
+    RotorLibrary(Alphabet alphabet, int capacity) {
+        _alphabet = alphabet;
+        _capacity = Math.max(capacity, MIN_CAPACITY);
+        _index = new LinkedHashMap<>();
+        _built = new Cache<>(_capacity);
+        _rotors = new Cache<>(_capacity);
+        _tables = null;
+    }
+
+    /** A copy of LIBRARY that shares its definitions and built
+     *  permutations, but no rotors. */
+    private RotorLibrary(RotorLibrary library) {
+        _alphabet = library._alphabet;
+        _capacity = library._capacity;
+        _readyMade = library._readyMade;
+        if (_readyMade) {
+            _index = new LinkedHashMap<>(library._index.size());
+            for (Map.Entry<String, Entry> e : library._index.entrySet()) {
+                Entry entry = e.getValue();
+                _index.put(e.getKey(),
+                           new Entry(entry._rotor.copy(), entry._ordinal));
+            }
+        } else {
+            _index = library._index;
+        }
+        _built = library._built;
+        _tables = library._tables;
+        _rotors = new Cache<>(_capacity);
+    }
+
+    /** A copy of LIBRARY, which has defined rotors, that shares its
+     *  definitions but whose permutations are those of TABLES. */
+    private RotorLibrary(RotorLibrary library,
+                         RotorTableFile.Tables tables) {
+        _alphabet = library._alphabet;
+        _capacity = library._capacity;
+        _index = library._index;
+        _built = new Cache<>(_capacity);
+        _tables = tables;
+        _rotors = new Cache<>(_capacity);
+    }
+
+    /** Define a rotor named NAME whose type is given by TYPE, as in a
+     *  configuration file ('R' for a reflector, 'N' for a fixed rotor, and
+     *  anything else for a moving rotor with notches NOTCHES), and whose
+     *  permutation is given by CYCLES. Where two names differ only in
+     *  case, the first definition is kept. */
+    void define(String name, char type, String notches, String cycles) {
+        if (_readyMade) {
+            throw error("cannot define rotors among ready-made rotors");
+        }
+        _index.putIfAbsent(name.toUpperCase(),
+                           new Entry(name, type, notches, cycles, null, 0, 0,
+                                     _index.size()));
+    }
+
+    /** Define a rotor as for define(NAME, TYPE, NOTCHES, CYCLES), whose
+     *  cycles are those of FILE between byte offsets START and END. They
+     *  are read from FILE when the rotor is first built. */
+    void define(String name, char type, String notches, ConfigFile file,
+                int start, int end) {
+        if (_readyMade) {
+            throw error("cannot define rotors among ready-made rotors");
+        }
+        _index.putIfAbsent(name.toUpperCase(),
+                           new Entry(name, type, notches, null, file, start,
+                                     end, _index.size()));
+    }
+
+    /** Return the number of rotors in this library. */
+    int size() {
+        return _index.size();
+    }
+
+    /** Return the number of built permutations currently cached. */
+    int built() {
+        synchronized (_built) {
+            return _built.size();
+        }
+    }
+
+    /** Return true iff this library has a rotor named NAME, which must be
+     *  upper case. */
+    boolean contains(String name) {
+        return _index.containsKey(name);
+    }
+
+    /** Return the rotor named NAME, which must be upper case, or null if
+     *  there is none. Until it is evicted from the cache, the same rotor
+     *  is returned for the same name. */
+    Rotor get(String name) {
+        Entry entry = _index.get(name);
+        if (entry == null) {
+            return null;
+        }
+        if (entry._rotor != null) {
+            return entry._rotor;
+        }
+        Rotor rotor = _rotors.get(name);
+        if (rotor == null) {
+            rotor = entry.build(permutation(name, entry));
+            _rotors.put(name, rotor);
+        }
+        return rotor;
+    }
+
+    /** Return all my rotors, in the order they were added. Rotors not
+     *  yet built are built without being cached. */
+    List<Rotor> rotors() {
+        List<Rotor> result = new ArrayList<>(_index.size());
+        for (String name : _index.keySet()) {
+            Rotor rotor = _rotors.get(name);
+            result.add(rotor != null ? rotor : build(name));
+        }
+        return result;
+    }
+
+    /** Return the upper-case names of my rotors, in the order they were
+     *  added. */
+    List<String> names() {
+        return new ArrayList<>(_index.keySet());
+    }
+
+    /** Return the rotor named NAME, which must be upper case and one of
+     *  mine: the ready-made rotor, or else a new rotor built from its
+     *  definition without being cached. This may be called from several
+     *  threads at once, so long as no rotors are being defined. */
+    Rotor build(String name) {
+        Entry entry = _index.get(name);
+        if (entry._rotor != null) {
+            return entry._rotor;
+        }
+        return entry.build(_tables != null
+                           ? _tables.permutation(entry._ordinal)
+                           : new Permutation(entry.cycles(), _alphabet));
+    }
+
+    /** Return a library with my rotors whose rotors are independent of
+     *  mine, so that it may be used by another machine on another
+     *  thread. */
+    RotorLibrary copy() {
+        return new RotorLibrary(this);
+    }
+
+    /** Return a key identifying ALPHABET, the alphabet of my rotors, and
+     *  their names and permutations in order. For defined rotors it is
+     *  computed from their definitions, without building them. */
+    long key(Alphabet alphabet) {
+        long h = 1125899906842597L;
+        for (int i = 0; i < alphabet.size(); i += 1) {
+            h = 31 * h + alphabet.toChar(i);
+        }
+        for (Map.Entry<String, Entry> e : _index.entrySet()) {
+            h = hash(h, e.getKey());
+            Entry entry = e.getValue();
+            if (entry._rotor == null) {
+                h = hash(h, entry.cycles());
+                continue;
+            }
+            Permutation perm = entry._rotor.permutation();
+            for (int i = 0; i < perm.size(); i += 1) {
+                h = 31 * h + perm.permute(i);
+            }
+        }
+        return h;
+    }
+
+    /** Return a library with my rotors whose permutations are those of
+     *  TABLES, which hold them in the order my rotors were added. */
+    RotorLibrary mapped(RotorTableFile.Tables tables) {
+        if (!_readyMade) {
+            return new RotorLibrary(this, tables);
+        }
+        List<Rotor> rotors = new ArrayList<>(_index.size());
+        for (Entry entry : _index.values()) {
+            rotors.add(entry._rotor.copy(tables.permutation(entry._ordinal)));
+        }
+        return new RotorLibrary(rotors);
+    }
+
+    /** Return H extended by the characters of S. */
+    private static long hash(long h, String s) {
+        for (int i = 0; i < s.length(); i += 1) {
+            h = 31 * h + s.charAt(i);
+        }
+        return 31 * h + s.length();
+    }
+
+    /** Return the permutation of the rotor named NAME, defined by ENTRY,
+     *  building it if it is not cached. */
+    private Permutation permutation(String name, Entry entry) {
+        synchronized (_built) {
+            Permutation perm = _built.get(name);
+            if (perm == null) {
+                perm = _tables != null ? _tables.permutation(entry._ordinal)
+                    : new Permutation(entry.cycles(), _alphabet);
+                _built.put(name, perm);
+            }
+            return perm;
+        }
+    }
+
+    /** A rotor of this library: either ready-made or a definition. */
+    private static final class Entry {
+
+        /** An entry for the ready-made rotor ROTOR, the ORDINALth
+         *  added. */
+        Entry(Rotor rotor, int ordinal) {
+            _rotor = rotor;
+            _ordinal = ordinal;
+            _name = rotor.name();
+            _type = 0;
+            _notches = _cycles = null;
+            _file = null;
+            _start = _end = 0;
+        }
+
+        /** An entry for a rotor named NAME of type TYPE with NOTCHES whose
+         *  permutation is CYCLES, or if that is null, the cycles of FILE
+         *  between byte offsets START and END, the ORDINALth added. */
+        Entry(String name, char type, String notches, String cycles,
+              ConfigFile file, int start, int end, int ordinal) {
+            _rotor = null;
+            _ordinal = ordinal;
+            _name = name;
+            _type = type;
+            _notches = notches;
+            _cycles = cycles;
+            _file = file;
+            _start = start;
+            _end = end;
+        }
+
+        /** Return the cycles of a definition. */
+        String cycles() {
+            return _cycles != null ? _cycles : _file.cycles(_start, _end);
+        }
+
+        /** Return a new rotor for my definition with permutation PERM. */
+        Rotor build(Permutation perm) {
+            if (_type == 'R') {
+                return new Reflector(_name, perm);
+            } else if (_type == 'N') {
+                return new FixedRotor(_name, perm);
+            } else {
+                return new MovingRotor(_name, perm, _notches);
+            }
+        }
+
+        /** The ready-made rotor, or null. */
+        private final Rotor _rotor;
+
+        /** The rotor's name as declared. */
+        private final String _name;
+
+        /** Type letter of a definition. */
+        private final char _type;
+
+        /** Notches of a definition. */
+        private final String _notches;
+
+        /** Cycles of a definition, or null if they are in _file. */
+        private final String _cycles;
+
+        /** Configuration holding the cycles of a definition, or null. */
+        private final ConfigFile _file;
+
+        /** Byte offsets of the cycles in _file. */
+        private final int _start, _end;
+
+        /** Number of rotors added to the library before me. */
+        private final int _ordinal;
+    }
+
+    /** A least-recently-used map holding at most a fixed number of
+     *  entries. */
+    private static final class Cache<K, V> extends LinkedHashMap<K, V> {
+
+        /** An empty cache holding at most CAPACITY entries. */
+        Cache(int capacity) {
+            super(16, 0.75f, true);
+            _limit = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > _limit;
+        }
+
+        /** Version of the serialized form. */
+        private static final long serialVersionUID = 1L;
+
+        /** Maximum number of entries. */
+        private final int _limit;
+    }
+
+    /** Alphabet of defined rotors. */
+    private final Alphabet _alphabet;
+
+    /** Maximum number of built rotors kept. */
+    private final int _capacity;
+
+    /** True iff my rotors are ready-made rather than defined. */
+    private boolean _readyMade;
+
+    /** All rotors, by upper-case name. */
+    private final Map<String, Entry> _index;
+
+    /** Permutations of defined rotors in a table file, or null if they
+     *  are built from their definitions. */
+    private final RotorTableFile.Tables _tables;
+
+    /** Built permutations of defined rotors, shared among copies. */
+    private final Cache<String, Permutation> _built;
+
+    /** My rotors for defined rotors, by upper-case name. */
+    private final Cache<String, Rotor> _rotors;
+}
@@ -0,0 +1,87 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+/** The suite of all JUnit tests for the RotorLibrary class.
+ *  @author Ho Jong Kang
+ */
+public class RotorLibraryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Alphabet of the rotors. */
+    private Alphabet ac = new CharacterRange('A', 'D');
+
+    /** Return a library defining N moving rotors named R0, R1, .... */
+    private RotorLibrary library(int n) {
+        RotorLibrary library = new RotorLibrary(ac, RotorLibrary.MIN_CAPACITY);
+        for (int i = 0; i < n; i += 1) {
+            library.define("r" + i, 'M', "C", "(ABCD)");
+        }
+        return library;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLazyBuild() {
+        RotorLibrary library = library(1000);
+        assertEquals(1000, library.size());
+        assertEquals(0, library.built());
+        Rotor rotor = library.get("R7");
+        assertEquals("r7", rotor.name());
+        assertTrue(rotor.rotates());
+        assertSame(rotor, library.get("R7"));
+        assertEquals(1, library.built());
+        assertNull(library.get("r7"));
+        assertNull(library.get("X"));
+    }
+
+    @Test
+    public void testBounded() {
+        RotorLibrary library = library(1000);
+        for (int i = 0; i < 1000; i += 1) {
+            assertNotNull(library.get("R" + i));
+        }
+        assertEquals(RotorLibrary.MIN_CAPACITY, library.built());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateAfterEviction() {
+        RotorLibrary library = library(RotorLibrary.MIN_CAPACITY + 1);
+        library.define("B", 'R', "", "(AB) (CD)");
+        String[] rotors = new String[RotorLibrary.MIN_CAPACITY + 3];
+        rotors[0] = "B";
+        for (int i = 1; i < rotors.length - 1; i += 1) {
+            rotors[i] = "R" + (i - 1);
+        }
+        rotors[rotors.length - 1] = "R0";
+        Machine machine = new Machine(ac, rotors.length, 1, library);
+        machine.insertRotors(rotors);
+    }
+
+    @Test
+    public void testCopiesAreIndependent() {
+        RotorLibrary library = library(3);
+        RotorLibrary copy = library.copy();
+        library.get("R1").set(2);
+        assertEquals(0, copy.get("R1").setting());
+        assertSame(library.get("R1").permutation(),
+                   copy.get("R1").permutation());
+
+        Rotor one = new MovingRotor("X", new Permutation("(AB)", ac), "");
+        RotorLibrary ready = new RotorLibrary(Arrays.asList(one));
+        assertSame(one, ready.get("X"));
+        assertNotSame(one, ready.copy().get("X"));
+    }
+
+}
@@ -0,0 +1,213 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static enigma.EnigmaException.error;
+
+/** A file holding the compiled forward and inverse tables of all the
+ *  rotors of a configuration, mapped read-only into memory. Every process
+ *  that maps the same file shares one copy of the tables through the page
+ *  cache, and none of them keeps the tables on its heap. The file is
+ *  identified by a key computed from the rotors' definitions, so a
+ *  process that finds it already written builds no permutations at all;
+ *  only the process that writes it builds each rotor's, one at a time.
+ *
+ *  The mapped tables are read through a buffer, not an int[], so a
+ *  machine whose rotors use them converts without a RotorEngine or
+ *  CipherKernel, at about the speed of rotors on the heap with engines
+ *  turned off (see Bench tables). The tables are for configurations
+ *  whose rotors would not fit on the heap of every process, not for
+ *  speed.
+ *
+ *  The file consists of a header (magic number, version, a 64-bit key
+ *  identifying the configuration, alphabet size and rotor count) followed
+ *  by the forward and then the inverse table of each rotor in
+ *  configuration order, as ints in native byte order.
+ *  @author Ho Jong Kang
+ */
+final class RotorTableFile {
+
+    /** Identifies table files. */
+    private static final int MAGIC = 0x454e4947;
+
+    /** Version of the file format. */
+    private static final int VERSION = 2;
+
+    /** Size of the header in ints. */
+    private static final int HEADER = 6;
+
+    /** Not instantiable. */
+    private RotorTableFile() {
+    }
+
+    /** Return a library with the rotors of LIBRARY, whose alphabet is
+     *  ALPHABET, whose permutations are read from the table file FILE.
+     *  FILE is first (re)written if it does not hold exactly these
+     *  rotors' tables. */
+    static RotorLibrary share(Path file, Alphabet alphabet,
+                              RotorLibrary library) {
+        long key = library.key(alphabet);
+        int n = alphabet.size(), count = library.size();
+        try {
+            IntBuffer tables = map(file, key, n, count);
+            if (tables == null) {
+                write(file, key, n, library);
+                tables = map(file, key, n, count);
+                if (tables == null) {
+                    throw error("could not create table file %s", file);
+                }
+            }
+            return library.mapped(new Tables(tables, alphabet));
+        } catch (IOException excp) {
+            throw error("could not use table file %s", file);
+        }
+    }
+
+    /** Return the tables in FILE as a buffer indexed in ints from the start
+     *  of the file, or null if FILE does not exist or does not hold tables
+     *  with key KEY for COUNT rotors over an alphabet of size N. */
+    private static IntBuffer map(Path file, long key, int n, int count)
+        throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        long bytes = 4L * (HEADER + 2L * n * count);
+        try (FileChannel channel = FileChannel.open(file,
+                                                    StandardOpenOption.READ)) {
+            if (channel.size() != bytes || bytes > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+            IntBuffer ints = buffer.order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+            long fileKey = ((long) ints.get(2) << 32) | (ints.get(3) & MASK);
+            if (ints.get(0) != MAGIC || ints.get(1) != VERSION
+                || fileKey != key || ints.get(4) != n
+                || ints.get(5) != count) {
+                return null;
+            }
+            return ints;
+        }
+    }
+
+    /** Write the tables of the rotors of LIBRARY over an alphabet of size
+     *  N to FILE with key KEY. The file is written under a temporary name
+     *  and moved into place, so processes mapping it never see a partial
+     *  file. It is made readable by all, so that processes of other
+     *  users may share it. */
+    private static void write(Path file, long key, int n,
+                              RotorLibrary library) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, ".enigma", ".tables");
+        try (FileChannel channel = FileChannel.open(
+                 temp, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4 * Math.max(HEADER, n))
+                .order(ByteOrder.nativeOrder());
+            buffer.putInt(MAGIC).putInt(VERSION).putInt((int) (key >>> 32))
+                .putInt((int) key).putInt(n).putInt(library.size());
+            drain(buffer, channel);
+            for (String name : library.names()) {
+                Permutation perm = library.build(name).permutation();
+                for (int i = 0; i < n; i += 1) {
+                    buffer.putInt(perm.permute(i));
+                }
+                drain(buffer, channel);
+                for (int i = 0; i < n; i += 1) {
+                    buffer.putInt(perm.invert(i));
+                }
+                drain(buffer, channel);
+            }
+        }
+        try {
+            Files.setPosixFilePermissions(
+                temp, PosixFilePermissions.fromString("rw-r--r--"));
+        } catch (UnsupportedOperationException excp) {
+            /* Permissions are left as created on non-POSIX systems. */
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Write the contents of BUFFER to CHANNEL and clear it. */
+    private static void drain(ByteBuffer buffer, FileChannel channel)
+        throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /** Mask selecting the low 32 bits of a long. */
+    private static final long MASK = 0xffffffffL;
+
+    /** The tables of a mapped table file. */
+    static final class Tables {
+
+        /** The tables TABLES, indexed in ints from the start of the file,
+         *  over ALPHABET. */
+        Tables(IntBuffer tables, Alphabet alphabet) {
+            _tables = tables;
+            _alphabet = alphabet;
+        }
+
+        /** Return the permutation of the rotor at INDEX in configuration
+         *  order. */
+        Permutation permutation(int index) {
+            int n = _alphabet.size();
+            int offset = HEADER + 2 * n * index;
+            return new MappedPermutation(_tables, offset, offset + n,
+                                         _alphabet);
+        }
+
+        /** The mapped table file. */
+        private final IntBuffer _tables;
+
+        /** Alphabet of the tables. */
+        private final Alphabet _alphabet;
+    }
+
+    /** A Permutation whose tables are in a mapped table file. */
+    static final class MappedPermutation extends Permutation {
+
+        /** A permutation of ALPHABET whose forward table starts at index
+         *  FORWARD of TABLES and whose inverse table at INVERSE. */
+        MappedPermutation(IntBuffer tables, int forward, int inverse,
+                          Alphabet alphabet) {
+            super(alphabet);
+            _tables = tables;
+            _forward = forward;
+            _inverse = inverse;
+        }
+
+        @Override
+        int permute(int p) {
+            return _tables.get(_forward + wrap(p));
+        }
+
+        @Override
+        int invert(int c) {
+            return _tables.get(_inverse + wrap(c));
+        }
+
+        /** The mapped table file. */
+        private final IntBuffer _tables;
+
+        /** Index of my forward table in _tables. */
+        private final int _forward;
+
+        /** Index of my inverse table in _tables. */
+        private final int _inverse;
+    }
+}
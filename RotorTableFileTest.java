@@ -0,0 +1,125 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the RotorTableFile class.
+ *  @author Ho Jong Kang
+ */
+public class RotorTableFileTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Alphabet of the rotors. */
+    private Alphabet ad = new CharacterRange('A', 'D');
+
+    /** A configuration of four rotors over A-D. */
+    private static final String CONFIG =
+        "A-D 3 1\n"
+        + "R R (AB) (CD)\n"
+        + "F N (ABC)\n"
+        + "M MA (ACDB)\n"
+        + "L MB (AD)\n";
+
+    /** Return a library defining the rotors R, F and M, whose last
+     *  permutation is LAST. */
+    private RotorLibrary library(String last) {
+        RotorLibrary library = new RotorLibrary(ad, RotorLibrary.MIN_CAPACITY);
+        library.define("R", 'R', "", "(AB) (CD)");
+        library.define("F", 'N', "", "(ABC)");
+        library.define("M", 'M', "A", last);
+        return library;
+    }
+
+    /** Return a new table file name, with no file. */
+    private Path tableFile() throws IOException {
+        Path file = Files.createTempFile("enigma", ".tables");
+        Files.delete(file);
+        return file;
+    }
+
+    /** Assert that the rotors of LIBRARY and SHARED permute alike. */
+    private void assertSamePermutations(RotorLibrary library,
+                                        RotorLibrary shared) {
+        assertEquals(library.names(), shared.names());
+        for (String name : library.names()) {
+            Permutation expected = library.build(name).permutation();
+            Permutation actual = shared.get(name).permutation();
+            for (int i = 0; i < ad.size(); i += 1) {
+                assertEquals(name, expected.permute(i), actual.permute(i));
+                assertEquals(name, expected.invert(i), actual.invert(i));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReusesFile() throws IOException {
+        Path file = tableFile();
+        try {
+            RotorLibrary library = library("(ACDB)");
+            assertSamePermutations(library,
+                                   RotorTableFile.share(file, ad, library));
+            assertEquals(0, library.built());
+            Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+            RotorLibrary again = library("(ACDB)");
+            RotorLibrary shared = RotorTableFile.share(file, ad, again);
+            assertEquals(0, Files.getLastModifiedTime(file).toMillis());
+            assertEquals(0, again.built());
+            assertSamePermutations(again, shared);
+            assertTrue(shared.get("M").rotates());
+            assertFalse(shared.get("F").rotates());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testRewritesChangedFile() throws IOException {
+        Path file = tableFile();
+        try {
+            RotorTableFile.share(file, ad, library("(ACDB)"));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+            RotorLibrary changed = library("(AD)");
+            RotorLibrary shared = RotorTableFile.share(file, ad, changed);
+            assertTrue(Files.getLastModifiedTime(file).toMillis() != 0);
+            assertSamePermutations(changed, shared);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testMachine() throws IOException {
+        Path file = tableFile();
+        String settings = "* R F M BC (AC)";
+        String msg = "ABCDDCBAABCDDCBAACBD";
+        Machine heap = Main.configure(new Scanner(CONFIG));
+        Main.setUp(heap, settings);
+        String expected = heap.convert(msg);
+        System.setProperty(Main.TABLES_PROPERTY, file.toString());
+        try {
+            for (int round = 0; round < 2; round += 1) {
+                Machine mapped = Main.configure(new Scanner(CONFIG));
+                Main.setUp(mapped, settings);
+                assertEquals(expected, mapped.convert(msg));
+            }
+        } finally {
+            System.clearProperty(Main.TABLES_PROPERTY);
+            Files.deleteIfExists(file);
+        }
+    }
+}
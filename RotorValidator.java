@@ -0,0 +1,205 @@
+package enigma;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/** Checks the rotors of a configuration, in parallel and in time linear
+ *  in the alphabet size for each rotor:
+ *  <ul>
+ *  <li> every wiring can be read and is a bijection,
+ *  <li> every reflector's wiring is an involution without fixed points,
+ *  <li> every notch is a character of the alphabet.
+ *  </ul>
+ *  @author Ho Jong Kang
+ */
+final class RotorValidator {
+
+    /** Kinds of problem found. */
+    enum Kind {
+        /** The wiring could not be read. */
+        BAD_WIRING,
+        /** Two characters are wired to the same character. */
+        NOT_BIJECTION,
+        /** A reflector is not its own inverse. */
+        NOT_INVOLUTION,
+        /** A reflector maps a character to itself. */
+        FIXED_POINT,
+        /** A notch is not in the alphabet. */
+        BAD_NOTCH
+    }
+
+    /** A problem with one rotor. */
+    static final class Problem {
+
+        /** A problem of kind KIND with the rotor named ROTOR, described by
+         *  DETAIL. */
+        Problem(String rotor, Kind kind, String detail) {
+            _rotor = rotor;
+            _kind = kind;
+            _detail = detail;
+        }
+
+        /** Return the name of the rotor. */
+        String rotor() {
+            return _rotor;
+        }
+
+        /** Return the kind of problem. */
+        Kind kind() {
+            return _kind;
+        }
+
+        /** Return a description of the problem. */
+        String detail() {
+            return _detail;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s: %s", _rotor, _kind, _detail);
+        }
+
+        /** Name of the rotor. */
+        private final String _rotor;
+
+        /** Kind of problem. */
+        private final Kind _kind;
+
+        /** Description. */
+        private final String _detail;
+    }
+
+    /** The outcome of validating a library. */
+    static final class Report {
+
+        /** A report of checking ROTORS rotors in NANOS nanoseconds, finding
+         *  PROBLEMS. */
+        Report(int rotors, long nanos, List<Problem> problems) {
+            _rotors = rotors;
+            _nanos = nanos;
+            _problems = Collections.unmodifiableList(problems);
+        }
+
+        /** Return true iff no problems were found. */
+        boolean ok() {
+            return _problems.isEmpty();
+        }
+
+        /** Return the problems found, in the order of the rotors'
+         *  definitions. */
+        List<Problem> problems() {
+            return _problems;
+        }
+
+        /** Return the number of rotors checked. */
+        int rotors() {
+            return _rotors;
+        }
+
+        /** Return the time taken, in nanoseconds. */
+        long nanos() {
+            return _nanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append(String.format("%d rotors checked in %.1f ms, "
+                                        + "%d problems", _rotors,
+                                        _nanos / 1e6, _problems.size()));
+            for (Problem problem : _problems) {
+                result.append(String.format("%n  %s", problem));
+            }
+            return result.toString();
+        }
+
+        /** Number of rotors checked. */
+        private final int _rotors;
+
+        /** Time taken. */
+        private final long _nanos;
+
+        /** Problems found. */
+        private final List<Problem> _problems;
+    }
+
+    /** Not instantiable. */
+    private RotorValidator() {
+    }
+
+    /** Return a report on all the rotors of LIBRARY. The rotors are
+     *  built, but not cached, on the common fork-join pool. */
+    static Report validate(RotorLibrary library) {
+        long start = System.nanoTime();
+        List<String> names = library.names();
+        List<Problem> problems = names.parallelStream()
+            .map(name -> check(library, name))
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+        return new Report(names.size(), System.nanoTime() - start, problems);
+    }
+
+    /** Return the first problem with the rotor named NAME in LIBRARY, or
+     *  null if there is none. */
+    private static Problem check(RotorLibrary library, String name) {
+        Rotor rotor;
+        try {
+            rotor = library.build(name);
+        } catch (RuntimeException excp) {
+            return new Problem(name, Kind.BAD_WIRING, excp.toString());
+        }
+        Permutation perm = rotor.permutation();
+        Alphabet alphabet = perm.alphabet();
+        int k = perm.missingValue();
+        if (k >= 0) {
+            return new Problem(name, Kind.NOT_BIJECTION,
+                               "nothing is wired to " + name(alphabet, k));
+        }
+        if (rotor.reflecting()) {
+            k = perm.nonInvolutive();
+            if (k >= 0) {
+                return new Problem(name, Kind.NOT_INVOLUTION,
+                                   name(alphabet, k) + " is not reflected "
+                                   + "back to itself");
+            }
+            k = perm.fixedPoint();
+            if (k >= 0) {
+                return new Problem(name, Kind.FIXED_POINT,
+                                   name(alphabet, k) + " maps to itself");
+            }
+        }
+        if (rotor instanceof MovingRotor) {
+            String notches = ((MovingRotor) rotor).notches();
+            for (int i = 0; i < notches.length(); i += 1) {
+                char c = notches.charAt(i);
+                if (!inAlphabet(alphabet, c)) {
+                    return new Problem(name, Kind.BAD_NOTCH,
+                                       "notch " + c + " is not in the "
+                                       + "alphabet");
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Return true iff C is one of the characters of ALPHABET. */
+    private static boolean inAlphabet(Alphabet alphabet, char c) {
+        if (!alphabet.contains(c)) {
+            return false;
+        }
+        int k = alphabet.toInt(c);
+        return k >= 0 && k < alphabet.size();
+    }
+
+    /** Return the character at index K of ALPHABET, or if it has none,
+     *  K in brackets. */
+    private static String name(Alphabet alphabet, int k) {
+        try {
+            return String.valueOf(alphabet.toChar(k));
+        } catch (RuntimeException excp) {
+            return "[" + k + "]";
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the RotorValidator class.
+ *  @author Ho Jong Kang
+ */
+public class RotorValidatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Alphabet of the rotors. */
+    private Alphabet ac = new CharacterRange('A', 'D');
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConfigure() {
+        System.setProperty(Main.VALIDATE_PROPERTY, "true");
+        try {
+            Main.configure(new Scanner(Naval.CONFIG));
+            Main.configure(new Scanner("A-D 3 1 R R (AB) (CD) "
+                                       + "F N (ABCD) M MA (AC)"));
+            try {
+                Main.configure(new Scanner("A-D 3 1 R R (AB) "
+                                           + "F N (ABCD) M MA (AC)"));
+                fail("bad reflector accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("FIXED_POINT"));
+            }
+        } finally {
+            System.clearProperty(Main.VALIDATE_PROPERTY);
+        }
+        Main.configure(new Scanner("A-D 3 1 R R (AB) F N (ABCD) M MA (AC)"));
+    }
+
+    @Test
+    public void testProblems() {
+        RotorLibrary library = new RotorLibrary(ac, 64);
+        library.define("good", 'R', "", "(AB) (CD)");
+        library.define("odd", 'R', "", "(ABC) (D)");
+        library.define("fixed", 'R', "", "(AB)");
+        library.define("twice", 'N', "", "(ABA)");
+        library.define("notch", 'M', "AZ", "(ABCD)");
+        library.define("wiring", 'M', "A", "(A#)");
+        library.define("fine", 'M', "AD", "(AC)");
+        List<RotorValidator.Problem> problems =
+            RotorValidator.validate(library).problems();
+        assertEquals(5, problems.size());
+        RotorValidator.Kind[] kinds = {
+            RotorValidator.Kind.NOT_INVOLUTION,
+            RotorValidator.Kind.FIXED_POINT,
+            RotorValidator.Kind.NOT_BIJECTION,
+            RotorValidator.Kind.BAD_NOTCH,
+            RotorValidator.Kind.BAD_WIRING,
+        };
+        String[] names = { "ODD", "FIXED", "TWICE", "NOTCH", "WIRING" };
+        for (int i = 0; i < kinds.length; i += 1) {
+            assertEquals(names[i], problems.get(i).rotor());
+            assertEquals(kinds[i], problems.get(i).kind());
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+package enigma;
+
+import static enigma.EnigmaException.error;
+
+/** Hand-written parser for settings lines, which have the form
+ *      * REFLECTOR ROTOR... POSITIONS [CYCLE...]
+ *  The first token (normally "*") is skipped. As in the original
+ *  Scanner-based Main.setUp, tokens are separated by whitespace, the
+ *  parentheses in each plugboard token are ignored, and the remaining
+ *  characters of each token form one cycle. The plugboard is built as a
+ *  table directly rather than by re-parsing the cycles as a string.
+ *  Rotor names may be in either case, and the characters of the rotor
+ *  settings and cycles are normalized by the alphabet's filter (see
+ *  InputFilter), so that the line need not be upper-cased first.
+ *  @author Ho Jong Kang
+ */
+final class SettingsParser {
+
+    /** Not instantiable. */
+    private SettingsParser() {
+    }
+
+    /** Set M according to the settings line LINE. */
+    static void apply(Machine M, String line) {
+        int n = line.length();
+        int p = skipToken(line, skipBlanks(line, 0));
+        String[] rotors = new String[M.numRotors()];
+        for (int i = 0; i < rotors.length; i += 1) {
+            p = skipBlanks(line, p);
+            int end = skipToken(line, p);
+            if (p == end) {
+                throw error("bad settings line: too few rotors");
+            }
+            rotors[i] = line.substring(p, end).toUpperCase();
+            p = end;
+        }
+        M.insertRotors(rotors);
+        p = skipBlanks(line, p);
+        int end = skipToken(line, p);
+        if (p == end) {
+            throw error("bad settings line: missing rotor settings");
+        }
+        if (end - p != M.numRotors() - 1) {
+            throw error("bad settings line: wrong number of rotor settings");
+        }
+        Alphabet alpha = M.alphabet();
+        InputFilter filter = alpha.filter();
+        char[] settings = new char[end - p];
+        for (int i = 0; i < settings.length; i += 1) {
+            char c = line.charAt(p + i);
+            int k = filter.classify(c);
+            settings[i] = k >= 0 ? alpha.toChar(k) : c;
+        }
+        M.setRotors(new String(settings));
+        p = skipBlanks(line, end);
+        if (p == n) {
+            M.setPlugboard(identity(alpha));
+            return;
+        }
+        int[] map = new int[alpha.size()];
+        for (int i = 0; i < map.length; i += 1) {
+            map[i] = i;
+        }
+        while (p < n) {
+            end = skipToken(line, p);
+            addCycle(map, filter, line, p, end);
+            p = skipBlanks(line, end);
+        }
+        M.setPlugboard(new Permutation(map, alpha));
+    }
+
+    /** Add the cycle formed by the characters of LINE[START .. END-1]
+     *  other than parentheses, as normalized by FILTER, to MAP, whose
+     *  indices are those of FILTER's alphabet. */
+    private static void addCycle(int[] map, InputFilter filter, String line,
+                                 int start, int end) {
+        int first = -1, prev = -1;
+        for (int i = start; i < end; i += 1) {
+            char c = line.charAt(i);
+            if (c == '(' || c == ')') {
+                continue;
+            }
+            int k = filter.toInt(c);
+            if (prev == -1) {
+                first = k;
+            } else {
+                map[prev] = k;
+            }
+            prev = k;
+        }
+        if (prev != -1) {
+            map[prev] = first;
+        }
+    }
+
+    /** Return the index of the first non-whitespace character of LINE at
+     *  or after P, or its length if there is none. */
+    private static int skipBlanks(String line, int p) {
+        while (p < line.length() && Character.isWhitespace(line.charAt(p))) {
+            p += 1;
+        }
+        return p;
+    }
+
+    /** Return the index just past the token of LINE starting at P. */
+    private static int skipToken(String line, int p) {
+        while (p < line.length() && !Character.isWhitespace(line.charAt(p))) {
+            p += 1;
+        }
+        return p;
+    }
+
+    /** Return the identity permutation of ALPHA, shared among all
+     *  settings lines without plugboard cycles. */
+    private static Permutation identity(Alphabet alpha) {
+        Permutation id = _identity;
+        if (id == null || id.alphabet() != alpha) {
+            id = new Permutation("", alpha);
+            _identity = id;
+        }
+        return id;
+    }
+
+    /** Most recently used identity permutation. */
+    private static volatile Permutation _identity;
+}
@@ -0,0 +1,74 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the SettingsParser class.
+ *  @author Ho Jong Kang
+ */
+public class SettingsParserTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that the plugboard set up by LINE maps as the permutation
+     *  CYCLES does. */
+    private void checkPlugboard(String line, String cycles) {
+        Machine mach = Naval.machine();
+        SettingsParser.apply(mach, line);
+        Permutation expected = new Permutation(cycles, mach.alphabet());
+        for (int c = 0; c < 26; c += 1) {
+            mach.setRotors("AAAA");
+            int plain = mach.convert(c);
+            Machine other = Naval.machine();
+            SettingsParser.apply(other, "* B BETA III IV I AAAA");
+            other.setPlugboard(expected);
+            assertEquals(line, other.convert(c), plain);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSettings() {
+        Machine mach = Naval.machine();
+        SettingsParser.apply(mach,
+                             "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     mach.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testPlugboardTokens() {
+        checkPlugboard("* B BETA III IV I AAAA", "");
+        checkPlugboard("\t*  B BETA III IV I AAAA  (AB)  (CD) ", "(AB) (CD)");
+        checkPlugboard("* B BETA III IV I AAAA (HQ)(EX) (IP)", "(HQEX) (IP)");
+        checkPlugboard("* B BETA III IV I AAAA (ABC)", "(ABC)");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTooFewRotors() {
+        SettingsParser.apply(Naval.machine(), "* B BETA III IV");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadRotor() {
+        SettingsParser.apply(Naval.machine(), "* B BETA III IV X AAAA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testShortRotorSettings() {
+        SettingsParser.apply(Naval.machine(), "* B BETA III IV I AX");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testLongRotorSettings() {
+        SettingsParser.apply(Naval.machine(), "* B BETA III IV I AXLEE");
+    }
+
+}
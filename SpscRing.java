@@ -0,0 +1,177 @@
+package enigma;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.error;
+
+/** A bounded ring buffer passing items from one producer thread to one
+ *  consumer thread. Each side owns its own index, which only it writes,
+ *  and keeps a cached copy of the other's, so that in the steady state
+ *  neither reads the other's index on every item and no locks are taken.
+ *  A side that must wait yields a few times, then parks until the other
+ *  side wakes it.
+ *  @author Ho Jong Kang
+ */
+final class SpscRing<T> {
+
+    /** Times a waiting side yields and looks again before it parks. */
+    private static final int YIELDS = 64;
+
+    /** Longest a waiting side parks before looking again, in
+     *  nanoseconds, in case a wakeup is lost. */
+    private static final long MAX_PARK = 1_000_000;
+
+    /** A ring holding at least CAPACITY > 0 items. The capacity is
+     *  rounded up to a power of two. */
+    SpscRing(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw error("bad ring capacity");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        _items = new Object[size];
+        _mask = size - 1;
+    }
+
+    /** Return the number of items I can hold. */
+    int capacity() {
+        return _items.length;
+    }
+
+    /** Add ITEM, which is not null, if there is room, returning true iff
+     *  it was added. Called only by the producer. */
+    boolean offer(T item) {
+        long tail = _tail;
+        if (tail - _headCache >= _items.length) {
+            _headCache = _head;
+            if (tail - _headCache >= _items.length) {
+                return false;
+            }
+        }
+        _items[(int) tail & _mask] = item;
+        _tail = tail + 1;
+        Thread consumer = _consumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /** Remove and return the oldest item, or null if there is none.
+     *  Called only by the consumer. */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long head = _head;
+        if (head >= _tailCache) {
+            _tailCache = _tail;
+            if (head >= _tailCache) {
+                return null;
+            }
+        }
+        int k = (int) head & _mask;
+        T item = (T) _items[k];
+        _items[k] = null;
+        _head = head + 1;
+        Thread producer = _producer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        return item;
+    }
+
+    /** Add ITEM, which is not null, waiting for room if need be. Throw
+     *  CancellationException if I am cancelled first. Called only by the
+     *  producer. */
+    void put(T item) {
+        int looks = 0;
+        while (!offer(item)) {
+            checkCancelled();
+            looks += 1;
+            if (looks < YIELDS) {
+                Thread.yield();
+                continue;
+            }
+            _producer = Thread.currentThread();
+            if (_tail - _head >= _items.length && !_cancelled) {
+                LockSupport.parkNanos(this, MAX_PARK);
+            }
+            _producer = null;
+        }
+    }
+
+    /** Remove and return the oldest item, waiting for one if need be.
+     *  Throw CancellationException if I am cancelled first. Called only
+     *  by the consumer. */
+    T take() {
+        int looks = 0;
+        while (true) {
+            T item = poll();
+            if (item != null) {
+                return item;
+            }
+            checkCancelled();
+            looks += 1;
+            if (looks < YIELDS) {
+                Thread.yield();
+                continue;
+            }
+            _consumer = Thread.currentThread();
+            if (_head >= _tail && !_cancelled) {
+                LockSupport.parkNanos(this, MAX_PARK);
+            }
+            _consumer = null;
+        }
+    }
+
+    /** Stop both sides: waiting or future calls of put and take throw
+     *  CancellationException. Items already added may still be
+     *  polled. */
+    void cancel() {
+        _cancelled = true;
+        Thread producer = _producer, consumer = _consumer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /** Throw CancellationException if I have been cancelled. */
+    private void checkCancelled() {
+        if (_cancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    /** The items, at their indices modulo the length. */
+    private final Object[] _items;
+
+    /** Length of _items minus one. */
+    private final int _mask;
+
+    /** Index of the next item to remove, written only by the
+     *  consumer. */
+    private volatile long _head;
+
+    /** Index of the next item to add, written only by the producer. */
+    private volatile long _tail;
+
+    /** The producer's last reading of _head. */
+    private long _headCache;
+
+    /** The consumer's last reading of _tail. */
+    private long _tailCache;
+
+    /** The producer, while it is parked or about to park, or null. */
+    private volatile Thread _producer;
+
+    /** The consumer, while it is parked or about to park, or null. */
+    private volatile Thread _consumer;
+
+    /** True once I am cancelled. */
+    private volatile boolean _cancelled;
+}
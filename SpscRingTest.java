@@ -0,0 +1,73 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CancellationException;
+
+/** The suite of all JUnit tests for the SpscRing class.
+ *  @author Ho Jong Kang
+ */
+public class SpscRingTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testOfferPoll() {
+        SpscRing<Integer> ring = new SpscRing<>(3);
+        assertEquals(4, ring.capacity());
+        assertNull(ring.poll());
+        for (int round = 0; round < 3; round += 1) {
+            for (int i = 0; i < 4; i += 1) {
+                assertTrue(ring.offer(i));
+            }
+            assertFalse(ring.offer(4));
+            for (int i = 0; i < 4; i += 1) {
+                assertEquals(Integer.valueOf(i), ring.poll());
+            }
+            assertNull(ring.poll());
+        }
+    }
+
+    @Test
+    public void testAcrossThreads() throws InterruptedException {
+        SpscRing<Integer> ring = new SpscRing<>(8);
+        int n = 100000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < n; i += 1) {
+                ring.put(i);
+            }
+        });
+        producer.start();
+        for (int i = 0; i < n; i += 1) {
+            assertEquals(i, (int) ring.take());
+        }
+        producer.join();
+        assertNull(ring.poll());
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testCancel() {
+        SpscRing<Integer> ring = new SpscRing<>(1);
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException excp) {
+                return;
+            }
+            ring.cancel();
+        }).start();
+        ring.take();
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadCapacity() {
+        new SpscRing<Integer>(0);
+    }
+}
@@ -0,0 +1,225 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Counts of the characters converted by a machine, gathered as it
+ *  converts: for its input and for its output, the number of times each
+ *  character of its alphabet occurs and, for alphabets of at most
+ *  BIGRAM_LIMIT characters, the number of times each pair of characters
+ *  occurs in succession within a message. From these it reports the
+ *  index of coincidence and the chi-squared statistic against a uniform
+ *  distribution of each text, and its most common characters and
+ *  bigrams.
+ *
+ *  A Statistics is not thread-safe. Parallel modes give each thread its
+ *  own and merge them at the end.
+ *  @author Ho Jong Kang
+ */
+final class Statistics {
+
+    /** Largest alphabet for which bigrams are counted. */
+    static final int BIGRAM_LIMIT = 128;
+
+    /** Number of bigrams listed in a report. */
+    private static final int TOP_BIGRAMS = 10;
+
+    /** Empty statistics for texts over ALPHABET. */
+    Statistics(Alphabet alphabet) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _in = new long[_size];
+        _out = new long[_size];
+        if (_size <= BIGRAM_LIMIT) {
+            _inPairs = new long[_size * _size];
+            _outPairs = new long[_size * _size];
+        } else {
+            _inPairs = _outPairs = null;
+        }
+        endMessage();
+    }
+
+    /** Count the conversion of the character at index IN of my alphabet
+     *  to the one at index OUT. Indices out of range are not counted. */
+    void add(int in, int out) {
+        if (in < 0 || in >= _size || out < 0 || out >= _size) {
+            return;
+        }
+        _in[in] += 1;
+        _out[out] += 1;
+        if (_inPairs != null) {
+            if (_prevIn >= 0) {
+                _inPairs[_prevIn * _size + in] += 1;
+                _outPairs[_prevOut * _size + out] += 1;
+            }
+            _prevIn = in;
+            _prevOut = out;
+        }
+    }
+
+    /** Note the end of a message, so that no bigram spans it. */
+    void endMessage() {
+        _prevIn = _prevOut = -1;
+    }
+
+    /** Add the counts of OTHER, which is over the same alphabet, to
+     *  mine. */
+    void merge(Statistics other) {
+        add(_in, other._in);
+        add(_out, other._out);
+        if (_inPairs != null) {
+            add(_inPairs, other._inPairs);
+            add(_outPairs, other._outPairs);
+        }
+    }
+
+    /** Return the number of characters counted in the input (if INPUT)
+     *  or the output. */
+    long total(boolean input) {
+        return sum(input ? _in : _out);
+    }
+
+    /** Return the number of occurrences of the character at index K of my
+     *  alphabet in the input (if INPUT) or the output. */
+    long count(boolean input, int k) {
+        return (input ? _in : _out)[k];
+    }
+
+    /** Return the number of occurrences of the character at index A
+     *  followed by that at index B in the input (if INPUT) or the
+     *  output, or -1 if bigrams are not counted. */
+    long bigram(boolean input, int a, int b) {
+        if (_inPairs == null) {
+            return -1;
+        }
+        return (input ? _inPairs : _outPairs)[a * _size + b];
+    }
+
+    /** Return the index of coincidence of the input (if INPUT) or the
+     *  output: the chance that two of its characters drawn at random are
+     *  the same, or 0 if it has fewer than two. */
+    double indexOfCoincidence(boolean input) {
+        long[] counts = input ? _in : _out;
+        long total = sum(counts);
+        if (total < 2) {
+            return 0;
+        }
+        double same = 0;
+        for (long c : counts) {
+            same += (double) c * (c - 1);
+        }
+        return same / ((double) total * (total - 1));
+    }
+
+    /** Return the chi-squared statistic of the input (if INPUT) or the
+     *  output against a uniform distribution over my alphabet, which has
+     *  size - 1 degrees of freedom, or 0 if it is empty. */
+    double chiSquared(boolean input) {
+        long[] counts = input ? _in : _out;
+        long total = sum(counts);
+        if (total == 0) {
+            return 0;
+        }
+        double expected = (double) total / _size;
+        double chi = 0;
+        for (long c : counts) {
+            chi += (c - expected) * (c - expected) / expected;
+        }
+        return chi;
+    }
+
+    /** Print a report of my counts on OUT. */
+    void report(PrintStream out) {
+        out.printf("statistics: alphabet of %d characters, uniform IoC "
+                   + "%.5f%n", _size, 1.0 / _size);
+        for (int t = 0; t < 2; t += 1) {
+            boolean input = t == 0;
+            out.printf("%-6s %12d chars, IoC %.5f, chi-squared %.1f "
+                       + "(%d df)%n", input ? "input" : "output",
+                       total(input), indexOfCoincidence(input),
+                       chiSquared(input), _size - 1);
+        }
+        out.printf("%-6s %12s %12s%n", "char", "input", "output");
+        for (int k = 0; k < _size; k += 1) {
+            if (_in[k] != 0 || _out[k] != 0) {
+                out.printf("%-6s %12d %12d%n", name(k), _in[k], _out[k]);
+            }
+        }
+        if (_inPairs == null) {
+            out.printf("bigrams not counted for alphabets over %d%n",
+                       BIGRAM_LIMIT);
+            return;
+        }
+        for (int t = 0; t < 2; t += 1) {
+            boolean input = t == 0;
+            out.printf("top bigrams (%s):", input ? "input" : "output");
+            for (int pair : topBigrams(input ? _inPairs : _outPairs)) {
+                out.printf(" %s%s %d", name(pair / _size),
+                           name(pair % _size),
+                           (input ? _inPairs : _outPairs)[pair]);
+            }
+            out.println();
+        }
+    }
+
+    /** Return the indices of the TOP_BIGRAMS largest nonzero entries of
+     *  PAIRS, largest first. */
+    private static List<Integer> topBigrams(long[] pairs) {
+        List<Integer> top = new ArrayList<>();
+        for (int p = 0; p < pairs.length; p += 1) {
+            if (pairs[p] == 0) {
+                continue;
+            }
+            int i = top.size();
+            while (i > 0 && pairs[top.get(i - 1)] < pairs[p]) {
+                i -= 1;
+            }
+            if (i < TOP_BIGRAMS) {
+                top.add(i, p);
+                if (top.size() > TOP_BIGRAMS) {
+                    top.remove(TOP_BIGRAMS);
+                }
+            }
+        }
+        return top;
+    }
+
+    /** Return the character at index K of my alphabet, as a string. */
+    private String name(int k) {
+        return String.valueOf(_alphabet.toChar(k));
+    }
+
+    /** Add each element of FROM to the same element of TO. */
+    private static void add(long[] to, long[] from) {
+        for (int i = 0; i < to.length; i += 1) {
+            to[i] += from[i];
+        }
+    }
+
+    /** Return the sum of COUNTS. */
+    private static long sum(long[] counts) {
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        return total;
+    }
+
+    /** Alphabet of the texts. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Occurrences of each character in the input and the output. */
+    private final long[] _in, _out;
+
+    /** Occurrences of each bigram, indexed by first * size + second, in
+     *  the input and the output, or null if not counted. */
+    private final long[] _inPairs, _outPairs;
+
+    /** Indices of the last characters counted in the input and the
+     *  output of the current message, or -1. */
+    private int _prevIn, _prevOut;
+}
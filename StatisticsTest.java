@@ -0,0 +1,101 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Statistics class.
+ *  @author Ho Jong Kang
+ */
+public class StatisticsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The alphabet A-D. */
+    private static final Alphabet ABCD = new CharacterRange('A', 'D');
+
+    /** Return statistics over ABCD of the conversion of each character
+     *  of IN to the same character of OUT. */
+    private Statistics gather(String in, String out) {
+        Statistics stats = new Statistics(ABCD);
+        for (int i = 0; i < in.length(); i += 1) {
+            stats.add(ABCD.toInt(in.charAt(i)), ABCD.toInt(out.charAt(i)));
+        }
+        return stats;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCounts() {
+        Statistics stats = gather("AABAC", "BCDDA");
+        assertEquals(5, stats.total(true));
+        assertEquals(5, stats.total(false));
+        assertEquals(3, stats.count(true, 0));
+        assertEquals(0, stats.count(true, 3));
+        assertEquals(2, stats.count(false, 3));
+        assertEquals(1, stats.bigram(true, 0, 0));
+        assertEquals(1, stats.bigram(true, 0, 1));
+        assertEquals(1, stats.bigram(true, 1, 0));
+        assertEquals(1, stats.bigram(false, 3, 3));
+    }
+
+    @Test
+    public void testMeasures() {
+        Statistics stats = gather("AAAA", "ABCD");
+        assertEquals(1.0, stats.indexOfCoincidence(true), 1e-9);
+        assertEquals(0.0, stats.indexOfCoincidence(false), 1e-9);
+        assertEquals(12.0, stats.chiSquared(true), 1e-9);
+        assertEquals(0.0, stats.chiSquared(false), 1e-9);
+        Statistics empty = new Statistics(ABCD);
+        assertEquals(0.0, empty.indexOfCoincidence(true), 1e-9);
+        assertEquals(0.0, empty.chiSquared(true), 1e-9);
+    }
+
+    @Test
+    public void testEndMessage() {
+        Statistics stats = new Statistics(ABCD);
+        stats.add(0, 1);
+        stats.endMessage();
+        stats.add(1, 2);
+        assertEquals(0, stats.bigram(true, 0, 1));
+        assertEquals(0, stats.bigram(false, 1, 2));
+        stats.add(2, 3);
+        assertEquals(1, stats.bigram(true, 1, 2));
+    }
+
+    @Test
+    public void testMerge() {
+        Statistics stats = gather("ABC", "DDD");
+        stats.merge(gather("AB", "CC"));
+        assertEquals(5, stats.total(true));
+        assertEquals(2, stats.bigram(true, 0, 1));
+        assertEquals(3, stats.count(false, 3));
+        assertEquals(2, stats.count(false, 2));
+    }
+
+    @Test
+    public void testFusedWithMachine() {
+        Machine machine = Naval.machine();
+        Main.setUp(machine, Naval.SETTINGS);
+        Statistics stats = new Statistics(machine.alphabet());
+        machine.setStatistics(stats);
+        char[] msg = "HELLOWORLD".toCharArray();
+        machine.convert(msg, msg.length);
+        Alphabet alpha = machine.alphabet();
+        assertEquals(10, stats.total(true));
+        assertEquals(3, stats.count(true, alpha.toInt('L')));
+        for (int i = 0; i < msg.length; i += 1) {
+            assertTrue(stats.count(false, alpha.toInt(msg[i])) > 0);
+        }
+        assertEquals(1, stats.bigram(true, alpha.toInt('L'),
+                                     alpha.toInt('L')));
+        machine.setMessageKey(machine.positions(), "ABCDHELLO".toCharArray());
+        assertEquals(10, stats.total(true));
+    }
+}
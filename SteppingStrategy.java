@@ -0,0 +1,20 @@
+package enigma;
+
+/** A rule by which the rotors of a machine advance as each character is
+ *  converted. A strategy is given the rotors in a machine's pawled slots,
+ *  from left to right, and moves them only through Rotor.advance, so
+ *  that rotors without ratchets never move. Strategies read notches
+ *  through tables compiled into each rotor (Rotor.atNotch, toNotch and
+ *  notchesWithin) and hold no state of their own, so one strategy may
+ *  serve any number of machines.
+ *  @author Ho Jong Kang
+ */
+interface SteppingStrategy {
+
+    /** Advance ROTORS as for the conversion of one character. */
+    void step(Rotor[] rotors);
+
+    /** Advance ROTORS as N >= 0 calls of step(ROTORS) would, without
+     *  taking time proportional to N where the rule allows. */
+    void advance(Rotor[] rotors, long n);
+}
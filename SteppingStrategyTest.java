@@ -0,0 +1,131 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+/** The suite of all JUnit tests for the SteppingStrategy classes.
+ *  @author Ho Jong Kang
+ */
+public class SteppingStrategyTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Upper-case alphabet. */
+    private Alphabet upper = new CharacterRange('A', 'Z');
+
+    /** Return moving rotors with notches NOTCHES[0], NOTCHES[1], ... set
+     *  to the characters of SETTING. */
+    private Rotor[] rotors(String setting, String... notches) {
+        Rotor[] rotors = new Rotor[notches.length];
+        for (int i = 0; i < notches.length; i += 1) {
+            rotors[i] = new MovingRotor("R" + i, new Permutation("", upper),
+                                        notches[i]);
+            rotors[i].set(setting.charAt(i));
+        }
+        return rotors;
+    }
+
+    /** Return the settings of ROTORS as characters. */
+    private String settings(Rotor[] rotors) {
+        StringBuilder result = new StringBuilder();
+        for (Rotor rotor : rotors) {
+            result.append(upper.toChar(rotor.setting()));
+        }
+        return result.toString();
+    }
+
+    /** Check that STEPPING takes ROTORS through the settings EXPECTED, one
+     *  step at a time. */
+    private void checkSteps(SteppingStrategy stepping, Rotor[] rotors,
+                            String... expected) {
+        for (String setting : expected) {
+            stepping.step(rotors);
+            assertEquals(setting, settings(rotors));
+        }
+    }
+
+    /** Check that advancing by N with STEPPING agrees with stepping N times
+     *  for many random rotor stacks drawn from RANDOM. */
+    private void checkAdvance(SteppingStrategy stepping, Random random) {
+        for (int trial = 0; trial < 200; trial += 1) {
+            int count = 1 + random.nextInt(5);
+            String[] notches = new String[count];
+            StringBuilder setting = new StringBuilder();
+            for (int i = 0; i < count; i += 1) {
+                StringBuilder notch = new StringBuilder();
+                for (int k = random.nextInt(4); k > 0; k -= 1) {
+                    notch.append(upper.toChar(random.nextInt(26)));
+                }
+                notches[i] = notch.toString();
+                setting.append(upper.toChar(random.nextInt(26)));
+            }
+            Rotor[] stepped = rotors(setting.toString(), notches);
+            Rotor[] advanced = rotors(setting.toString(), notches);
+            int n = random.nextInt(3000);
+            for (int k = 0; k < n; k += 1) {
+                stepping.step(stepped);
+            }
+            stepping.advance(advanced, n);
+            assertEquals(String.format("%s from %s by %d", String.join(",",
+                                       notches), setting, n),
+                         settings(stepped), settings(advanced));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testClassicDoubleStep() {
+        checkSteps(new ClassicStepping(), rotors("ADU", "Q", "E", "V"),
+                   "ADV", "AEW", "BFX", "BFY");
+        checkSteps(new ClassicStepping(), rotors("KDO", "Q", "E", "V"),
+                   "KDP", "KDQ", "KDR");
+    }
+
+    @Test
+    public void testOdometer() {
+        checkSteps(new OdometerStepping(), rotors("ADU", "Q", "E", "V"),
+                   "ADV", "AEW", "AEX");
+        checkSteps(new OdometerStepping(), rotors("AEZ", "Q", "D", "Z"),
+                   "AFA", "AFB");
+        checkSteps(new OdometerStepping(), rotors("AEZ", "Q", "EF", "Z"),
+                   "BFA", "BFB");
+    }
+
+    @Test
+    public void testGear() {
+        checkSteps(new GearStepping(1, 3, 0), rotors("AAY", "", "", ""),
+                   "ADZ", "AGA");
+        checkSteps(new GearStepping(2), rotors("AY", "", ""), "CA", "EC");
+    }
+
+    @Test
+    public void testAdvance() {
+        Random random = new Random(35);
+        checkAdvance(new ClassicStepping(), random);
+        checkAdvance(new OdometerStepping(), random);
+        checkAdvance(new GearStepping(1, 5, 25, 0), random);
+    }
+
+    @Test
+    public void testMachineAdvance() {
+        Machine stepped = Naval.machine();
+        Machine advanced = Naval.machine();
+        String settings = "* B BETA III IV I AXLE (HQ) (EX)";
+        Main.setUp(stepped, settings);
+        Main.setUp(advanced, settings);
+        stepped.convert(new String(new char[100_000]).replace('\0', 'A'));
+        advanced.advance(100_000);
+        assertEquals(stepped.convert("HELLOWORLD"),
+                     advanced.convert("HELLOWORLD"));
+    }
+
+}